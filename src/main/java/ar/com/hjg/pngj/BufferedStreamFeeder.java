@@ -1,14 +1,24 @@
 package ar.com.hjg.pngj;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 
 /**
  * Reads bytes from an input stream, and feeds a IBytesConsumer.
+ * <p>
+ * The source can also be a byte array or a heap ByteBuffer (the consumer is fed directly from the array, with no
+ * intermediate copy), a direct ByteBuffer (or a sequence of them, see {@link #nextSource(long)}) or a channel.
  */
 public class BufferedStreamFeeder {
 
   private InputStream stream;
+  private ReadableByteChannel channel;
+  private ByteBuffer source; // direct buffer (heap buffers are fed from their array)
+  private ByteBuffer bufWrapper; // wraps buf, for reading from the channel
   private byte[] buf;
   private int pendinglen; // bytes read and stored in buf that have not yet still been fed to
                           // IBytesConsumer
@@ -16,6 +26,8 @@ public class BufferedStreamFeeder {
   private boolean eof = false;
   private boolean closeStream = true;
   private boolean failIfNoFeed = false;
+  private boolean cantSeek = false; // skip/seek failed once (eg, a pipe): read and discard instead
+  private int readLimit = Integer.MAX_VALUE; // max bytes to read from the stream on refill
 
   private static final int DEFAULTSIZE = 8192;
 
@@ -29,10 +41,44 @@ public class BufferedStreamFeeder {
     buf = new byte[bufsize < 1 ? DEFAULTSIZE : bufsize];
   }
 
+  /**
+   * Feeds the bytes of the array directly (no copy). The array must not be modified while in use.
+   */
+  public BufferedStreamFeeder(byte[] data, int offset, int len) {
+    buf = data;
+    this.offset = offset;
+    pendinglen = len;
+  }
+
+  /**
+   * Feeds the remaining bytes of the buffer; for a heap buffer, directly from its array. The position of the buffer is
+   * advanced as bytes are fed (for a heap buffer: only at the end).
+   */
+  public BufferedStreamFeeder(ByteBuffer bb) {
+    if (bb.hasArray()) {
+      buf = bb.array();
+      offset = bb.arrayOffset() + bb.position();
+      pendinglen = bb.remaining();
+      bb.position(bb.limit());
+    } else {
+      source = bb;
+      buf = new byte[DEFAULTSIZE];
+    }
+  }
+
+  /**
+   * Reads from a channel, with a internal buffer. The channel should be blocking.
+   */
+  public BufferedStreamFeeder(ReadableByteChannel channel) {
+    this.channel = channel;
+    buf = new byte[DEFAULTSIZE];
+    bufWrapper = ByteBuffer.wrap(buf);
+  }
+
   /**
    * Returns inputstream
    * 
-   * @return Input Stream from which bytes are read
+   * @return Input Stream from which bytes are read; null if the source is not a stream
    */
   public InputStream getStream() {
     return stream;
@@ -96,6 +142,23 @@ public class BufferedStreamFeeder {
    * @return true if success, false otherwise (EOF on stream, or consumer is done)
    */
   public boolean feedFixed(IBytesConsumer consumer, int nbytes) {
+    return feedFixed(consumer, nbytes, false);
+  }
+
+  /**
+   * Same as {@link #feedFixed(IBytesConsumer, int)}, optionally without reading ahead from the stream more than the
+   * bytes to be fed (useful between {@link #skipBytes(long)} calls)
+   */
+  public boolean feedFixed(IBytesConsumer consumer, int nbytes, boolean noReadAhead) {
+    readLimit = noReadAhead ? nbytes : Integer.MAX_VALUE;
+    try {
+      return feedFixed0(consumer, nbytes);
+    } finally {
+      readLimit = Integer.MAX_VALUE;
+    }
+  }
+
+  private boolean feedFixed0(IBytesConsumer consumer, int nbytes) {
     int remain = nbytes;
     while (remain > 0) {
       int n = feed(consumer, remain);
@@ -115,7 +178,7 @@ public class BufferedStreamFeeder {
     try {
       // try to read
       offset = 0;
-      pendinglen = stream.read(buf);
+      pendinglen = readSource(buf.length);
       if (pendinglen < 0) {
         close();
         return;
@@ -126,6 +189,126 @@ public class BufferedStreamFeeder {
     }
   }
 
+  /** reads at most n bytes (limited by readLimit) from the source into buf; -1 if EOF */
+  private int readSource(int n) throws IOException {
+    n = Math.min(n, readLimit);
+    if (stream != null) {
+      return stream.read(buf, 0, n);
+    } else if (channel != null) {
+      bufWrapper.clear();
+      bufWrapper.limit(n);
+      int r;
+      while ((r = channel.read(bufWrapper)) == 0 && n > 0)
+        Thread.yield(); // non blocking channel, should not happen
+      return r;
+    } else if (source != null) {
+      if (!source.hasRemaining())
+        source = nextSource(0);
+      if (source != null && source.hasRemaining()) {
+        n = Math.min(n, source.remaining());
+        source.get(buf, 0, n);
+        return n;
+      }
+    }
+    return -1; // no more data (byte array source)
+  }
+
+  /**
+   * Called when the buffer source is exhausted, or when a skip goes beyond its end; returns the next buffer (eg, the
+   * next window of a mapped file) or null if there is no more data. This implementation returns null.
+   * 
+   * @param skip Bytes to skip after the end of the current buffer
+   */
+  protected ByteBuffer nextSource(long skip) {
+    return null;
+  }
+
+  /**
+   * Skips bytes of the input, discarding first the pending bytes; the rest is skipped in the stream (which, for a file
+   * stream, is a seek). If the stream does not support skipping, the bytes are read and discarded
+   * 
+   * @return true if success, false if EOF
+   */
+  public boolean skipBytes(long nbytes) {
+    int fromBuf = (int) Math.min(nbytes, pendinglen);
+    offset += fromBuf;
+    pendinglen -= fromBuf;
+    nbytes -= fromBuf;
+    try {
+      while (nbytes > 0 && !eof) {
+        long n;
+        if (stream != null) {
+          n = skipStream(nbytes);
+          if (n < 0) {
+            close();
+            return false;
+          }
+        } else if (source != null) {
+          n = nbytes;
+          if (source.remaining() >= nbytes)
+            source.position(source.position() + (int) nbytes);
+          else {
+            source = nextSource(nbytes - source.remaining());
+            if (source == null) {
+              close();
+              return false;
+            }
+          }
+        } else { // channel: seek if it's a file, else read and discard
+          n = -2;
+          if (channel instanceof FileChannel && !cantSeek)
+            n = seek((FileChannel) channel, nbytes);
+          if (n == -2)
+            n = readSource((int) Math.min(nbytes, buf.length));
+          if (n < 0) {
+            close();
+            return false;
+          }
+        }
+        nbytes -= n;
+      }
+    } catch (IOException e) {
+      throw new PngjInputException(e);
+    }
+    return nbytes == 0;
+  }
+
+  /* returns the number of bytes skipped (at least 1), -1 if EOF. Must be called with no pending bytes */
+  private long skipStream(long nbytes) throws IOException {
+    if (stream instanceof FileInputStream && !cantSeek) {
+      long n = seek(((FileInputStream) stream).getChannel(), nbytes);
+      if (n != -2)
+        return n;
+    }
+    if (!cantSeek) {
+      try {
+        long n = stream.skip(nbytes);
+        if (n > 0)
+          return n;
+      } catch (IOException e) { // eg, "Illegal seek" for a pipe
+        cantSeek = true;
+      }
+    }
+    // skip() gives no guarantees (and 0 can mean EOF): read and discard
+    return stream.read(buf, 0, (int) Math.min(nbytes, buf.length));
+  }
+
+  /* seeks forward (at most to the end of the file); returns the bytes skipped, -1 if EOF, -2 if it can't seek */
+  private long seek(FileChannel fc, long nbytes) {
+    try {
+      long pos = fc.position();
+      long size = fc.size();
+      if (pos >= size)
+        return -1;
+      long n = Math.min(nbytes, size - pos);
+      fc.position(pos + n);
+      return n;
+    } catch (IOException e) { // not a regular file
+      cantSeek = true;
+      return -2;
+    }
+  }
+
   /**
    * Returuns true if we have more data to fed the consumer. This internally tries to grabs more bytes from the stream
    * if necessary
@@ -166,7 +349,15 @@ public class BufferedStreamFeeder {
         // PngHelperInternal.LOGGER.log(Level.WARNING, "Exception closing stream", e);
       }
     }
+    if (channel != null && closeStream) {
+      try {
+        channel.close();
+      } catch (Exception e) {
+      }
+    }
     stream = null;
+    channel = null;
+    source = null;
   }
 
   /**
@@ -0,0 +1,192 @@
+package ar.com.hjg.pngj;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import ar.com.hjg.pngj.chunks.ChunkHelper;
+import ar.com.hjg.pngj.chunks.ChunkRaw;
+
+/**
+ * Layout of the chunks of a PNG file: id, offset, length and (stored) CRC of each chunk, in order. It's built in one
+ * pass with a {@link ChunkSeqSkipping}, without reading the chunks data.
+ * <p>
+ * It can be stored (typically, in a separate file) with {@link #writeTo(OutputStream)}: only ids, lengths and CRCs are
+ * written, about 12 bytes per chunk before compression (the offsets follow from the lengths). Queries about the chunks
+ * structure (eg, the IDAT size, or where the iCCP chunk is) can then be answered without scanning the PNG again; and
+ * {@link PngReaderSeekable#setChunkCatalog(ChunkCatalog)} uses it to locate the IDAT and riDX chunks.
+ */
+public class ChunkCatalog {
+
+  private static final int MAGIC = 0x504a4343; // "PJCC"
+  private static final int VERSION = 1;
+
+  private final List<Entry> entries;
+
+  public ChunkCatalog(List<Entry> entries) {
+    this.entries = Collections.unmodifiableList(new ArrayList<Entry>(entries));
+  }
+
+  /**
+   * Scans the chunks of the file. The chunks data is skipped (for a file, a seek) and the CRCs are not checked.
+   */
+  public static ChunkCatalog build(File file) {
+    return build(PngHelperInternal.istreamFromFile(file));
+  }
+
+  /**
+   * Same as {@link #build(File)}, from a stream (that is closed)
+   */
+  public static ChunkCatalog build(InputStream is) {
+    BufferedStreamFeeder feeder = new BufferedStreamFeeder(is);
+    ChunkSeqSkipping cs = new ChunkSeqSkipping(true);
+    try {
+      while (!cs.isDone()) {
+        int n = cs.skipCurrentChunkData();
+        if (n > 0 && !feeder.skipBytes(n))
+          throw new PngjInputException("premature ending");
+        if (feeder.feed(cs) <= 0)
+          throw new PngjInputException("premature ending");
+      }
+    } finally {
+      feeder.close();
+      cs.close();
+    }
+    List<Entry> list = new ArrayList<Entry>(cs.getChunks().size());
+    for (ChunkRaw c : cs.getChunks())
+      list.add(new Entry(c.id, c.getOffset(), c.len, PngHelperInternal.readInt4fromBytes(c.crcval, 0)));
+    return new ChunkCatalog(list);
+  }
+
+  /**
+   * Writes the catalog (compressed). The stream is not closed.
+   */
+  public void writeTo(OutputStream os) {
+    try {
+      DataOutputStream ds = new DataOutputStream(os);
+      ds.writeInt(MAGIC);
+      ds.writeInt(VERSION);
+      ds.flush();
+      DeflaterOutputStream zs = new DeflaterOutputStream(os);
+      ds = new DataOutputStream(zs);
+      ds.writeInt(entries.size());
+      for (Entry e : entries) {
+        ds.write(ChunkHelper.toBytes(e.id));
+        ds.writeInt(e.len);
+        ds.writeInt(e.crc);
+      }
+      ds.flush();
+      zs.finish();
+    } catch (IOException e) {
+      throw new PngjOutputException(e);
+    }
+  }
+
+  /**
+   * Reads a catalog written by {@link #writeTo(OutputStream)}. The stream is not closed.
+   */
+  public static ChunkCatalog readFrom(InputStream is) {
+    try {
+      DataInputStream ds = new DataInputStream(is);
+      if (ds.readInt() != MAGIC)
+        throw new PngjInputException("not a PNGJ chunk catalog");
+      int version = ds.readInt();
+      if (version != VERSION)
+        throw new PngjInputException("unsupported chunk catalog version " + version);
+      ds = new DataInputStream(new InflaterInputStream(is));
+      int n = ds.readInt();
+      List<Entry> list = new ArrayList<Entry>(n);
+      byte[] idbytes = new byte[4];
+      long offset = PngHelperInternal.getPngIdSignature().length;
+      for (int i = 0; i < n; i++) {
+        ds.readFully(idbytes);
+        int len = ds.readInt();
+        list.add(new Entry(ChunkHelper.idFromBytes(idbytes, 0), offset, len, ds.readInt()));
+        offset += len + 12L;
+      }
+      return new ChunkCatalog(list);
+    } catch (IOException e) {
+      throw new PngjInputException(e);
+    }
+  }
+
+  /** All the chunks, in file order */
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  /** Chunks with this id, in file order */
+  public List<Entry> getById(String id) {
+    List<Entry> list = new ArrayList<Entry>();
+    for (Entry e : entries)
+      if (e.id.equals(id))
+        list.add(e);
+    return list;
+  }
+
+  /** First chunk with this id; null if none */
+  public Entry getFirst(String id) {
+    for (Entry e : entries)
+      if (e.id.equals(id))
+        return e;
+    return null;
+  }
+
+  /** Sum of the data lengths of the chunks with this id (eg, for IDAT: the compressed size of the image) */
+  public long getTotalLen(String id) {
+    long n = 0;
+    for (Entry e : entries)
+      if (e.id.equals(id))
+        n += e.len;
+    return n;
+  }
+
+  /** Total size of the PNG, including the signature */
+  public long getFileSize() {
+    if (entries.isEmpty())
+      return 0;
+    Entry last = entries.get(entries.size() - 1);
+    return last.offset + (last.len + 12L);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Entry e : entries)
+      sb.append(e).append('\n');
+    return sb.toString();
+  }
+
+  /**
+   * A chunk of the catalog
+   */
+  public static class Entry {
+    public final String id;
+    /** offset of the chunk (its length field) in the file */
+    public final long offset;
+    /** length of the chunk data */
+    public final int len;
+    /** CRC as stored in the file (not checked) */
+    public final int crc;
+
+    public Entry(String id, long offset, int len, int crc) {
+      this.id = id;
+      this.offset = offset;
+      this.len = len;
+      this.crc = crc;
+    }
+
+    @Override
+    public String toString() {
+      return id + "[" + len + "]@" + offset;
+    }
+  }
+}
@@ -138,6 +138,21 @@ public abstract class ChunkReader {
     return bytesForData + crcRead;
   }
 
+  /**
+   * Marks the rest of the chunk data as read, without processing it; the CRC will not be checked. The caller must skip
+   * the corresponding bytes in the source (the CRC itself must still be fed).
+   * 
+   * @return bytes of data skipped
+   */
+  public final int skipRemainingData() {
+    int n = chunkRaw.len - read;
+    if (n > 0) {
+      crcCheck = false;
+      read = chunkRaw.len;
+    }
+    return n;
+  }
+
   /**
    * Chunks has been read
    * 
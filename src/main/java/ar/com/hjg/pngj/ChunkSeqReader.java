@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import ar.com.hjg.pngj.ChunkReader.ChunkReaderMode;
@@ -21,6 +22,7 @@ public class ChunkSeqReader implements IBytesConsumer {
   protected final boolean withSignature;
 
   private byte[] buf0 = new byte[8]; // for signature or chunk starts
+  private byte[] directBuf; // for consuming from direct buffers
   private int buf0len = 0;
 
   private boolean signatureDone = false;
@@ -92,7 +94,7 @@ public class ChunkSeqReader implements IBytesConsumer {
         if (buf0len == 8) { // end reading chunk length and id
           chunkCount++;
           int clen = PngHelperInternal.readInt4fromBytes(buf0, 0);
-          String cid = ChunkHelper.toString(buf0, 4, 4);
+          String cid = ChunkHelper.idFromBytes(buf0, 4);
           startNewChunk(clen, cid, bytesCount - 8);
           buf0len = 0;
         }
@@ -136,6 +138,39 @@ public class ChunkSeqReader implements IBytesConsumer {
     return true;
   }
 
+  /**
+   * Same as {@link #consume(byte[], int, int)}, from the remaining bytes of a buffer, whose position is advanced by the
+   * bytes consumed. A heap buffer is consumed directly from its array.
+   */
+  public int consume(ByteBuffer bb) {
+    if (bb.hasArray()) {
+      int n = consume(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
+      if (n > 0)
+        bb.position(bb.position() + n);
+      return n;
+    }
+    if (directBuf == null)
+      directBuf = new byte[8192];
+    int pos = bb.position();
+    int len = Math.min(bb.remaining(), directBuf.length);
+    bb.get(directBuf, 0, len);
+    int n = consume(directBuf, 0, len);
+    bb.position(pos + (n > 0 ? n : 0));
+    return n;
+  }
+
+  /**
+   * Feeds all the remaining bytes of the buffer, see {@link #consume(ByteBuffer)}. Only for callback mode.
+   * 
+   * @return true if succceded
+   */
+  public boolean feedAll(ByteBuffer bb) {
+    while (bb.hasRemaining())
+      if (consume(bb) < 1)
+        return false;
+    return true;
+  }
+
   /**
    * Called for all chunks when a chunk start has been read (id and length), before the chunk data itself is read. It
    * creates a new ChunkReader (field accesible via {@link #getCurChunkReader()}) in the corresponding mode, and
@@ -310,6 +345,18 @@ public class ChunkSeqReader implements IBytesConsumer {
     return curChunkReader;
   }
 
+  /**
+   * Skips the pending data of the current chunk (see {@link ChunkReader#skipRemainingData()}). The caller must skip the
+   * returned number of bytes in the source, before feeding again.
+   */
+  public int skipCurrentChunkData() {
+    if (curChunkReader == null || curChunkReader.isDone())
+      return 0;
+    int n = curChunkReader.skipRemainingData();
+    bytesCount += n;
+    return n;
+  }
+
   /**
    * The latest deflated set (typically IDAT chunks) reader. Notice that there could be several idat sets (eg for APNG)
    */
@@ -1,7 +1,9 @@
 package ar.com.hjg.pngj;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import ar.com.hjg.pngj.ChunkReader.ChunkReaderMode;
@@ -40,11 +42,13 @@ public class ChunkSeqReaderPng extends ChunkSeqReader {
   private boolean includeNonBufferedChunks = false;
 
   private Set<String> chunksToSkip = new HashSet<String>();
+  private Map<String, IChunkStreamHandler> streamHandlers = new HashMap<String, IChunkStreamHandler>();
   private long maxTotalBytesRead = 0;
   private long skipChunkMaxSize = 0;
   private long maxBytesMetadata = 0;
   private IChunkFactory chunkFactory;
   private ChunkLoadBehaviour chunkLoadBehaviour = ChunkLoadBehaviour.LOAD_CHUNK_ALWAYS;
+  private int inflateBlockLen = 0;
 
   public ChunkSeqReaderPng(boolean callbackMode) {
     super();
@@ -94,6 +98,8 @@ public class ChunkSeqReaderPng extends ChunkSeqReader {
           + " offset:" + getBytesCount() + " len=" + len);
     if (chunksToSkip.contains(id))
       return true; // specific skip
+    if (streamHandlers.containsKey(id))
+      return false; // streamed: no size limits
     if (skipChunkMaxSize > 0 && len > skipChunkMaxSize)
       return true; // too big chunk
     if (maxBytesMetadata > 0 && len > maxBytesMetadata - bytesAncChunksLoaded)
@@ -133,6 +139,46 @@ public class ChunkSeqReaderPng extends ChunkSeqReader {
     this.chunksToSkip.remove(chunkToSkip);
   }
 
+  /**
+   * Sets a handler that will process the chunks with this id as they are read, instead of buffering them (null:
+   * removes it). These chunks are not subject to the size limits ({@link #setMaxBytesMetadata(long)},
+   * {@link #setSkipChunkMaxSize(long)}), and are not stored in the chunks list (unless
+   * {@link #setIncludeNonBufferedChunks(boolean)}). Only for ancillary chunks.
+   */
+  public void setChunkStreamHandler(String id, IChunkStreamHandler handler) {
+    if (ChunkHelper.isCritical(id))
+      throw new PngjException("critical chunks cannot be streamed: " + id);
+    if (handler == null)
+      streamHandlers.remove(id);
+    else
+      streamHandlers.put(id, handler);
+  }
+
+  public IChunkStreamHandler getChunkStreamHandler(String id) {
+    return streamHandlers.get(id);
+  }
+
+  @Override
+  protected ChunkReader createChunkReaderForNewChunk(String id, int len, long offset, boolean skip) {
+    final IChunkStreamHandler handler = skip ? null : streamHandlers.get(id);
+    if (handler == null)
+      return super.createChunkReaderForNewChunk(id, len, offset, skip);
+    ChunkReader cr = new ChunkReader(len, id, offset, ChunkReaderMode.PROCESS) {
+      @Override
+      protected void chunkDone() {
+        handler.chunkDone(getChunkRaw());
+        postProcessChunk(this);
+      }
+
+      @Override
+      protected void processData(int offsetInChunk, byte[] buf, int off, int len) {
+        handler.processData(getChunkRaw(), offsetInChunk, buf, off, len);
+      }
+    };
+    handler.chunkStart(cr.getChunkRaw());
+    return cr;
+  }
+
   public boolean firstChunksNotYetRead() {
     return getCurrentChunkGroup() < ChunksList.CHUNK_GROUP_4_IDAT;
   }
@@ -169,9 +215,22 @@ public class ChunkSeqReaderPng extends ChunkSeqReader {
   protected DeflatedChunksSet createIdatSet(String id) {
     IdatSet ids = new IdatSet(id, getCurImgInfo(), deinterlacer);
     ids.setCallbackMode(callbackMode);
+    ids.setInflateBlockLen(inflateBlockLen);
     return ids;
   }
 
+  /**
+   * Block mode for the IDAT set, see {@link DeflatedChunksSet#setInflateBlockLen(int)}. Must be called before the
+   * IDAT chunks start. Default: 0 (disabled)
+   */
+  public void setInflateBlockLen(int inflateBlockLen) {
+    this.inflateBlockLen = inflateBlockLen;
+  }
+
+  public int getInflateBlockLen() {
+    return inflateBlockLen;
+  }
+
   public IdatSet getIdatSet() {
     DeflatedChunksSet c = getCurReaderDeflatedSet();
     return c instanceof IdatSet ? (IdatSet) c : null;
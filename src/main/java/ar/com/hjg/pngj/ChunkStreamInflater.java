@@ -0,0 +1,178 @@
+package ar.com.hjg.pngj;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import ar.com.hjg.pngj.chunks.ChunkHelper;
+import ar.com.hjg.pngj.chunks.ChunkRaw;
+
+/**
+ * A {@link IChunkStreamHandler} for zTXt, iTXt and iCCP chunks: it parses the header (keyword, etc) and feeds the
+ * inflated content (the text, or the ICC profile) to a consumer, in blocks of bounded size. For an uncompressed iTXt,
+ * the text is fed as is.
+ * <p>
+ * The header fields of the current chunk ({@link #getKeyword()}, etc) are available to the consumer. If the consumer
+ * returns a negative value, the rest of the chunk is ignored.
+ */
+public class ChunkStreamInflater implements IChunkStreamHandler {
+
+  private static final int MAX_HEADER_LEN = 65536;
+
+  private final IBytesConsumer consumer;
+  private final byte[] out;
+  private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+  private Inflater inflater;
+  private String chunkId;
+  private String keyword;
+  private String languageTag;
+  private String translatedKeyword;
+  private boolean headerDone;
+  private int headerNulls, headerSkip;
+  private boolean compressed;
+  private boolean consumerDone;
+  private long inflatedBytes;
+
+  public ChunkStreamInflater(IBytesConsumer consumer) {
+    this(consumer, 8192);
+  }
+
+  /**
+   * @param blockSize Maximum size of the blocks fed to the consumer
+   */
+  public ChunkStreamInflater(IBytesConsumer consumer, int blockSize) {
+    this.consumer = consumer;
+    out = new byte[blockSize];
+  }
+
+  public void chunkStart(ChunkRaw chunkRaw) {
+    if (!(chunkRaw.id.equals(ChunkHelper.zTXt) || chunkRaw.id.equals(ChunkHelper.iTXt) || chunkRaw.id
+        .equals(ChunkHelper.iCCP)))
+      throw new PngjInputException("chunk " + chunkRaw.id + " not supported by " + getClass().getSimpleName());
+    chunkId = chunkRaw.id;
+    if (inflater != null) // previous chunk not finished
+      inflater.end();
+    inflater = null;
+    keyword = languageTag = translatedKeyword = null;
+    header.reset();
+    headerDone = consumerDone = false;
+    headerNulls = headerSkip = 0;
+    inflatedBytes = 0;
+  }
+
+  public void processData(ChunkRaw chunkRaw, int offsetInChunk, byte[] buf, int off, int len) {
+    if (!headerDone) {
+      int n = 0;
+      while (n < len && !headerDone) {
+        byte b = buf[off + n++];
+        header.write(b);
+        if (headerSkip > 0)
+          headerSkip--;
+        else if (b == 0 && ++headerNulls == 1)
+          headerSkip = chunkId.equals(ChunkHelper.iTXt) ? 2 : 1; // compression flag and/or method
+        if (headerSkip == 0 && headerNulls == (chunkId.equals(ChunkHelper.iTXt) ? 3 : 1)) {
+          parseHeader(header.toByteArray());
+          headerDone = true;
+        }
+      }
+      if (!headerDone && header.size() > MAX_HEADER_LEN)
+        throw new PngjInputException("bad " + chunkId + " chunk, header too long");
+      off += n;
+      len -= n;
+    }
+    if (len == 0 || consumerDone)
+      return;
+    if (compressed) {
+      inflater.setInput(buf, off, len);
+      inflateAvailable();
+    } else
+      feed(buf, off, len);
+  }
+
+  public void chunkDone(ChunkRaw chunkRaw) {
+    if (!headerDone)
+      throw new PngjInputException("bad " + chunkId + " chunk, incomplete header");
+    if (compressed) {
+      boolean finished = inflater.finished();
+      inflater.end();
+      inflater = null;
+      if (!finished && !consumerDone)
+        throw new PngjInputException("bad " + chunkId + " chunk, incomplete compressed data");
+    }
+  }
+
+  private void parseHeader(byte[] h) {
+    int null0 = 0;
+    while (h[null0] != 0)
+      null0++;
+    keyword = ChunkHelper.toString(h, 0, null0);
+    if (chunkId.equals(ChunkHelper.iTXt)) {
+      compressed = h[null0 + 1] != 0;
+      if (compressed && h[null0 + 2] != 0)
+        throw new PngjInputException("bad iTXt chunk, unknown compression method");
+      int null1 = null0 + 3;
+      while (h[null1] != 0)
+        null1++;
+      languageTag = ChunkHelper.toString(h, null0 + 3, null1 - null0 - 3);
+      translatedKeyword = ChunkHelper.toStringUTF8(h, null1 + 1, h.length - null1 - 2);
+    } else { // zTXt, iCCP: keyword, null, compression method
+      if (h[null0 + 1] != 0)
+        throw new PngjInputException("bad " + chunkId + " chunk, unknown compression method");
+      compressed = true;
+    }
+    if (compressed)
+      inflater = new Inflater();
+  }
+
+  private void inflateAvailable() {
+    try {
+      while (!consumerDone && !inflater.finished()) {
+        int n = inflater.inflate(out);
+        if (n > 0)
+          feed(out, 0, n);
+        else if (inflater.needsInput() || inflater.needsDictionary())
+          break;
+      }
+    } catch (DataFormatException e) {
+      throw new PngjInputException("bad " + chunkId + " chunk, error decompressing", e);
+    }
+  }
+
+  private void feed(byte[] buf, int off, int len) {
+    inflatedBytes += len;
+    while (len > 0) {
+      int n = consumer.consume(buf, off, len);
+      if (n < 0) {
+        consumerDone = true;
+        return;
+      }
+      off += n;
+      len -= n;
+    }
+  }
+
+  /** Id of the current (or last) chunk */
+  public String getChunkId() {
+    return chunkId;
+  }
+
+  /** Keyword (for iCCP: profile name) of the current chunk */
+  public String getKeyword() {
+    return keyword;
+  }
+
+  /** Only for iTXt */
+  public String getLanguageTag() {
+    return languageTag;
+  }
+
+  /** Only for iTXt */
+  public String getTranslatedKeyword() {
+    return translatedKeyword;
+  }
+
+  /** Bytes fed to the consumer for the current chunk */
+  public long getInflatedBytes() {
+    return inflatedBytes;
+  }
+}
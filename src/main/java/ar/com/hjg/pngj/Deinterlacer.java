@@ -98,6 +98,31 @@ public class Deinterlacer {
     }
   }
 
+  /**
+   * Spacing (dx,dy) of the grid of pixels that are known after decoding passes 1 to <tt>p</tt>. The grid starts at
+   * (0,0)
+   */
+  public static int[] gridAfterPass(final int p) {
+    switch (p) {
+      case 1:
+        return new int[] {8, 8};
+      case 2:
+        return new int[] {4, 8};
+      case 3:
+        return new int[] {4, 4};
+      case 4:
+        return new int[] {2, 4};
+      case 5:
+        return new int[] {2, 2};
+      case 6:
+        return new int[] {1, 2};
+      case 7:
+        return new int[] {1, 1};
+      default:
+        throw new PngjExceptionInternal("bad interlace pass" + p);
+    }
+  }
+
   /**
    * current row number inside the "sub image"
    */
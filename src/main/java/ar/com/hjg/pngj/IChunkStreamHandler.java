@@ -0,0 +1,29 @@
+package ar.com.hjg.pngj;
+
+import ar.com.hjg.pngj.chunks.ChunkRaw;
+
+/**
+ * Processes the data of an ancillary chunk as it is read (in {@link ChunkReader.ChunkReaderMode#PROCESS} mode),
+ * instead of buffering it, so that chunks of any size can be handled in constant memory.
+ * <p>
+ * Registered by chunk id with {@link ChunkSeqReaderPng#setChunkStreamHandler(String, IChunkStreamHandler)}. The same
+ * handler is called for each chunk with that id, one at a time. See {@link ChunkStreamInflater} for compressed text
+ * and ICC profiles.
+ */
+public interface IChunkStreamHandler {
+
+  /**
+   * A chunk starts. Its data is not yet read (<tt>chunkRaw.data</tt> is null)
+   */
+  void chunkStart(ChunkRaw chunkRaw);
+
+  /**
+   * A fragment of the chunk data; called several times (or never, for an empty chunk)
+   */
+  void processData(ChunkRaw chunkRaw, int offsetInChunk, byte[] buf, int off, int len);
+
+  /**
+   * The chunk was fully read, and the CRC checked (if enabled)
+   */
+  void chunkDone(ChunkRaw chunkRaw);
+}
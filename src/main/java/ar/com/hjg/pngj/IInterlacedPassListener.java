@@ -0,0 +1,18 @@
+package ar.com.hjg.pngj;
+
+/**
+ * Listener for the progress of the decoding of an interlaced image, see
+ * {@link PngReader#setInterlacedPassListener(IInterlacedPassListener, boolean)}
+ */
+public interface IInterlacedPassListener {
+  /**
+   * Called after each Adam7 pass is decoded (also for passes without pixels, in tiny images), while reading.
+   * <p>
+   * The lines are those being loaded: they hold the pixels of passes 1 to <tt>pass</tt>, at the positions of the grid
+   * given by {@link Deinterlacer#gridAfterPass(int)}; the rest are upsampled (if so requested) or undefined. They should
+   * not be modified.
+   * 
+   * @param pass 1-7
+   */
+  void passDone(int pass, IImageLineSet<? extends IImageLine> lines);
+}
@@ -21,6 +21,10 @@ public class IdatSet extends DeflatedChunksSet {
 
   protected int filterUseStat[] = new int[5]; // for stats
 
+  private boolean deferredUnfilter = false;
+  private boolean rowPending = false; // deferred mode: current row not yet unfiltered
+  private byte[] lastTarget; // the previous row was unfiltered here (no filter byte), null if in rowUnfiltered
+
   /**
    * @param id Chunk id (first chunk), should be shared by all concatenated chunks
    * @param iminfo Image info
@@ -54,82 +58,597 @@ public class IdatSet extends DeflatedChunksSet {
 
   // nbytes: NOT including the filter byte. leaves result in rowUnfiltered
   protected void unfilterRow(int nbytes) {
+    rowPending = false;
     if (rowUnfiltered == null || rowUnfiltered.length < row.length) {
       rowUnfiltered = new byte[row.length];
       rowUnfilteredPrev = new byte[row.length];
     }
     if (rowinfo.rowNsubImg == 0)
       Arrays.fill(rowUnfiltered, (byte) 0); // see swap that follows
+    else if (lastTarget != null) // previous row was unfiltered elsewhere
+      System.arraycopy(lastTarget, 0, rowUnfiltered, 1, nbytes);
+    lastTarget = null;
     // swap
     byte[] tmp = rowUnfiltered;
     rowUnfiltered = rowUnfilteredPrev;
     rowUnfilteredPrev = tmp;
 
+    unfilterRow(row, rowUnfiltered, rowUnfilteredPrev, nbytes, imgInfo.bytesPixel);
+    filterUseStat[row[0]]++;
+  }
+
+  /**
+   * Deferred mode: rows are not unfiltered when they are ready (in {@link #preProcessRow()}), instead the caller must
+   * call {@link #unfilterRowInto(byte[])} for each row, before {@link #advanceToNextRow()}. This allows to unfilter
+   * directly into the destination line (eg. the scanline of a {@link ImageLineByte}), with no intermediate copy.
+   * <p>
+   * Only for non interlaced images with bitDepth 8, in polled mode.
+   */
+  public void setDeferredUnfilter(boolean deferredUnfilter) {
+    if (deferredUnfilter && (deinterlacer != null || imgInfo.bitDepth != 8 || isCallbackMode()))
+      throw new PngjExceptionInternal("deferred unfilter only for 8 bits non interlaced, in polled mode");
+    this.deferredUnfilter = deferredUnfilter;
+  }
+
+  public boolean isDeferredUnfilter() {
+    return deferredUnfilter;
+  }
+
+  /**
+   * Unfilters the current row (see {@link #setDeferredUnfilter(boolean)}) into <tt>dst</tt>, which gets the
+   * {@link ImageInfo#bytesPerRow} bytes without the filter byte. If <tt>dst</tt> is null, or if the row had already
+   * been unfiltered, the result is left in {@link #getUnfilteredRow()} (and copied to <tt>dst</tt>).
+   * <p>
+   * <tt>dst</tt> is kept as reference for the unfiltering of the next row, it must not be modified until then. It can
+   * be the same array in consecutive rows (the unfiltering is done in place).
+   */
+  public void unfilterRowInto(byte[] dst) {
+    int nbytes = rowinfo.bytesRow;
+    if (!rowPending || dst == null) {
+      if (rowPending)
+        unfilterRow(nbytes);
+      if (dst != null)
+        System.arraycopy(lastTarget != null ? lastTarget : rowUnfiltered, lastTarget != null ? 0 : 1, dst, 0, nbytes);
+      return;
+    }
+    rowPending = false;
+    if (rowinfo.rowNsubImg == 0)
+      Arrays.fill(dst, 0, nbytes, (byte) 0);
+    else if (lastTarget == null)
+      System.arraycopy(rowUnfiltered, 1, dst, 0, nbytes);
+    RowFilterEngine.getDefault().unfilterRow(row, dst, lastTarget != null ? lastTarget : dst, 0, nbytes,
+        imgInfo.bytesPixel);
+    filterUseStat[row[0]]++;
+    lastTarget = dst;
+  }
+
+  /**
+   * Unfilters a raw row (with its filter byte at position 0) into <tt>rowUnfiltered</tt>. The filter byte is also
+   * copied.
+   * <p>
+   * This does not touch the state of any IdatSet, it can be used from another thread (see {@link PngReaderPipelined})
+   * 
+   * @param row Raw (filtered) row, as inflated
+   * @param rowUnfiltered Destination
+   * @param rowUnfilteredPrev Previous unfiltered row (all zeros for the first row of each subimage)
+   * @param nbytes NOT including the filter byte
+   * @param bytesPixel see {@link ImageInfo#bytesPixel}
+   * @see RowFilterEngine#getDefault()
+   */
+  static void unfilterRow(byte[] row, byte[] rowUnfiltered, byte[] rowUnfilteredPrev, int nbytes,
+      int bytesPixel) {
+    RowFilterEngine.getDefault().unfilterRow(row, rowUnfiltered, rowUnfilteredPrev, nbytes, bytesPixel);
+  }
+
+  /**
+   * Plain java implementation of {@link RowFilterEngine#unfilterRow(byte[], byte[], byte[], int, int, int)}. In place
+   * (same array for the rows unfiltered and previous) is supported except for PAETH with a bytesPixel not specialized
+   * (5, 7 and greater than 8).
+   */
+  static void unfilterRowScalar(byte[] row, byte[] rowUnfiltered, byte[] rowUnfilteredPrev, int offset, int nbytes,
+      int bytesPixel) {
     int ftn = row[0];
     if (!FilterType.isValidStandard(ftn))
       throw new PngjInputException("Filter type " + ftn + " invalid");
     FilterType ft = FilterType.getByVal(ftn);
-    filterUseStat[ftn]++;
-    rowUnfiltered[0] = row[0]; // we copy the filter type, can be useful
+    if (offset == 1)
+      rowUnfiltered[0] = row[0]; // we copy the filter type, can be useful
+    final int o = offset - 1;
     switch (ft) {
       case FILTER_NONE:
-        unfilterRowNone(nbytes);
+        unfilterRowNone(row, rowUnfiltered, nbytes, o);
         break;
       case FILTER_SUB:
-        unfilterRowSub(nbytes);
+        unfilterRowSub(row, rowUnfiltered, nbytes, bytesPixel, o);
         break;
       case FILTER_UP:
-        unfilterRowUp(nbytes);
+        unfilterRowUp(row, rowUnfiltered, rowUnfilteredPrev, nbytes, o);
         break;
       case FILTER_AVERAGE:
-        unfilterRowAverage(nbytes);
+        unfilterRowAverage(row, rowUnfiltered, rowUnfilteredPrev, nbytes, bytesPixel, o);
         break;
       case FILTER_PAETH:
-        unfilterRowPaeth(nbytes);
+        unfilterRowPaeth(row, rowUnfiltered, rowUnfilteredPrev, nbytes, bytesPixel, o);
         break;
       default:
         throw new PngjInputException("Filter type " + ftn + " not implemented");
     }
   }
 
-  private void unfilterRowAverage(final int nbytes) {
+  private static void unfilterRowAverage(final byte[] row, final byte[] rowUnfiltered,
+      final byte[] rowUnfilteredPrev, final int nbytes, final int bytesPixel, final int o) {
+    switch (bytesPixel) { // specialized kernels
+      case 1:
+        unfilterRowAverage1(row, rowUnfiltered, rowUnfilteredPrev, nbytes, o);
+        return;
+      case 2:
+        unfilterRowAverage2(row, rowUnfiltered, rowUnfilteredPrev, nbytes, o);
+        return;
+      case 3:
+        unfilterRowAverage3(row, rowUnfiltered, rowUnfilteredPrev, nbytes, o);
+        return;
+      case 4:
+        unfilterRowAverage4(row, rowUnfiltered, rowUnfilteredPrev, nbytes, o);
+        return;
+      case 6:
+        unfilterRowAverage6(row, rowUnfiltered, rowUnfilteredPrev, nbytes, o);
+        return;
+      case 8:
+        unfilterRowAverage8(row, rowUnfiltered, rowUnfilteredPrev, nbytes, o);
+        return;
+    }
     int i, j, x;
-    for (j = 1 - imgInfo.bytesPixel, i = 1; i <= nbytes; i++, j++) {
-      x = j > 0 ? (rowUnfiltered[j] & 0xff) : 0;
-      rowUnfiltered[i] = (byte) (row[i] + (x + (rowUnfilteredPrev[i] & 0xFF)) / 2);
+    for (j = 1 - bytesPixel, i = 1; i <= nbytes; i++, j++) {
+      x = j > 0 ? (rowUnfiltered[j + o] & 0xff) : 0;
+      rowUnfiltered[i + o] = (byte) (row[i] + (x + (rowUnfilteredPrev[i + o] & 0xFF)) / 2);
     }
   }
 
-  private void unfilterRowNone(final int nbytes) {
+  private static void unfilterRowNone(final byte[] row, final byte[] rowUnfiltered, final int nbytes, final int o) {
     for (int i = 1; i <= nbytes; i++) {
-      rowUnfiltered[i] = (byte) (row[i]);
+      rowUnfiltered[i + o] = (byte) (row[i]);
     }
   }
 
-  private void unfilterRowPaeth(final int nbytes) {
+  private static void unfilterRowPaeth(final byte[] row, final byte[] rowUnfiltered,
+      final byte[] rowUnfilteredPrev, final int nbytes, final int bytesPixel, final int o) {
+    switch (bytesPixel) { // specialized kernels
+      case 1:
+        unfilterRowPaeth1(row, rowUnfiltered, rowUnfilteredPrev, nbytes, o);
+        return;
+      case 2:
+        unfilterRowPaeth2(row, rowUnfiltered, rowUnfilteredPrev, nbytes, o);
+        return;
+      case 3:
+        unfilterRowPaeth3(row, rowUnfiltered, rowUnfilteredPrev, nbytes, o);
+        return;
+      case 4:
+        unfilterRowPaeth4(row, rowUnfiltered, rowUnfilteredPrev, nbytes, o);
+        return;
+      case 6:
+        unfilterRowPaeth6(row, rowUnfiltered, rowUnfilteredPrev, nbytes, o);
+        return;
+      case 8:
+        unfilterRowPaeth8(row, rowUnfiltered, rowUnfilteredPrev, nbytes, o);
+        return;
+    }
     int i, j, x, y;
-    for (j = 1 - imgInfo.bytesPixel, i = 1; i <= nbytes; i++, j++) {
-      x = j > 0 ? (rowUnfiltered[j] & 0xFF) : 0;
-      y = j > 0 ? (rowUnfilteredPrev[j] & 0xFF) : 0;
-      rowUnfiltered[i] =
+    for (j = 1 - bytesPixel, i = 1; i <= nbytes; i++, j++) {
+      x = j > 0 ? (rowUnfiltered[j + o] & 0xFF) : 0;
+      y = j > 0 ? (rowUnfilteredPrev[j + o] & 0xFF) : 0;
+      rowUnfiltered[i + o] =
           (byte) (row[i] + PngHelperInternal
-              .filterPaethPredictor(x, rowUnfilteredPrev[i] & 0xFF, y));
+              .filterPaethPredictor(x, rowUnfilteredPrev[i + o] & 0xFF, y));
     }
   }
 
-  private void unfilterRowSub(final int nbytes) {
+  private static void unfilterRowSub(final byte[] row, final byte[] rowUnfiltered, final int nbytes,
+      final int bytesPixel, final int o) {
+    switch (bytesPixel) { // specialized kernels
+      case 1:
+        unfilterRowSub1(row, rowUnfiltered, nbytes, o);
+        return;
+      case 2:
+        unfilterRowSub2(row, rowUnfiltered, nbytes, o);
+        return;
+      case 3:
+        unfilterRowSub3(row, rowUnfiltered, nbytes, o);
+        return;
+      case 4:
+        unfilterRowSub4(row, rowUnfiltered, nbytes, o);
+        return;
+      case 6:
+        unfilterRowSub6(row, rowUnfiltered, nbytes, o);
+        return;
+      case 8:
+        unfilterRowSub8(row, rowUnfiltered, nbytes, o);
+        return;
+    }
     int i, j;
-    for (i = 1; i <= imgInfo.bytesPixel; i++) {
-      rowUnfiltered[i] = (byte) (row[i]);
+    for (i = 1; i <= bytesPixel; i++) {
+      rowUnfiltered[i + o] = (byte) (row[i]);
+    }
+    for (j = 1, i = bytesPixel + 1; i <= nbytes; i++, j++) {
+      rowUnfiltered[i + o] = (byte) (row[i] + rowUnfiltered[j + o]);
+    }
+  }
+
+  /*
+   * Kernels specialized by bytesPixel: left and upper-left values are kept in locals (initialized to 0, which takes
+   * care of the first pixel), and Paeth is branchless. They are unrolled by hand, one block per byte of the pixel: a
+   * change in one of them must be repeated in the others of the same filter (UnfilterTest checks them against the
+   * generic code).
+   */
+
+  private static void unfilterRowSub1(final byte[] row, final byte[] rowUnfiltered, final int nbytes, final int o) {
+    int a0 = 0;
+    for (int i = 1; i <= nbytes; i++) {
+      a0 = (row[i] + a0) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+    }
+  }
+
+  private static void unfilterRowSub2(final byte[] row, final byte[] rowUnfiltered, final int nbytes, final int o) {
+    int a0 = 0, a1 = 0;
+    for (int i = 1; i <= nbytes; i += 2) {
+      a0 = (row[i] + a0) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      a1 = (row[i + 1] + a1) & 0xff;
+      rowUnfiltered[i + 1 + o] = (byte) a1;
     }
-    for (j = 1, i = imgInfo.bytesPixel + 1; i <= nbytes; i++, j++) {
-      rowUnfiltered[i] = (byte) (row[i] + rowUnfiltered[j]);
+  }
+
+  private static void unfilterRowSub3(final byte[] row, final byte[] rowUnfiltered, final int nbytes, final int o) {
+    int a0 = 0, a1 = 0, a2 = 0;
+    for (int i = 1; i <= nbytes; i += 3) {
+      a0 = (row[i] + a0) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      a1 = (row[i + 1] + a1) & 0xff;
+      rowUnfiltered[i + 1 + o] = (byte) a1;
+      a2 = (row[i + 2] + a2) & 0xff;
+      rowUnfiltered[i + 2 + o] = (byte) a2;
     }
   }
 
-  private void unfilterRowUp(final int nbytes) {
+  private static void unfilterRowSub4(final byte[] row, final byte[] rowUnfiltered, final int nbytes, final int o) {
+    int a0 = 0, a1 = 0, a2 = 0, a3 = 0;
+    for (int i = 1; i <= nbytes; i += 4) {
+      a0 = (row[i] + a0) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      a1 = (row[i + 1] + a1) & 0xff;
+      rowUnfiltered[i + 1 + o] = (byte) a1;
+      a2 = (row[i + 2] + a2) & 0xff;
+      rowUnfiltered[i + 2 + o] = (byte) a2;
+      a3 = (row[i + 3] + a3) & 0xff;
+      rowUnfiltered[i + 3 + o] = (byte) a3;
+    }
+  }
+
+  private static void unfilterRowSub6(final byte[] row, final byte[] rowUnfiltered, final int nbytes, final int o) {
+    int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0;
+    for (int i = 1; i <= nbytes; i += 6) {
+      a0 = (row[i] + a0) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      a1 = (row[i + 1] + a1) & 0xff;
+      rowUnfiltered[i + 1 + o] = (byte) a1;
+      a2 = (row[i + 2] + a2) & 0xff;
+      rowUnfiltered[i + 2 + o] = (byte) a2;
+      a3 = (row[i + 3] + a3) & 0xff;
+      rowUnfiltered[i + 3 + o] = (byte) a3;
+      a4 = (row[i + 4] + a4) & 0xff;
+      rowUnfiltered[i + 4 + o] = (byte) a4;
+      a5 = (row[i + 5] + a5) & 0xff;
+      rowUnfiltered[i + 5 + o] = (byte) a5;
+    }
+  }
+
+  private static void unfilterRowSub8(final byte[] row, final byte[] rowUnfiltered, final int nbytes, final int o) {
+    int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0, a6 = 0, a7 = 0;
+    for (int i = 1; i <= nbytes; i += 8) {
+      a0 = (row[i] + a0) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      a1 = (row[i + 1] + a1) & 0xff;
+      rowUnfiltered[i + 1 + o] = (byte) a1;
+      a2 = (row[i + 2] + a2) & 0xff;
+      rowUnfiltered[i + 2 + o] = (byte) a2;
+      a3 = (row[i + 3] + a3) & 0xff;
+      rowUnfiltered[i + 3 + o] = (byte) a3;
+      a4 = (row[i + 4] + a4) & 0xff;
+      rowUnfiltered[i + 4 + o] = (byte) a4;
+      a5 = (row[i + 5] + a5) & 0xff;
+      rowUnfiltered[i + 5 + o] = (byte) a5;
+      a6 = (row[i + 6] + a6) & 0xff;
+      rowUnfiltered[i + 6 + o] = (byte) a6;
+      a7 = (row[i + 7] + a7) & 0xff;
+      rowUnfiltered[i + 7 + o] = (byte) a7;
+    }
+  }
+
+  private static void unfilterRowAverage1(final byte[] row, final byte[] rowUnfiltered, final byte[] rowUnfilteredPrev,
+      final int nbytes, final int o) {
+    int a0 = 0;
+    int b;
+    for (int i = 1; i <= nbytes; i++) {
+      b = rowUnfilteredPrev[i + o] & 0xff;
+      a0 = (row[i] + ((a0 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+    }
+  }
+
+  private static void unfilterRowAverage2(final byte[] row, final byte[] rowUnfiltered, final byte[] rowUnfilteredPrev,
+      final int nbytes, final int o) {
+    int a0 = 0, a1 = 0;
+    int b;
+    for (int i = 1; i <= nbytes; i += 2) {
+      b = rowUnfilteredPrev[i + o] & 0xff;
+      a0 = (row[i] + ((a0 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      b = rowUnfilteredPrev[i + 1 + o] & 0xff;
+      a1 = (row[i + 1] + ((a1 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 1 + o] = (byte) a1;
+    }
+  }
+
+  private static void unfilterRowAverage3(final byte[] row, final byte[] rowUnfiltered, final byte[] rowUnfilteredPrev,
+      final int nbytes, final int o) {
+    int a0 = 0, a1 = 0, a2 = 0;
+    int b;
+    for (int i = 1; i <= nbytes; i += 3) {
+      b = rowUnfilteredPrev[i + o] & 0xff;
+      a0 = (row[i] + ((a0 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      b = rowUnfilteredPrev[i + 1 + o] & 0xff;
+      a1 = (row[i + 1] + ((a1 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 1 + o] = (byte) a1;
+      b = rowUnfilteredPrev[i + 2 + o] & 0xff;
+      a2 = (row[i + 2] + ((a2 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 2 + o] = (byte) a2;
+    }
+  }
+
+  private static void unfilterRowAverage4(final byte[] row, final byte[] rowUnfiltered, final byte[] rowUnfilteredPrev,
+      final int nbytes, final int o) {
+    int a0 = 0, a1 = 0, a2 = 0, a3 = 0;
+    int b;
+    for (int i = 1; i <= nbytes; i += 4) {
+      b = rowUnfilteredPrev[i + o] & 0xff;
+      a0 = (row[i] + ((a0 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      b = rowUnfilteredPrev[i + 1 + o] & 0xff;
+      a1 = (row[i + 1] + ((a1 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 1 + o] = (byte) a1;
+      b = rowUnfilteredPrev[i + 2 + o] & 0xff;
+      a2 = (row[i + 2] + ((a2 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 2 + o] = (byte) a2;
+      b = rowUnfilteredPrev[i + 3 + o] & 0xff;
+      a3 = (row[i + 3] + ((a3 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 3 + o] = (byte) a3;
+    }
+  }
+
+  private static void unfilterRowAverage6(final byte[] row, final byte[] rowUnfiltered, final byte[] rowUnfilteredPrev,
+      final int nbytes, final int o) {
+    int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0;
+    int b;
+    for (int i = 1; i <= nbytes; i += 6) {
+      b = rowUnfilteredPrev[i + o] & 0xff;
+      a0 = (row[i] + ((a0 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      b = rowUnfilteredPrev[i + 1 + o] & 0xff;
+      a1 = (row[i + 1] + ((a1 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 1 + o] = (byte) a1;
+      b = rowUnfilteredPrev[i + 2 + o] & 0xff;
+      a2 = (row[i + 2] + ((a2 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 2 + o] = (byte) a2;
+      b = rowUnfilteredPrev[i + 3 + o] & 0xff;
+      a3 = (row[i + 3] + ((a3 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 3 + o] = (byte) a3;
+      b = rowUnfilteredPrev[i + 4 + o] & 0xff;
+      a4 = (row[i + 4] + ((a4 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 4 + o] = (byte) a4;
+      b = rowUnfilteredPrev[i + 5 + o] & 0xff;
+      a5 = (row[i + 5] + ((a5 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 5 + o] = (byte) a5;
+    }
+  }
+
+  private static void unfilterRowAverage8(final byte[] row, final byte[] rowUnfiltered, final byte[] rowUnfilteredPrev,
+      final int nbytes, final int o) {
+    int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0, a6 = 0, a7 = 0;
+    int b;
+    for (int i = 1; i <= nbytes; i += 8) {
+      b = rowUnfilteredPrev[i + o] & 0xff;
+      a0 = (row[i] + ((a0 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      b = rowUnfilteredPrev[i + 1 + o] & 0xff;
+      a1 = (row[i + 1] + ((a1 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 1 + o] = (byte) a1;
+      b = rowUnfilteredPrev[i + 2 + o] & 0xff;
+      a2 = (row[i + 2] + ((a2 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 2 + o] = (byte) a2;
+      b = rowUnfilteredPrev[i + 3 + o] & 0xff;
+      a3 = (row[i + 3] + ((a3 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 3 + o] = (byte) a3;
+      b = rowUnfilteredPrev[i + 4 + o] & 0xff;
+      a4 = (row[i + 4] + ((a4 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 4 + o] = (byte) a4;
+      b = rowUnfilteredPrev[i + 5 + o] & 0xff;
+      a5 = (row[i + 5] + ((a5 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 5 + o] = (byte) a5;
+      b = rowUnfilteredPrev[i + 6 + o] & 0xff;
+      a6 = (row[i + 6] + ((a6 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 6 + o] = (byte) a6;
+      b = rowUnfilteredPrev[i + 7 + o] & 0xff;
+      a7 = (row[i + 7] + ((a7 + b) >> 1)) & 0xff;
+      rowUnfiltered[i + 7 + o] = (byte) a7;
+    }
+  }
+
+  private static void unfilterRowPaeth1(final byte[] row, final byte[] rowUnfiltered, final byte[] rowUnfilteredPrev,
+      final int nbytes, final int o) {
+    int a0 = 0, c0 = 0;
+    int b;
+    for (int i = 1; i <= nbytes; i++) {
+      b = rowUnfilteredPrev[i + o] & 0xff;
+      a0 = (row[i] + paeth(a0, b, c0)) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      c0 = b;
+    }
+  }
+
+  private static void unfilterRowPaeth2(final byte[] row, final byte[] rowUnfiltered, final byte[] rowUnfilteredPrev,
+      final int nbytes, final int o) {
+    int a0 = 0, a1 = 0, c0 = 0, c1 = 0;
+    int b;
+    for (int i = 1; i <= nbytes; i += 2) {
+      b = rowUnfilteredPrev[i + o] & 0xff;
+      a0 = (row[i] + paeth(a0, b, c0)) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      c0 = b;
+      b = rowUnfilteredPrev[i + 1 + o] & 0xff;
+      a1 = (row[i + 1] + paeth(a1, b, c1)) & 0xff;
+      rowUnfiltered[i + 1 + o] = (byte) a1;
+      c1 = b;
+    }
+  }
+
+  private static void unfilterRowPaeth3(final byte[] row, final byte[] rowUnfiltered, final byte[] rowUnfilteredPrev,
+      final int nbytes, final int o) {
+    int a0 = 0, a1 = 0, a2 = 0, c0 = 0, c1 = 0, c2 = 0;
+    int b;
+    for (int i = 1; i <= nbytes; i += 3) {
+      b = rowUnfilteredPrev[i + o] & 0xff;
+      a0 = (row[i] + paeth(a0, b, c0)) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      c0 = b;
+      b = rowUnfilteredPrev[i + 1 + o] & 0xff;
+      a1 = (row[i + 1] + paeth(a1, b, c1)) & 0xff;
+      rowUnfiltered[i + 1 + o] = (byte) a1;
+      c1 = b;
+      b = rowUnfilteredPrev[i + 2 + o] & 0xff;
+      a2 = (row[i + 2] + paeth(a2, b, c2)) & 0xff;
+      rowUnfiltered[i + 2 + o] = (byte) a2;
+      c2 = b;
+    }
+  }
+
+  private static void unfilterRowPaeth4(final byte[] row, final byte[] rowUnfiltered, final byte[] rowUnfilteredPrev,
+      final int nbytes, final int o) {
+    int a0 = 0, a1 = 0, a2 = 0, a3 = 0, c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+    int b;
+    for (int i = 1; i <= nbytes; i += 4) {
+      b = rowUnfilteredPrev[i + o] & 0xff;
+      a0 = (row[i] + paeth(a0, b, c0)) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      c0 = b;
+      b = rowUnfilteredPrev[i + 1 + o] & 0xff;
+      a1 = (row[i + 1] + paeth(a1, b, c1)) & 0xff;
+      rowUnfiltered[i + 1 + o] = (byte) a1;
+      c1 = b;
+      b = rowUnfilteredPrev[i + 2 + o] & 0xff;
+      a2 = (row[i + 2] + paeth(a2, b, c2)) & 0xff;
+      rowUnfiltered[i + 2 + o] = (byte) a2;
+      c2 = b;
+      b = rowUnfilteredPrev[i + 3 + o] & 0xff;
+      a3 = (row[i + 3] + paeth(a3, b, c3)) & 0xff;
+      rowUnfiltered[i + 3 + o] = (byte) a3;
+      c3 = b;
+    }
+  }
+
+  private static void unfilterRowPaeth6(final byte[] row, final byte[] rowUnfiltered, final byte[] rowUnfilteredPrev,
+      final int nbytes, final int o) {
+    int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0, c0 = 0, c1 = 0, c2 = 0, c3 = 0, c4 = 0, c5 = 0;
+    int b;
+    for (int i = 1; i <= nbytes; i += 6) {
+      b = rowUnfilteredPrev[i + o] & 0xff;
+      a0 = (row[i] + paeth(a0, b, c0)) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      c0 = b;
+      b = rowUnfilteredPrev[i + 1 + o] & 0xff;
+      a1 = (row[i + 1] + paeth(a1, b, c1)) & 0xff;
+      rowUnfiltered[i + 1 + o] = (byte) a1;
+      c1 = b;
+      b = rowUnfilteredPrev[i + 2 + o] & 0xff;
+      a2 = (row[i + 2] + paeth(a2, b, c2)) & 0xff;
+      rowUnfiltered[i + 2 + o] = (byte) a2;
+      c2 = b;
+      b = rowUnfilteredPrev[i + 3 + o] & 0xff;
+      a3 = (row[i + 3] + paeth(a3, b, c3)) & 0xff;
+      rowUnfiltered[i + 3 + o] = (byte) a3;
+      c3 = b;
+      b = rowUnfilteredPrev[i + 4 + o] & 0xff;
+      a4 = (row[i + 4] + paeth(a4, b, c4)) & 0xff;
+      rowUnfiltered[i + 4 + o] = (byte) a4;
+      c4 = b;
+      b = rowUnfilteredPrev[i + 5 + o] & 0xff;
+      a5 = (row[i + 5] + paeth(a5, b, c5)) & 0xff;
+      rowUnfiltered[i + 5 + o] = (byte) a5;
+      c5 = b;
+    }
+  }
+
+  private static void unfilterRowPaeth8(final byte[] row, final byte[] rowUnfiltered, final byte[] rowUnfilteredPrev,
+      final int nbytes, final int o) {
+    int a0 = 0, a1 = 0, a2 = 0, a3 = 0, a4 = 0, a5 = 0, a6 = 0, a7 = 0;
+    int c0 = 0, c1 = 0, c2 = 0, c3 = 0, c4 = 0, c5 = 0, c6 = 0, c7 = 0;
+    int b;
+    for (int i = 1; i <= nbytes; i += 8) {
+      b = rowUnfilteredPrev[i + o] & 0xff;
+      a0 = (row[i] + paeth(a0, b, c0)) & 0xff;
+      rowUnfiltered[i + o] = (byte) a0;
+      c0 = b;
+      b = rowUnfilteredPrev[i + 1 + o] & 0xff;
+      a1 = (row[i + 1] + paeth(a1, b, c1)) & 0xff;
+      rowUnfiltered[i + 1 + o] = (byte) a1;
+      c1 = b;
+      b = rowUnfilteredPrev[i + 2 + o] & 0xff;
+      a2 = (row[i + 2] + paeth(a2, b, c2)) & 0xff;
+      rowUnfiltered[i + 2 + o] = (byte) a2;
+      c2 = b;
+      b = rowUnfilteredPrev[i + 3 + o] & 0xff;
+      a3 = (row[i + 3] + paeth(a3, b, c3)) & 0xff;
+      rowUnfiltered[i + 3 + o] = (byte) a3;
+      c3 = b;
+      b = rowUnfilteredPrev[i + 4 + o] & 0xff;
+      a4 = (row[i + 4] + paeth(a4, b, c4)) & 0xff;
+      rowUnfiltered[i + 4 + o] = (byte) a4;
+      c4 = b;
+      b = rowUnfilteredPrev[i + 5 + o] & 0xff;
+      a5 = (row[i + 5] + paeth(a5, b, c5)) & 0xff;
+      rowUnfiltered[i + 5 + o] = (byte) a5;
+      c5 = b;
+      b = rowUnfilteredPrev[i + 6 + o] & 0xff;
+      a6 = (row[i + 6] + paeth(a6, b, c6)) & 0xff;
+      rowUnfiltered[i + 6 + o] = (byte) a6;
+      c6 = b;
+      b = rowUnfilteredPrev[i + 7 + o] & 0xff;
+      a7 = (row[i + 7] + paeth(a7, b, c7)) & 0xff;
+      rowUnfiltered[i + 7 + o] = (byte) a7;
+      c7 = b;
+    }
+  }
+
+  /** branchless version of {@link PngHelperInternal#filterPaethPredictor(int, int, int)} */
+  static int paeth(final int a, final int b, final int c) {
+    int pa = b - c; // p-a, being p=a+b-c
+    int pb = a - c; // p-b
+    int pc = pa + pb; // p-c
+    pa = (pa ^ (pa >> 31)) - (pa >> 31);
+    pb = (pb ^ (pb >> 31)) - (pb >> 31);
+    pc = (pc ^ (pc >> 31)) - (pc >> 31);
+    int m = (pb - pa) >> 31; // -1 if pb < pa
+    int v = (a & ~m) | (b & m);
+    pa = (pa & ~m) | (pb & m);
+    m = (pc - pa) >> 31; // -1 if pc < min(pa,pb)
+    return (v & ~m) | (c & m);
+  }
+
+  private static void unfilterRowUp(final byte[] row, final byte[] rowUnfiltered,
+      final byte[] rowUnfilteredPrev,
+      final int nbytes, final int o) {
     for (int i = 1; i <= nbytes; i++) {
-      rowUnfiltered[i] = (byte) (row[i] + rowUnfilteredPrev[i]);
+      rowUnfiltered[i + o] = (byte) (row[i] + rowUnfilteredPrev[i + o]);
     }
   }
 
@@ -140,7 +659,10 @@ public class IdatSet extends DeflatedChunksSet {
   protected void preProcessRow() {
     super.preProcessRow();
     rowinfo.update(getRown());
-    unfilterRow();
+    if (deferredUnfilter)
+      rowPending = true;
+    else
+      unfilterRow();
     rowinfo.updateBuf(rowUnfiltered, rowinfo.bytesRow + 1);
   }
 
@@ -180,6 +702,8 @@ public class IdatSet extends DeflatedChunksSet {
    */
   public int advanceToNextRow() {
     // PngHelperInternal.LOGGER.info("advanceToNextRow");
+    if (rowPending)
+      unfilterRow(); // deferred, but nobody asked for it: the next row needs it
     int bytesNextRow;
     if (deinterlacer == null) {
       bytesNextRow = getRown() >= imgInfo.rows - 1 ? 0 : imgInfo.bytesPerRow + 1;
@@ -201,7 +725,8 @@ public class IdatSet extends DeflatedChunksSet {
   /**
    * Unfiltered row.
    * <p>
-   * This should be called only if {@link #isRowReady()} returns true.
+   * This should be called only if {@link #isRowReady()} returns true. Not valid for rows unfiltered with
+   * {@link #unfilterRowInto(byte[])}.
    * <p>
    * To get real length, use {@link #getRowLen()}
    * <p>
@@ -219,7 +744,10 @@ public class IdatSet extends DeflatedChunksSet {
   void updateCrcs(Checksum... idatCrcs) {
     for (Checksum idatCrca : idatCrcs)
       if (idatCrca != null)// just for testing
-        idatCrca.update(getUnfilteredRow(), 1, getRowFilled() - 1);
+        if (lastTarget != null)
+          idatCrca.update(lastTarget, 0, getRowFilled() - 1);
+        else
+          idatCrca.update(getUnfilteredRow(), 1, getRowFilled() - 1);
   }
 
   @Override
@@ -227,6 +755,7 @@ public class IdatSet extends DeflatedChunksSet {
     super.close();
     rowUnfiltered = null;// not really necessary...
     rowUnfilteredPrev = null;
+    lastTarget = null;
   }
 
   /**
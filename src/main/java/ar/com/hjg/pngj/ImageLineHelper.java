@@ -11,7 +11,8 @@ import ar.com.hjg.pngj.chunks.PngChunkTRNS;
  * WARNING: this has little testing/optimizing, and this API is not stable. some methods will probably be changed or
  * removed if future releases.
  * <p>
- * WARNING: most methods for getting/setting values work currently only for ImageLine or ImageLineByte
+ * WARNING: most methods for getting/setting values work currently only for ImageLineInt or ImageLineByte (some also
+ * for ImageLineShort and ImageLinePacked)
  */
 public class ImageLineHelper {
 
@@ -53,27 +54,75 @@ public class ImageLineHelper {
       ImageLineByte iline = (ImageLineByte) line;
       for (int i = 0; i < iline.getSize(); i++)
         iline.scanline[i] = (byte) scaleArray[iline.scanline[i]];
+    } else if (line instanceof ImageLineShort) {
+      ImageLineShort iline = (ImageLineShort) line;
+      for (int i = 0; i < iline.getSize(); i++)
+        iline.scanline[i] = (short) scaleArray[iline.scanline[i]];
+    } else if (line instanceof ImageLinePacked) {
+      // samples take bitDepth bits, there is no room for the scaled values
+      throw new PngjException("ImageLinePacked can't be scaled in place, use getElem() and scaleUp(bitdepth,v)");
     } else
       throw new PngjException("not implemented");
   }
 
+  /**
+   * For a partially decoded interlaced image: fills (in place) the pixels not yet known after pass <tt>pass</tt>, by
+   * replicating the known pixel at the top-left of its cell (see {@link Deinterlacer#gridAfterPass(int)}). The filled
+   * pixels will be overwritten by the following passes. Rows whose cell origin is not in the set are left untouched.
+   */
+  public static void upsampleInterlaced(IImageLineSet<? extends IImageLine> lines, ImageInfo imi, int pass) {
+    if (pass >= 7)
+      return;
+    int[] grid = Deinterlacer.gridAfterPass(pass);
+    final int dx = grid[0], ch = imi.channels;
+    for (int r = 0; r < imi.rows; r++) {
+      int rs = r - r % grid[1];
+      if (!lines.hasImageLine(r) || !lines.hasImageLine(rs))
+        continue;
+      IImageLine line = lines.getImageLine(r);
+      IImageLine src = lines.getImageLine(rs);
+      for (int c = 0; c < imi.cols; c++) {
+        int cs = c - c % dx;
+        if (cs == c && rs == r)
+          continue; // known pixel
+        if (line instanceof ImageLineInt) {
+          System.arraycopy(((ImageLineInt) src).scanline, cs * ch, ((ImageLineInt) line).scanline, c * ch, ch);
+        } else if (line instanceof ImageLineByte) {
+          ImageLineByte bsrc = (ImageLineByte) src, bline = (ImageLineByte) line;
+          System.arraycopy(bsrc.scanline, cs * ch, bline.scanline, c * ch, ch);
+          if (bsrc.scanline2 != null)
+            System.arraycopy(bsrc.scanline2, cs * ch, bline.scanline2, c * ch, ch);
+        } else if (line instanceof ImageLineShort) {
+          System.arraycopy(((ImageLineShort) src).scanline, cs * ch, ((ImageLineShort) line).scanline, c * ch, ch);
+        } else if (line instanceof ImageLinePacked) {
+          ImageLinePacked psrc = (ImageLinePacked) src, pline = (ImageLinePacked) line;
+          for (int k = 0; k < ch; k++)
+            pline.setElem(c * ch + k, psrc.getElem(cs * ch + k));
+        } else
+          throw new PngjException("not implemented");
+      }
+    }
+  }
+
   /**
    * Reverse of {@link #scaleUp(IImageLineArray)}
    */
   public static void scaleDown(IImageLineArray line) {
     if (line.getImageInfo().indexed || line.getImageInfo().bitDepth >= 8)
       return;
+    final int scalefactor = 8 - line.getImageInfo().bitDepth;
     if (line instanceof ImageLineInt) {
-      final int scalefactor = 8 - line.getImageInfo().bitDepth;
-      if (line instanceof ImageLineInt) {
-        ImageLineInt iline = (ImageLineInt) line;
-        for (int i = 0; i < line.getSize(); i++)
-          iline.scanline[i] = iline.scanline[i] >> scalefactor;
-      } else if (line instanceof ImageLineByte) {
-        ImageLineByte iline = (ImageLineByte) line;
-        for (int i = 0; i < line.getSize(); i++)
-          iline.scanline[i] = (byte) ((iline.scanline[i] & 0xFF) >> scalefactor);
-      }
+      ImageLineInt iline = (ImageLineInt) line;
+      for (int i = 0; i < line.getSize(); i++)
+        iline.scanline[i] = iline.scanline[i] >> scalefactor;
+    } else if (line instanceof ImageLineByte) {
+      ImageLineByte iline = (ImageLineByte) line;
+      for (int i = 0; i < line.getSize(); i++)
+        iline.scanline[i] = (byte) ((iline.scanline[i] & 0xFF) >> scalefactor);
+    } else if (line instanceof ImageLineShort) {
+      ImageLineShort iline = (ImageLineShort) line;
+      for (int i = 0; i < line.getSize(); i++)
+        iline.scanline[i] = (short) ((iline.scanline[i] & 0xFF) >> scalefactor);
     } else
       throw new PngjException("not implemented");
   }
@@ -345,6 +394,10 @@ public class ImageLineHelper {
       byte[] scanline = ((ImageLineByte) line).getScanline();
       return ((scanline[offset] & 0xff) << 16) | ((scanline[offset + 1] & 0xff) << 8)
           | ((scanline[offset + 2] & 0xff));
+    } else if (line instanceof ImageLineShort || line instanceof ImageLinePacked) {
+      IImageLineArray aline = (IImageLineArray) line;
+      int offset = column * aline.getImageInfo().channels;
+      return (getElem8(aline, offset) << 16) | (getElem8(aline, offset + 1) << 8) | getElem8(aline, offset + 2);
     } else
       throw new PngjException("Not supported " + line.getClass());
   }
@@ -360,10 +413,23 @@ public class ImageLineHelper {
       byte[] scanline = ((ImageLineByte) line).getScanline();
       return (((scanline[offset + 3] & 0xff) << 24) | ((scanline[offset] & 0xff) << 16)
           | ((scanline[offset + 1] & 0xff) << 8) | ((scanline[offset + 2] & 0xff)));
+    } else if (line instanceof ImageLineShort || line instanceof ImageLinePacked) {
+      IImageLineArray aline = (IImageLineArray) line;
+      int offset = column * aline.getImageInfo().channels;
+      return (getElem8(aline, offset + 3) << 24) | (getElem8(aline, offset) << 16)
+          | (getElem8(aline, offset + 1) << 8) | getElem8(aline, offset + 2);
     } else
       throw new PngjException("Not supported " + line.getClass());
   }
 
+  /**
+   * Sample reduced to 8 bits, for lines that keep the 16 bits values (ImageLineShort, ImageLinePacked). RGB images
+   * have bitdepth 8 or 16
+   */
+  private static int getElem8(IImageLineArray line, int i) {
+    return line.getImageInfo().bitDepth == 16 ? line.getElem(i) >> 8 : line.getElem(i);
+  }
+
   public static void setPixelsRGB8(ImageLineInt line, int[] rgb) {
     for (int i = 0, j = 0; i < line.imgInfo.cols; i++) {
       line.scanline[j++] = ((rgb[i] >> 16) & 0xFF);
@@ -0,0 +1,152 @@
+package ar.com.hjg.pngj;
+
+/**
+ * Represents an image line with the samples kept as in the PNG raw row (without the filter byte): packed for bitdepth
+ * 1/2/4 (several pixels per byte, most significant bits first), one byte per sample for 8 bits, two bytes (big endian)
+ * for 16 bits. This is the most compact format, eg for a bilevel image it takes 1/32 of the memory of a
+ * {@link ImageLineInt}.
+ * <p>
+ * Samples can be accessed with {@link #getElem(int)} and {@link #setElem(int, int)} (the values are not scaled), or
+ * directly in the {@link #getScanline()} array.
+ */
+public class ImageLinePacked implements IImageLine, IImageLineArray {
+  public final ImageInfo imgInfo;
+
+  /** raw samples, {@link ImageInfo#bytesPerRow} bytes */
+  protected final byte[] scanline;
+
+  /**
+   * number of samples in the line (not the length of the scanline array!)
+   */
+  protected final int size;
+
+  /**
+   * informational ; only filled by the reader. not meaningful for interlaced
+   */
+  protected FilterType filterType = FilterType.FILTER_UNKNOWN;
+
+  public ImageLinePacked(ImageInfo imgInfo) {
+    this(imgInfo, null);
+  }
+
+  /**
+   * @param imgInfo Inmutable ImageInfo, basic parameters of the image we are reading or writing
+   * @param sci prealocated buffer (can be null)
+   */
+  public ImageLinePacked(ImageInfo imgInfo, byte[] sci) {
+    this.imgInfo = imgInfo;
+    size = imgInfo.samplesPerRow;
+    scanline = sci != null && sci.length >= imgInfo.bytesPerRow ? sci : new byte[imgInfo.bytesPerRow];
+  }
+
+  /**
+   * Helper method, returns a default factory for this object
+   */
+  public static IImageLineFactory<ImageLinePacked> getFactory() {
+    return new IImageLineFactory<ImageLinePacked>() {
+      public ImageLinePacked createImageLine(ImageInfo iminfo) {
+        return new ImageLinePacked(iminfo);
+      }
+    };
+  }
+
+  public FilterType getFilterType() {
+    return filterType;
+  }
+
+  /**
+   * This should rarely be used by client code. Only relevant if FilterPreserve==true
+   */
+  public void setFilterType(FilterType ft) {
+    filterType = ft;
+  }
+
+  /**
+   * Basic info
+   */
+  public String toString() {
+    return " cols=" + imgInfo.cols + " bpc=" + imgInfo.bitDepth + " size=" + scanline.length;
+  }
+
+  public void readFromPngRaw(byte[] raw, final int len, final int offset, final int step) {
+    filterType = FilterType.getByVal(raw[0]);
+    if (step == 1 && offset == 0) {
+      System.arraycopy(raw, 1, scanline, 0, len - 1);
+    } else if (imgInfo.bitDepth >= 8) {
+      final int bpp = imgInfo.bytesPixel;
+      for (int s = 1, i = offset * bpp; s < len; s += bpp, i += step * bpp)
+        System.arraycopy(raw, s, scanline, i, bpp);
+    } else { // packed: only one channel
+      final int bd = imgInfo.bitDepth, mask = (1 << bd) - 1;
+      for (int k = 0, c = offset; c < imgInfo.cols; k++, c += step) {
+        int bitpos = k * bd;
+        setElem(c, (raw[1 + (bitpos >> 3)] >> (8 - bd - (bitpos & 7))) & mask);
+      }
+    }
+  }
+
+  public void writeToPngRaw(byte[] raw) {
+    raw[0] = (byte) filterType.val;
+    System.arraycopy(scanline, 0, raw, 1, imgInfo.bytesPerRow);
+  }
+
+  /**
+   * Does nothing in this implementation
+   */
+  public void endReadFromPngRaw() {}
+
+  /**
+   * Number of samples
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Value of the i-th sample (not scaled)
+   */
+  public int getElem(int i) {
+    switch (imgInfo.bitDepth) {
+      case 8:
+        return scanline[i] & 0xFF;
+      case 16:
+        return ((scanline[i << 1] & 0xFF) << 8) | (scanline[(i << 1) + 1] & 0xFF);
+      default:
+        int bd = imgInfo.bitDepth;
+        int bitpos = i * bd;
+        return (scanline[bitpos >> 3] >> (8 - bd - (bitpos & 7))) & ((1 << bd) - 1);
+    }
+  }
+
+  /**
+   * Sets the value of the i-th sample (not scaled)
+   */
+  public void setElem(int i, int v) {
+    switch (imgInfo.bitDepth) {
+      case 8:
+        scanline[i] = (byte) v;
+        break;
+      case 16:
+        scanline[i << 1] = (byte) (v >> 8);
+        scanline[(i << 1) + 1] = (byte) v;
+        break;
+      default:
+        int bd = imgInfo.bitDepth;
+        int bitpos = i * bd;
+        int shift = 8 - bd - (bitpos & 7);
+        int mask = ((1 << bd) - 1) << shift;
+        scanline[bitpos >> 3] = (byte) ((scanline[bitpos >> 3] & ~mask) | ((v << shift) & mask));
+    }
+  }
+
+  /**
+   * @return see {@link #scanline}
+   */
+  public byte[] getScanline() {
+    return scanline;
+  }
+
+  public ImageInfo getImageInfo() {
+    return imgInfo;
+  }
+}
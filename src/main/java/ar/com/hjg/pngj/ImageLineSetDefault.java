@@ -148,4 +148,14 @@ public abstract class ImageLineSetDefault<T extends IImageLine> implements IImag
   public static IImageLineSetFactory<ImageLineByte> getFactoryByte() {
     return createImageLineSetFactoryFromImageLineFactory(ImageLineByte.getFactory());
   }
+
+  /** utility function, returns default factory for {@link ImageLineShort} */
+  public static IImageLineSetFactory<ImageLineShort> getFactoryShort() {
+    return createImageLineSetFactoryFromImageLineFactory(ImageLineShort.getFactory());
+  }
+
+  /** utility function, returns default factory for {@link ImageLinePacked} */
+  public static IImageLineSetFactory<ImageLinePacked> getFactoryPacked() {
+    return createImageLineSetFactoryFromImageLineFactory(ImageLinePacked.getFactory());
+  }
 }
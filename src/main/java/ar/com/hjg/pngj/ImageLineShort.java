@@ -0,0 +1,186 @@
+package ar.com.hjg.pngj;
+
+/**
+ * Represents an image line, one <code>short</code> per sample. Same format as {@link ImageLineInt}, but it takes half
+ * the memory, and unlike {@link ImageLineByte} it keeps the full precision of 16 bits images.
+ * <p>
+ * The values are unsigned: for bitDepth=16 the samples above 32767 are stored as negative shorts, use
+ * {@link #getElem(int)} (or <code>scanline[i] &amp; 0xFFFF</code>) to read them.
+ */
+public class ImageLineShort implements IImageLine, IImageLineArray {
+  public final ImageInfo imgInfo;
+
+  /**
+   * One sample per element, in the PNG sequence (see {@link ImageLineInt#getScanline()}). For bitdepth=1/2/4 the value
+   * is not scaled.
+   */
+  protected final short[] scanline;
+
+  /**
+   * number of elements in the scanline
+   */
+  protected final int size;
+
+  /**
+   * informational ; only filled by the reader. not meaningful for interlaced
+   */
+  protected FilterType filterType = FilterType.FILTER_UNKNOWN;
+
+  /**
+   * @param imgInfo Inmutable ImageInfo, basic parameters of the image we are reading or writing
+   */
+  public ImageLineShort(ImageInfo imgInfo) {
+    this(imgInfo, null);
+  }
+
+  /**
+   * @param imgInfo Inmutable ImageInfo, basic parameters of the image we are reading or writing
+   * @param sci prealocated buffer (can be null)
+   */
+  public ImageLineShort(ImageInfo imgInfo, short[] sci) {
+    this.imgInfo = imgInfo;
+    size = imgInfo.samplesPerRow;
+    scanline = sci != null && sci.length >= size ? sci : new short[size];
+  }
+
+  /**
+   * Helper method, returns a default factory for this object
+   */
+  public static IImageLineFactory<ImageLineShort> getFactory() {
+    return new IImageLineFactory<ImageLineShort>() {
+      public ImageLineShort createImageLine(ImageInfo iminfo) {
+        return new ImageLineShort(iminfo);
+      }
+    };
+  }
+
+  public FilterType getFilterType() {
+    return filterType;
+  }
+
+  /**
+   * This should rarely be used by client code. Only relevant if FilterPreserve==true
+   */
+  public void setFilterType(FilterType ft) {
+    filterType = ft;
+  }
+
+  /**
+   * Basic info
+   */
+  public String toString() {
+    return " cols=" + imgInfo.cols + " bpc=" + imgInfo.bitDepth + " size=" + scanline.length;
+  }
+
+  public void readFromPngRaw(byte[] raw, final int len, final int offset, final int step) {
+    setFilterType(FilterType.getByVal(raw[0]));
+    int len1 = len - 1;
+    int step1 = (step - 1) * imgInfo.channels;
+    if (imgInfo.bitDepth == 8) {
+      if (step == 1) {
+        for (int i = 0; i < size; i++) {
+          scanline[i] = (short) (raw[i + 1] & 0xff);
+        }
+      } else {
+        for (int s = 1, c = 0, i = offset * imgInfo.channels; s <= len1; s++, i++) {
+          scanline[i] = (short) (raw[s] & 0xff);
+          c++;
+          if (c == imgInfo.channels) {
+            c = 0;
+            i += step1;
+          }
+        }
+      }
+    } else if (imgInfo.bitDepth == 16) {
+      if (step == 1) {
+        for (int i = 0, s = 1; i < size; i++, s += 2) {
+          scanline[i] = (short) ((raw[s] << 8) | (raw[s + 1] & 0xFF));
+        }
+      } else {
+        for (int s = 1, c = 0, i = offset * imgInfo.channels; s <= len1; s += 2, i++) {
+          scanline[i] = (short) ((raw[s] << 8) | (raw[s + 1] & 0xFF));
+          c++;
+          if (c == imgInfo.channels) {
+            c = 0;
+            i += step1;
+          }
+        }
+      }
+    } else { // packed formats
+      int mask0, mask, shi, bd;
+      bd = imgInfo.bitDepth;
+      mask0 = ImageLineHelper.getMaskForPackedFormats(bd);
+      for (int i = offset * imgInfo.channels, r = 1, c = 0; r < len; r++) {
+        mask = mask0;
+        shi = 8 - bd;
+        do {
+          scanline[i++] = (short) ((raw[r] & mask) >> shi);
+          mask >>= bd;
+          shi -= bd;
+          c++;
+          if (c == imgInfo.channels) {
+            c = 0;
+            i += step1;
+          }
+        } while (mask != 0 && i < size);
+      }
+    }
+  }
+
+  public void writeToPngRaw(byte[] raw) {
+    raw[0] = (byte) filterType.val;
+    if (imgInfo.bitDepth == 8) {
+      for (int i = 0; i < size; i++) {
+        raw[i + 1] = (byte) scanline[i];
+      }
+    } else if (imgInfo.bitDepth == 16) {
+      for (int i = 0, s = 1; i < size; i++) {
+        raw[s++] = (byte) (scanline[i] >> 8);
+        raw[s++] = (byte) scanline[i];
+      }
+    } else { // packed formats
+      int shi, bd, v;
+      bd = imgInfo.bitDepth;
+      shi = 8 - bd;
+      v = 0;
+      for (int i = 0, r = 1; i < size; i++) {
+        v |= (scanline[i] << shi);
+        shi -= bd;
+        if (shi < 0 || i == size - 1) {
+          raw[r++] = (byte) v;
+          shi = 8 - bd;
+          v = 0;
+        }
+      }
+    }
+  }
+
+  /**
+   * Does nothing in this implementation
+   */
+  public void endReadFromPngRaw() {
+
+  }
+
+  /**
+   * @see #size
+   */
+  public int getSize() {
+    return size;
+  }
+
+  public int getElem(int i) {
+    return scanline[i] & 0xFFFF;
+  }
+
+  /**
+   * @return see {@link #scanline}
+   */
+  public short[] getScanline() {
+    return scanline;
+  }
+
+  public ImageInfo getImageInfo() {
+    return imgInfo;
+  }
+}
@@ -0,0 +1,701 @@
+package ar.com.hjg.pngj;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Pure Java implementation of an Inflater (RFC 1950/1951), with the same API as {@link Inflater}, so that it can be
+ * used in its place (eg, in {@link IdatSet#IdatSet(String, ImageInfo, Deinterlacer, Inflater, byte[])}).
+ * <p>
+ * It's slower than the native one, but its state can be captured: at a deflate block boundary, a {@link Checkpoint}
+ * (bit position in the compressed stream, last 32KB of output) allows to resume the inflation later from there, see
+ * {@link #requestCheckpoint()} and {@link #InflaterJava(Checkpoint)}. This is the technique of zlib's zran.c.
+ * <p>
+ * Preset dictionaries are not supported (PNG does not use them).
+ */
+public class InflaterJava extends Inflater {
+
+  private static final int WSIZE = 32768;
+  private static final int WMASK = WSIZE - 1;
+
+  private static final int ST_ZHEADER = 0;
+  private static final int ST_BLOCKHEADER = 1;
+  private static final int ST_STORED = 2;
+  private static final int ST_CODES = 3;
+  private static final int ST_ZTRAILER = 4;
+  private static final int ST_DONE = 5;
+
+  private static final int[] LBASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35,
+      43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+  private static final int[] LEXT = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4,
+      4, 4, 4, 5, 5, 5, 5, 0};
+  private static final int[] DBASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+      257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+  private static final int[] DEXT = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9,
+      9, 10, 10, 11, 11, 12, 12, 13, 13};
+  private static final int[] CLORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14,
+      1, 15};
+
+  private static Huffman fixedLit, fixedDist; // lazily built
+
+  private final boolean nowrap;
+  private int state;
+  private boolean lastBlock;
+  private int storedLeft;
+  private Huffman litTable, distTable;
+  private int copyLen, copyDist; // pending copy (output buffer was full)
+  private int skipBits; // only for resuming
+
+  // input: unconsumed bytes are in[inPos:inLen], plus the bits in bitBuf
+  private byte[] in = new byte[0];
+  private int inPos, inLen;
+  private long inBase; // stream offset of in[0]
+  private int bitBuf, bitCnt;
+  private boolean stalled; // could not progress for lack of input
+  private int savedInPos, savedBitBuf, savedBitCnt;
+
+  // output
+  private final byte[] window = new byte[WSIZE];
+  private int wpos; // next position in window
+  private int histLen; // valid bytes in window
+  private long totalOut;
+  private long totalOutStart;
+  private final Adler32 adler = new Adler32();
+
+  private boolean checkpointRequested;
+  private Checkpoint checkpoint;
+
+  /**
+   * Same as {@link Inflater#Inflater(boolean)}
+   */
+  public InflaterJava(boolean nowrap) {
+    super(nowrap);
+    super.end(); // we don't use the native inflater
+    this.nowrap = nowrap;
+    reset();
+  }
+
+  public InflaterJava() {
+    this(false);
+  }
+
+  /**
+   * Creates a raw (nowrap) inflater that resumes at the checkpoint. It must be fed with the compressed stream starting
+   * from the byte <tt>checkpoint.bitPos/8</tt>.
+   * <p>
+   * The output counters ({@link #getBytesWritten()}) include the bytes before the checkpoint.
+   */
+  public InflaterJava(Checkpoint checkpoint) {
+    this(true);
+    state = ST_BLOCKHEADER;
+    inBase = checkpoint.bitPos >>> 3;
+    skipBits = (int) (checkpoint.bitPos & 7);
+    histLen = checkpoint.window.length;
+    System.arraycopy(checkpoint.window, 0, window, 0, histLen);
+    wpos = histLen & WMASK;
+    totalOut = totalOutStart = checkpoint.totalOut;
+  }
+
+  @Override
+  public void setInput(byte[] b, int off, int len) {
+    if (b == null)
+      throw new NullPointerException();
+    if (off < 0 || len < 0 || off > b.length - len)
+      throw new ArrayIndexOutOfBoundsException();
+    if (inPos > 0) { // compact
+      System.arraycopy(in, inPos, in, 0, inLen - inPos);
+      inBase += inPos;
+      inLen -= inPos;
+      inPos = 0;
+    }
+    if (inLen + len > in.length) {
+      byte[] in2 = new byte[Math.max(inLen + len, in.length * 2)];
+      System.arraycopy(in, 0, in2, 0, inLen);
+      in = in2;
+    }
+    System.arraycopy(b, off, in, inLen, len);
+    inLen += len;
+    stalled = false;
+  }
+
+  @Override
+  public void setInput(byte[] b) {
+    setInput(b, 0, b.length);
+  }
+
+  /**
+   * Overrides the method of Java 11+ (the native inflater is closed, it must not be reached). Unlike
+   * {@link Inflater}, all the remaining bytes are copied at once: the buffer position is set to its limit
+   */
+  public void setInput(ByteBuffer b) {
+    if (b.hasArray()) {
+      setInput(b.array(), b.arrayOffset() + b.position(), b.remaining());
+      b.position(b.limit());
+    } else {
+      byte[] tmp = new byte[b.remaining()];
+      b.get(tmp);
+      setInput(tmp);
+    }
+  }
+
+  /** not supported */
+  @Override
+  public void setDictionary(byte[] b, int off, int len) {
+    throw new PngjUnsupportedException("preset dictionary not supported");
+  }
+
+  /** not supported (overrides the method of Java 11+) */
+  public void setDictionary(ByteBuffer b) {
+    throw new PngjUnsupportedException("preset dictionary not supported");
+  }
+
+  @Override
+  public int getRemaining() {
+    return inLen - inPos + (bitCnt >> 3);
+  }
+
+  @Override
+  public boolean needsInput() {
+    return inPos >= inLen || stalled;
+  }
+
+  @Override
+  public boolean needsDictionary() {
+    return false;
+  }
+
+  @Override
+  public boolean finished() {
+    return state == ST_DONE;
+  }
+
+  @Override
+  public int inflate(byte[] b) throws DataFormatException {
+    return inflate(b, 0, b.length);
+  }
+
+  /**
+   * Overrides the method of Java 11+ (the native inflater is closed, it must not be reached)
+   */
+  public int inflate(ByteBuffer b) throws DataFormatException {
+    int n;
+    if (b.hasArray()) {
+      n = inflate(b.array(), b.arrayOffset() + b.position(), b.remaining());
+      b.position(b.position() + n);
+    } else {
+      byte[] tmp = new byte[b.remaining()];
+      n = inflate(tmp);
+      b.put(tmp, 0, n);
+    }
+    return n;
+  }
+
+  @Override
+  public int inflate(byte[] b, int off, int len) throws DataFormatException {
+    if (b == null)
+      throw new NullPointerException();
+    if (off < 0 || len < 0 || off > b.length - len)
+      throw new ArrayIndexOutOfBoundsException();
+    final int start = off;
+    final int end = off + len;
+    while (off < end && !stalled && state != ST_DONE) {
+      switch (state) {
+        case ST_ZHEADER:
+          readZlibHeader();
+          break;
+        case ST_BLOCKHEADER:
+          readBlockHeader();
+          break;
+        case ST_STORED:
+          off = copyStored(b, off, end);
+          break;
+        case ST_CODES:
+          off = decodeCodes(b, off, end);
+          break;
+        case ST_ZTRAILER:
+          readZlibTrailer();
+          break;
+      }
+    }
+    if (off == end) // output full: the end of the stream (which produces no output) might be pending
+      readEndOfStream();
+    return off - start;
+  }
+
+  /* consumes the end of block code of the last block, and the zlib trailer, if available */
+  private void readEndOfStream() throws DataFormatException {
+    while (!stalled && state != ST_DONE) {
+      if (state == ST_CODES && copyLen == 0) {
+        save();
+        if (decode(litTable) != 256) {
+          restore();
+          return;
+        }
+        state = ST_BLOCKHEADER;
+      } else if (state == ST_STORED && storedLeft == 0)
+        state = ST_BLOCKHEADER;
+      else if (state == ST_BLOCKHEADER && lastBlock)
+        readBlockHeader();
+      else if (state == ST_ZTRAILER)
+        readZlibTrailer();
+      else
+        return;
+    }
+  }
+
+  @Override
+  public int getAdler() {
+    return (int) adler.getValue();
+  }
+
+  @Override
+  public int getTotalIn() {
+    return (int) getBytesRead();
+  }
+
+  @Override
+  public int getTotalOut() {
+    return (int) getBytesWritten();
+  }
+
+  /** compressed bytes consumed (for a resumed inflater, this is the stream offset) */
+  @Override
+  public long getBytesRead() {
+    return inBase + inPos - (bitCnt >> 3);
+  }
+
+  @Override
+  public long getBytesWritten() {
+    return totalOut;
+  }
+
+  @Override
+  public void reset() {
+    state = nowrap ? ST_BLOCKHEADER : ST_ZHEADER;
+    lastBlock = false;
+    storedLeft = copyLen = copyDist = skipBits = 0;
+    litTable = distTable = null;
+    inPos = inLen = 0;
+    inBase = 0;
+    bitBuf = bitCnt = 0;
+    stalled = false;
+    wpos = histLen = 0;
+    totalOut = totalOutStart = 0;
+    adler.reset();
+    checkpointRequested = false;
+    checkpoint = null;
+  }
+
+  @Override
+  public void end() {
+    in = new byte[0];
+    inPos = inLen = 0;
+  }
+
+  /**
+   * Requests a checkpoint at the next deflate block boundary. It can be retrieved with {@link #pollCheckpoint()}.
+   */
+  public void requestCheckpoint() {
+    checkpointRequested = true;
+  }
+
+  /**
+   * Returns (and forgets) the checkpoint made after {@link #requestCheckpoint()}, null if not yet made
+   */
+  public Checkpoint pollCheckpoint() {
+    Checkpoint c = checkpoint;
+    checkpoint = null;
+    return c;
+  }
+
+  private void readZlibHeader() throws DataFormatException {
+    if (!need(16)) {
+      stalled = true;
+      return;
+    }
+    int cmf = bits(8);
+    int flg = bits(8);
+    if ((cmf & 0x0f) != 8 || (cmf >> 4) > 7 || ((cmf << 8) + flg) % 31 != 0)
+      throw new DataFormatException("incorrect header check");
+    if ((flg & 0x20) != 0)
+      throw new DataFormatException("preset dictionary not supported");
+    state = ST_BLOCKHEADER;
+  }
+
+  private void readZlibTrailer() throws DataFormatException {
+    dropBits(bitCnt & 7);
+    save();
+    if (!need(16)) {
+      stalled = true;
+      return;
+    }
+    int a = bits(8) << 8 | bits(8);
+    if (!need(16)) {
+      restore();
+      stalled = true;
+      return;
+    }
+    a = a << 16 | bits(8) << 8 | bits(8);
+    if (a != (int) adler.getValue())
+      throw new DataFormatException("incorrect data check");
+    state = ST_DONE;
+  }
+
+  private void readBlockHeader() throws DataFormatException {
+    if (skipBits > 0) {
+      if (!need(skipBits)) {
+        stalled = true;
+        return;
+      }
+      dropBits(skipBits);
+      skipBits = 0;
+    }
+    if (lastBlock) {
+      state = nowrap ? ST_DONE : ST_ZTRAILER;
+      return;
+    }
+    if (checkpointRequested) {
+      checkpoint = makeCheckpoint();
+      checkpointRequested = false;
+    }
+    save();
+    if (!need(3)) {
+      stalled = true;
+      return;
+    }
+    int hdr = bits(3);
+    int type = hdr >> 1;
+    if (type == 0) {
+      dropBits(bitCnt & 7);
+      if (!need(16)) {
+        restore();
+        stalled = true;
+        return;
+      }
+      int slen = bits(16);
+      if (!need(16)) {
+        restore();
+        stalled = true;
+        return;
+      }
+      int nlen = bits(16);
+      if (slen != (~nlen & 0xffff))
+        throw new DataFormatException("invalid stored block lengths");
+      storedLeft = slen;
+      state = ST_STORED;
+    } else if (type == 1) {
+      initFixedTables();
+      litTable = fixedLit;
+      distTable = fixedDist;
+      state = ST_CODES;
+    } else if (type == 2) {
+      if (!readDynamicTables()) {
+        restore();
+        stalled = true;
+        return;
+      }
+      state = ST_CODES;
+    } else
+      throw new DataFormatException("invalid block type");
+    lastBlock = (hdr & 1) != 0;
+  }
+
+  /* returns false if not enough input */
+  private boolean readDynamicTables() throws DataFormatException {
+    if (!need(14))
+      return false;
+    int hlit = bits(5) + 257;
+    int hdist = bits(5) + 1;
+    int hclen = bits(4) + 4;
+    if (hlit > 286 || hdist > 30)
+      throw new DataFormatException("too many length or distance symbols");
+    byte[] lengths = new byte[19];
+    for (int i = 0; i < hclen; i++) {
+      if (!need(3))
+        return false;
+      lengths[CLORDER[i]] = (byte) bits(3);
+    }
+    Huffman clTable = new Huffman(lengths, 0, 19);
+    lengths = new byte[hlit + hdist];
+    for (int i = 0; i < hlit + hdist;) {
+      int sym = decode(clTable);
+      if (sym < 0)
+        return false;
+      if (sym < 16) {
+        lengths[i++] = (byte) sym;
+        continue;
+      }
+      int rep;
+      byte val = 0;
+      if (sym == 16) {
+        if (i == 0)
+          throw new DataFormatException("invalid bit length repeat");
+        if (!need(2))
+          return false;
+        val = lengths[i - 1];
+        rep = 3 + bits(2);
+      } else if (sym == 17) {
+        if (!need(3))
+          return false;
+        rep = 3 + bits(3);
+      } else {
+        if (!need(7))
+          return false;
+        rep = 11 + bits(7);
+      }
+      if (i + rep > lengths.length)
+        throw new DataFormatException("invalid bit length repeat");
+      while (rep-- > 0)
+        lengths[i++] = val;
+    }
+    if (lengths[256] == 0)
+      throw new DataFormatException("invalid code -- missing end-of-block");
+    litTable = new Huffman(lengths, 0, hlit);
+    distTable = new Huffman(lengths, hlit, hdist);
+    return true;
+  }
+
+  private int copyStored(byte[] b, int off, int end) {
+    while (storedLeft > 0 && off < end) {
+      if (bitCnt >= 8) { // whole bytes left in the bit buffer
+        put(b, off++, (byte) bits(8));
+        storedLeft--;
+      } else if (inPos < inLen) {
+        int n = Math.min(Math.min(storedLeft, end - off), inLen - inPos);
+        System.arraycopy(in, inPos, b, off, n);
+        for (int i = 0; i < n; i++) {
+          window[wpos] = in[inPos + i];
+          wpos = (wpos + 1) & WMASK;
+        }
+        if ((histLen += n) > WSIZE)
+          histLen = WSIZE;
+        if (!nowrap)
+          adler.update(in, inPos, n);
+        totalOut += n;
+        inPos += n;
+        off += n;
+        storedLeft -= n;
+      } else {
+        stalled = true;
+        break;
+      }
+    }
+    if (storedLeft == 0)
+      state = ST_BLOCKHEADER;
+    return off;
+  }
+
+  private int decodeCodes(byte[] b, int off, int end) throws DataFormatException {
+    while (off < end) {
+      if (copyLen > 0) {
+        int n = Math.min(copyLen, end - off);
+        copyLen -= n;
+        while (n-- > 0)
+          put(b, off++, window[(wpos - copyDist) & WMASK]);
+        continue;
+      }
+      save();
+      int sym = decode(litTable);
+      if (sym < 0) {
+        stalled = true;
+        break;
+      }
+      if (sym < 256) {
+        put(b, off++, (byte) sym);
+        continue;
+      }
+      if (sym == 256) {
+        state = ST_BLOCKHEADER;
+        break;
+      }
+      sym -= 257;
+      if (sym >= 29)
+        throw new DataFormatException("invalid literal/length code");
+      if (!need(LEXT[sym])) {
+        restore();
+        stalled = true;
+        break;
+      }
+      int len = LBASE[sym] + bits(LEXT[sym]);
+      int dsym = decode(distTable);
+      if (dsym < 0) {
+        restore();
+        stalled = true;
+        break;
+      }
+      if (dsym >= 30)
+        throw new DataFormatException("invalid distance code");
+      if (!need(DEXT[dsym])) {
+        restore();
+        stalled = true;
+        break;
+      }
+      int dist = DBASE[dsym] + bits(DEXT[dsym]);
+      if (dist > histLen)
+        throw new DataFormatException("invalid distance too far back");
+      copyLen = len;
+      copyDist = dist;
+    }
+    return off;
+  }
+
+  private void put(byte[] b, int off, byte v) {
+    b[off] = v;
+    window[wpos] = v;
+    wpos = (wpos + 1) & WMASK;
+    if (histLen < WSIZE)
+      histLen++;
+    totalOut++;
+    if (!nowrap)
+      adler.update(v);
+  }
+
+  private Checkpoint makeCheckpoint() {
+    byte[] w = new byte[histLen];
+    int from = (wpos - histLen) & WMASK;
+    int n1 = Math.min(histLen, WSIZE - from);
+    System.arraycopy(window, from, w, 0, n1);
+    System.arraycopy(window, 0, w, n1, histLen - n1);
+    return new Checkpoint((inBase + inPos) * 8 - bitCnt, totalOut, w);
+  }
+
+  /* returns the symbol, or -1 if not enough input */
+  private int decode(Huffman h) throws DataFormatException {
+    while (bitCnt <= 24 && inPos < inLen) {
+      bitBuf |= (in[inPos++] & 0xff) << bitCnt;
+      bitCnt += 8;
+    }
+    int e = h.fast[bitBuf & Huffman.FAST_MASK];
+    if (e != 0) {
+      int l = e >>> 16;
+      if (l > bitCnt)
+        return -1;
+      dropBits(l);
+      return e & 0xffff;
+    }
+    int code = 0, first = 0, index = 0;
+    for (int l = 1; l <= 15; l++) { // slow path, as in zlib's puff.c
+      if (l > bitCnt)
+        return -1;
+      code |= (bitBuf >>> (l - 1)) & 1;
+      int count = h.count[l];
+      if (code - count < first) {
+        dropBits(l);
+        return h.symbol[index + (code - first)];
+      }
+      index += count;
+      first += count;
+      first <<= 1;
+      code <<= 1;
+    }
+    throw new DataFormatException("invalid code");
+  }
+
+  /* ensures n bits (n<=16) in the bit buffer */
+  private boolean need(int n) {
+    while (bitCnt < n) {
+      if (inPos >= inLen)
+        return false;
+      bitBuf |= (in[inPos++] & 0xff) << bitCnt;
+      bitCnt += 8;
+    }
+    return true;
+  }
+
+  private int bits(int n) {
+    int v = bitBuf & ((1 << n) - 1);
+    dropBits(n);
+    return v;
+  }
+
+  private void dropBits(int n) {
+    bitBuf >>>= n;
+    bitCnt -= n;
+  }
+
+  private void save() {
+    savedInPos = inPos;
+    savedBitBuf = bitBuf;
+    savedBitCnt = bitCnt;
+  }
+
+  private void restore() {
+    inPos = savedInPos;
+    bitBuf = savedBitBuf;
+    bitCnt = savedBitCnt;
+  }
+
+  private static synchronized void initFixedTables() throws DataFormatException {
+    if (fixedLit != null)
+      return;
+    byte[] lengths = new byte[288];
+    for (int i = 0; i < 288; i++)
+      lengths[i] = (byte) (i < 144 ? 8 : (i < 256 ? 9 : (i < 280 ? 7 : 8)));
+    fixedLit = new Huffman(lengths, 0, 288);
+    lengths = new byte[30];
+    for (int i = 0; i < 30; i++)
+      lengths[i] = 5;
+    fixedDist = new Huffman(lengths, 0, 30);
+  }
+
+  /** canonical Huffman code: lookup table for short codes, counts and sorted symbols for the rest */
+  private static class Huffman {
+    static final int FAST_BITS = 9;
+    static final int FAST_MASK = (1 << FAST_BITS) - 1;
+    final short[] count = new short[16];
+    final short[] symbol;
+    final int[] fast = new int[1 << FAST_BITS]; // (length << 16) | symbol, 0: not here
+
+    Huffman(byte[] lengths, int off, int n) throws DataFormatException {
+      symbol = new short[n];
+      for (int i = 0; i < n; i++)
+        count[lengths[off + i]]++;
+      count[0] = 0;
+      int left = 1;
+      for (int l = 1; l <= 15; l++) {
+        left = (left << 1) - count[l];
+        if (left < 0)
+          throw new DataFormatException("over-subscribed code");
+      }
+      int[] offs = new int[16];
+      int[] nextCode = new int[16];
+      for (int l = 1, code = 0; l < 15; l++) {
+        offs[l + 1] = offs[l] + count[l];
+        code = (code + count[l]) << 1;
+        nextCode[l + 1] = code;
+      }
+      for (int i = 0; i < n; i++) {
+        int l = lengths[off + i];
+        if (l == 0)
+          continue;
+        symbol[offs[l]++] = (short) i;
+        int code = nextCode[l]++;
+        if (l <= FAST_BITS) {
+          int rev = Integer.reverse(code) >>> (32 - l);
+          for (int j = rev; j <= FAST_MASK; j += 1 << l)
+            fast[j] = (l << 16) | i;
+        }
+      }
+    }
+  }
+
+  /**
+   * State of the inflater at a deflate block boundary
+   */
+  public static class Checkpoint {
+    /** position in the compressed stream, in bits */
+    public final long bitPos;
+    /** uncompressed bytes before this point */
+    public final long totalOut;
+    /** last (up to 32K) uncompressed bytes */
+    public final byte[] window;
+
+    public Checkpoint(long bitPos, long totalOut, byte[] window) {
+      this.bitPos = bitPos;
+      this.totalOut = totalOut;
+      this.window = window;
+    }
+  }
+}
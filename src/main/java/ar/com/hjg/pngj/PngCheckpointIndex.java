@@ -0,0 +1,297 @@
+package ar.com.hjg.pngj;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Index of checkpoints in the IDAT stream of a non-interlaced PNG image, that allows to start decoding at (about) any
+ * row, even if the image was written without restart points (see {@link PngReaderSeekable#setCheckpointIndex}).
+ * <p>
+ * This is the technique of zlib's zran.c: the image is decoded once with a {@link InflaterJava}, and at a deflate block
+ * boundary every (at least) <tt>everyRows</tt> rows the state is saved: the bit position in the compressed stream, the
+ * last 32KB of inflated data, and the row context (filtered bytes of the partial row, and the previous unfiltered row).
+ * The density is limited by the deflate blocks of the image (typically, some tens of KB of raw data).
+ * <p>
+ * The index is meant to be stored in a separate file, see {@link #writeTo(OutputStream)} and
+ * {@link #readFrom(InputStream)}. Each checkpoint takes about 32KB plus two rows (before compression).
+ */
+public class PngCheckpointIndex {
+
+  private static final int MAGIC = 0x504a5a49; // "PJZI"
+  private static final int VERSION = 1;
+
+  private final int rows;
+  private final int rowLen; // including the filter byte
+  private final long[] chunkOffsets; // file offsets of the IDAT chunks
+  private final int[] chunkLens;
+  private final long[] chunkStreamStart; // offset in the compressed stream of the chunk data
+  private final List<RowCheckpoint> checkpoints;
+
+  public PngCheckpointIndex(int rows, int rowLen, long[] chunkOffsets, int[] chunkLens,
+      List<RowCheckpoint> checkpoints) {
+    if (chunkOffsets.length != chunkLens.length)
+      throw new PngjException("bad IDAT chunks arrays");
+    this.rows = rows;
+    this.rowLen = rowLen;
+    this.chunkOffsets = chunkOffsets;
+    this.chunkLens = chunkLens;
+    this.checkpoints = Collections.unmodifiableList(new ArrayList<RowCheckpoint>(checkpoints));
+    chunkStreamStart = new long[chunkLens.length];
+    for (int i = 1; i < chunkLens.length; i++)
+      chunkStreamStart[i] = chunkStreamStart[i - 1] + chunkLens[i - 1];
+  }
+
+  /**
+   * Decodes the image and builds the index.
+   *
+   * @param file PNG file, not interlaced
+   * @param everyRows Minimum distance between checkpoints, in rows
+   */
+  public static PngCheckpointIndex build(File file, int everyRows) {
+    if (everyRows < 1)
+      throw new PngjException("invalid interval " + everyRows);
+    IndexingReader r = new IndexingReader(file, everyRows);
+    try {
+      if (r.interlaced)
+        throw new PngjUnsupportedException("checkpoint index not supported for interlaced images");
+      while (r.hasMoreRows())
+        r.readRow();
+      long[] offs = new long[r.chunkOffsets.size()];
+      int[] lens = new int[offs.length];
+      for (int i = 0; i < offs.length; i++) {
+        offs[i] = r.chunkOffsets.get(i)[0];
+        lens[i] = (int) r.chunkOffsets.get(i)[1];
+      }
+      return new PngCheckpointIndex(r.getCurImgInfo().rows, r.rowLen, offs, lens, r.checkpoints);
+    } finally {
+      r.close();
+      r.inflater.end();
+    }
+  }
+
+  /**
+   * Writes the index (compressed). The stream is not closed.
+   */
+  public void writeTo(OutputStream os) {
+    try {
+      DataOutputStream ds = new DataOutputStream(os);
+      ds.writeInt(MAGIC);
+      ds.writeInt(VERSION);
+      ds.flush();
+      DeflaterOutputStream zs = new DeflaterOutputStream(os);
+      ds = new DataOutputStream(zs);
+      ds.writeInt(rows);
+      ds.writeInt(rowLen);
+      ds.writeInt(chunkOffsets.length);
+      for (int i = 0; i < chunkOffsets.length; i++) {
+        ds.writeLong(chunkOffsets[i]);
+        ds.writeInt(chunkLens[i]);
+      }
+      ds.writeInt(checkpoints.size());
+      for (RowCheckpoint c : checkpoints) {
+        ds.writeInt(c.row);
+        ds.writeLong(c.state.bitPos);
+        ds.writeLong(c.state.totalOut);
+        writeBytes(ds, c.state.window);
+        writeBytes(ds, c.partialRow);
+        writeBytes(ds, c.prevRow);
+      }
+      ds.flush();
+      zs.finish();
+    } catch (IOException e) {
+      throw new PngjOutputException(e);
+    }
+  }
+
+  /**
+   * Reads an index written by {@link #writeTo(OutputStream)}. The stream is not closed.
+   */
+  public static PngCheckpointIndex readFrom(InputStream is) {
+    try {
+      DataInputStream ds = new DataInputStream(is);
+      if (ds.readInt() != MAGIC)
+        throw new PngjInputException("not a PNGJ checkpoint index");
+      int version = ds.readInt();
+      if (version != VERSION)
+        throw new PngjInputException("unsupported checkpoint index version " + version);
+      ds = new DataInputStream(new InflaterInputStream(is));
+      int rows = ds.readInt();
+      int rowLen = ds.readInt();
+      int nchunks = ds.readInt();
+      long[] offs = new long[nchunks];
+      int[] lens = new int[nchunks];
+      for (int i = 0; i < nchunks; i++) {
+        offs[i] = ds.readLong();
+        lens[i] = ds.readInt();
+      }
+      int ncp = ds.readInt();
+      List<RowCheckpoint> cps = new ArrayList<RowCheckpoint>(ncp);
+      for (int i = 0; i < ncp; i++) {
+        int row = ds.readInt();
+        long bitPos = ds.readLong();
+        long totalOut = ds.readLong();
+        byte[] window = readBytes(ds);
+        byte[] partial = readBytes(ds);
+        byte[] prev = readBytes(ds);
+        cps.add(new RowCheckpoint(row, partial, prev, new InflaterJava.Checkpoint(bitPos, totalOut, window)));
+      }
+      return new PngCheckpointIndex(rows, rowLen, offs, lens, cps);
+    } catch (IOException e) {
+      throw new PngjInputException(e);
+    }
+  }
+
+  private static void writeBytes(DataOutputStream ds, byte[] b) throws IOException {
+    ds.writeInt(b.length);
+    ds.write(b);
+  }
+
+  private static byte[] readBytes(DataInputStream ds) throws IOException {
+    byte[] b = new byte[ds.readInt()];
+    ds.readFully(b);
+    return b;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  /** bytes per row, including the filter byte */
+  public int getRowLen() {
+    return rowLen;
+  }
+
+  /** Checkpoints, in increasing row order */
+  public List<RowCheckpoint> getCheckpoints() {
+    return checkpoints;
+  }
+
+  /**
+   * Last checkpoint that allows to decode the given row; null if none
+   */
+  public RowCheckpoint getCheckpointForRow(int row) {
+    RowCheckpoint found = null;
+    for (RowCheckpoint c : checkpoints) {
+      if (c.row > row)
+        break;
+      found = c;
+    }
+    return found;
+  }
+
+  int getChunkForStreamOffset(long streamOffset) {
+    for (int i = 0; i < chunkLens.length; i++)
+      if (streamOffset < chunkStreamStart[i] + chunkLens[i])
+        return i;
+    throw new PngjInputException("offset " + streamOffset + " beyond IDAT data");
+  }
+
+  long getChunkOffset(int chunk) {
+    return chunkOffsets[chunk];
+  }
+
+  int getChunkLen(int chunk) {
+    return chunkLens[chunk];
+  }
+
+  long getChunkStreamStart(int chunk) {
+    return chunkStreamStart[chunk];
+  }
+
+  /**
+   * A checkpoint: the inflater state, and the row being decoded at that point
+   */
+  public static class RowCheckpoint {
+    /** row being inflated at the checkpoint */
+    public final int row;
+    /** the (filtered) bytes of the row inflated before the checkpoint, including the filter byte */
+    public final byte[] partialRow;
+    /** previous row, unfiltered (including filter byte); zeros for the first row */
+    public final byte[] prevRow;
+    public final InflaterJava.Checkpoint state;
+
+    public RowCheckpoint(int row, byte[] partialRow, byte[] prevRow, InflaterJava.Checkpoint state) {
+      this.row = row;
+      this.partialRow = partialRow;
+      this.prevRow = prevRow;
+      this.state = state;
+    }
+
+    @Override
+    public String toString() {
+      return "row=" + row + "+" + partialRow.length + " bitPos=" + state.bitPos;
+    }
+  }
+
+  /** decodes the image with a InflaterJava, collecting checkpoints */
+  private static class IndexingReader extends PngReader {
+    final InflaterJava inflater = new InflaterJava();
+    final int everyRows;
+    final List<long[]> chunkOffsets = new ArrayList<long[]>();
+    final List<RowCheckpoint> checkpoints = new ArrayList<RowCheckpoint>();
+    int rowLen;
+    int nextRow;
+    boolean requested = false;
+    InflaterJava.Checkpoint pending;
+
+    IndexingReader(File file, int everyRows) {
+      super(file);
+      this.everyRows = everyRows;
+      this.nextRow = everyRows;
+      this.rowLen = getCurImgInfo().bytesPerRow + 1;
+    }
+
+    @Override
+    protected ChunkSeqReaderPng createChunkSeqReader() {
+      return new ChunkSeqReaderPng(false) {
+        @Override
+        protected void startNewChunk(int len, String id, long offset) {
+          if (isIdatKind(id) && (getIdatSet() == null || !getIdatSet().isDone()))
+            chunkOffsets.add(new long[] {offset, len});
+          super.startNewChunk(len, id, offset);
+        }
+
+        @Override
+        protected DeflatedChunksSet createIdatSet(String id) {
+          IdatSet ids = new IdatSet(id, getCurImgInfo(), deinterlacer, inflater, null) {
+            @Override
+            protected void preProcessRow() {
+              super.preProcessRow();
+              onRow(getRown(), getInflatedRow(), rowUnfilteredPrev);
+            }
+          };
+          ids.setCallbackMode(callbackMode);
+          return ids;
+        }
+      };
+    }
+
+    void onRow(int row, byte[] rowFiltered, byte[] rowPrev) {
+      if (pending == null)
+        pending = inflater.pollCheckpoint();
+      if (pending != null && pending.totalOut / rowLen <= row) {
+        int off = (int) (pending.totalOut - (long) row * rowLen);
+        if (off >= 0)
+          checkpoints.add(new RowCheckpoint(row, Arrays.copyOf(rowFiltered, off), row > 0 ? rowPrev.clone()
+              : new byte[rowLen], pending));
+        nextRow = row + everyRows;
+        pending = null;
+        requested = false;
+      }
+      if (!requested && row + 1 >= nextRow) {
+        inflater.requestCheckpoint();
+        requested = true;
+      }
+    }
+  }
+}
@@ -2,9 +2,12 @@ package ar.com.hjg.pngj;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.util.zip.Adler32;
 import java.util.zip.CRC32;
 
+import ar.com.hjg.pngj.ChunkReader.ChunkReaderMode;
 import ar.com.hjg.pngj.chunks.ChunkLoadBehaviour;
 import ar.com.hjg.pngj.chunks.ChunksList;
 import ar.com.hjg.pngj.chunks.PngChunkFCTL;
@@ -101,6 +104,9 @@ public class PngReader {
    */
   private IImageLineSetFactory<? extends IImageLine> imageLineSetFactory;
 
+  private IInterlacedPassListener passListener;
+  private boolean passUpsample;
+
   CRC32 idatCrca;// for internal testing
   Adler32 idatCrcb;// for internal testing
 
@@ -128,8 +134,51 @@ public class PngReader {
    *        termination.
    */
   public PngReader(InputStream inputStream, boolean shouldCloseStream) {
-    streamFeeder = new BufferedStreamFeeder(inputStream);
-    streamFeeder.setCloseStream(shouldCloseStream);
+    this(createFeeder(new BufferedStreamFeeder(inputStream), shouldCloseStream));
+  }
+
+  /**
+   * Reads the PNG image from a byte array, with no intermediate copy. The array must not be modified while this reader
+   * is in use.
+   */
+  public PngReader(byte[] data) {
+    this(data, 0, data.length);
+  }
+
+  /** Same as {@link #PngReader(byte[])}, from <tt>len</tt> bytes of the array */
+  public PngReader(byte[] data, int offset, int len) {
+    this(new BufferedStreamFeeder(data, offset, len));
+  }
+
+  /**
+   * Reads the PNG image from the remaining bytes of a buffer. If it's a heap buffer, the data is not copied; a direct
+   * buffer is read in small blocks.
+   */
+  public PngReader(ByteBuffer buffer) {
+    this(new BufferedStreamFeeder(buffer));
+  }
+
+  /**
+   * Reads the PNG image from a (blocking) channel.
+   * 
+   * @param shouldCloseStream The channel will be closed in case of exception (constructor included) or normal
+   *        termination.
+   */
+  public PngReader(ReadableByteChannel channel, boolean shouldCloseStream) {
+    this(createFeeder(new BufferedStreamFeeder(channel), shouldCloseStream));
+  }
+
+  private static BufferedStreamFeeder createFeeder(BufferedStreamFeeder feeder, boolean shouldCloseStream) {
+    feeder.setCloseStream(shouldCloseStream);
+    return feeder;
+  }
+
+  /**
+   * Constructs a PngReader from a prepared feeder (the source of bytes). This reads the signature and the first IHDR
+   * chunk only.
+   */
+  protected PngReader(BufferedStreamFeeder feeder) {
+    streamFeeder = feeder;
     chunkseq = createChunkSeqReader();
     try {
       streamFeeder.setFailIfNoFeed(true);
@@ -179,9 +228,11 @@ public class PngReader {
    * implicititly in some methods (getMetatada(), getChunksList())
    */
   protected void readFirstChunks() {
-    while (chunkseq.currentChunkGroup < ChunksList.CHUNK_GROUP_4_IDAT)
+    while (chunkseq.currentChunkGroup < ChunksList.CHUNK_GROUP_4_IDAT) {
+      skipUnneededChunkData();
       if (streamFeeder.feed(chunkseq) <= 0)
         throw new PngjInputException("premature ending reading first chunks");
+    }
   }
 
   /**
@@ -316,23 +367,36 @@ public class PngReader {
       throw new PngjInputException("readRows cannot be mixed with readRow");
     imlinesSet = createLineSet(false, nRows, rowOffset, rowStep);
     if (!interlaced) {
+      IdatSet idat = chunkseq.getIdatSet();
+      // 8 bits in ImageLineByte: we unfilter directly in the scanlines
+      boolean fused =
+          getCurImgInfo().bitDepth == 8 && !idat.isCallbackMode()
+              && imlinesSet.getImageLine(rowOffset) instanceof ImageLineByte;
+      idat.setDeferredUnfilter(fused);
       int m = -1; // last row already read in
       while (m < nRows - 1) {
-        while (!chunkseq.getIdatSet().isRowReady())
+        while (!idat.isRowReady())
           if (streamFeeder.feed(chunkseq) < 1)
             throw new PngjInputException("Premature ending");
         rowNum++;
-        chunkseq.getIdatSet().updateCrcs(idatCrca, idatCrcb);
         int n = (rowNum - rowOffset) / rowStep; // next row to be read
-        if (rowNum >= rowOffset && rowStep * n + rowOffset == rowNum) {
+        boolean wanted = rowNum >= rowOffset && rowStep * n + rowOffset == rowNum;
+        IImageLine line = wanted ? imlinesSet.getImageLine(rowNum) : null;
+        if (fused) {
+          idat.unfilterRowInto(wanted ? ((ImageLineByte) line).scanline : null);
+          if (wanted)
+            ((ImageLineByte) line).setFilterType(FilterType.getByVal(idat.getInflatedRow()[0]));
+        }
+        idat.updateCrcs(idatCrca, idatCrcb);
+        if (wanted) {
           m = n;
-          IImageLine line = imlinesSet.getImageLine(rowNum);
-          line.readFromPngRaw(chunkseq.getIdatSet().getUnfilteredRow(),
-              getCurImgInfo().bytesPerRow + 1, 0, 1);
+          if (!fused)
+            line.readFromPngRaw(idat.getUnfilteredRow(), getCurImgInfo().bytesPerRow + 1, 0, 1);
           line.endReadFromPngRaw();
         }
-        chunkseq.getIdatSet().advanceToNextRow();
+        idat.advanceToNextRow();
       }
+      idat.setDeferredUnfilter(false);
     } else { // and now, for something completely different (interlaced)
       loadAllInterlaced(nRows, rowOffset, rowStep);
     }
@@ -340,6 +404,169 @@ public class PngReader {
     return imlinesSet;
   }
 
+  /**
+   * Reads a rectangular region of the image.
+   * <p>
+   * The returned set holds only the region: its lines have <tt>w</tt> columns (see
+   * {@link ImageInfo#withSize(int, int)}) and are numbered from 0 to <tt>h-1</tt>. Only the pixels inside the region
+   * are converted. For non-interlaced images, the decoding stops after the last row of the region; the rest of the pixel
+   * data is skipped (without inflating it, and without reading it if the stream supports skipping) by {@link #end()}.
+   * <p>
+   * This method should called once, and not be mixed with {@link #readRow()}
+   * 
+   * @param x first column
+   * @param y first row
+   * @param w number of columns
+   * @param h number of rows
+   */
+  public IImageLineSet<? extends IImageLine> readRegion(int x, int y, int w, int h) {
+    if (chunkseq.firstChunksNotYetRead())
+      readFirstChunks();
+    ImageInfo imi = getCurImgInfo();
+    if (x < 0 || y < 0 || w < 1 || h < 1 || x + w > imi.cols || y + h > imi.rows)
+      throw new PngjInputException("bad region");
+    if (rowNum >= y)
+      throw new PngjInputException("readRegion cannot be mixed with readRow");
+    IImageLineSet<? extends IImageLine> lines =
+        imageLineSetFactory.create(imi.withSize(w, h), false, h, 0, 1);
+    IdatSet idat = chunkseq.getIdatSet();
+    byte[] buf = new byte[imi.withSize(w, 1).bytesPerRow + 1];
+    int lastRow = y + h - 1;
+    while (true) {
+      while (!idat.isRowReady())
+        if (streamFeeder.feed(chunkseq) < 1)
+          throw new PngjInputException("premature ending");
+      idat.updateCrcs(idatCrca, idatCrcb);
+      RowInfo ri = idat.rowinfo;
+      if (!interlaced)
+        rowNum++;
+      if (ri.rowNreal >= y && ri.rowNreal <= lastRow) {
+        // pixels of this (sub)row that fall in the region: k0 ... k0+n-1
+        int k0 = x <= ri.oX ? 0 : (x - ri.oX + ri.dX - 1) / ri.dX;
+        int c0 = ri.oX + k0 * ri.dX;
+        int n = c0 >= x + w ? 0 : Math.min((x + w - c0 + ri.dX - 1) / ri.dX, ri.colsSubImg - k0);
+        if (n > 0) {
+          int len = extractPixels(idat.getUnfilteredRow(), ri.buflen, k0, n, imi.bitspPixel, buf);
+          lines.getImageLine(ri.rowNreal - y).readFromPngRaw(buf, len, c0 - x, ri.dX);
+        }
+      }
+      // interlaced: the region is complete when the last pass gets to its last row
+      if (interlaced ? ri.pass == 7 && ri.rowNreal >= lastRow - 1 : rowNum == lastRow)
+        break;
+      idat.advanceToNextRow();
+      if (idat.isDone())
+        break;
+    }
+    idat.done();
+    if (interlaced)
+      rowNum = lastRow;
+    for (int i = 0; i < h; i++)
+      lines.getImageLine(i).endReadFromPngRaw();
+    return lines;
+  }
+
+  /**
+   * Reads the image downscaled to the given size, with a box filter: each pixel is the average of the original pixels
+   * of its box (for indexed images: the first one).
+   * <p>
+   * The rows are accumulated as they are decoded: for non-interlaced images only one row of accumulators is kept. For
+   * interlaced images, only the Adam7 passes needed to have at least one pixel in each box are decoded (the average is
+   * computed over those pixels), the rest of the pixel data is skipped by {@link #end()}.
+   * <p>
+   * This method should called once, and not be mixed with {@link #readRow()}
+   * 
+   * @param cols Target columns, not greater than the original
+   * @param rows Target rows, not greater than the original
+   * @return Lines with the target size (see {@link ImageInfo#withSize(int, int)}), numbered from 0
+   */
+  public IImageLineSet<? extends IImageLine> readScaled(int cols, int rows) {
+    if (chunkseq.firstChunksNotYetRead())
+      readFirstChunks();
+    ImageInfo imi = getCurImgInfo();
+    if (cols < 1 || rows < 1)
+      throw new PngjInputException("bad size");
+    if (rowNum >= 0)
+      throw new PngjInputException("readScaled cannot be mixed with readRow");
+    ImageInfo imi2 = imi.withSize(cols, rows);
+    RowScaler scaler = new RowScaler(imi, imi2, !interlaced);
+    IImageLineSet<? extends IImageLine> lines = imageLineSetFactory.create(imi2, false, rows, 0, 1);
+    ImageLineInt line = new ImageLineInt(imi);
+    IdatSet idat = chunkseq.getIdatSet();
+    int lastPass = interlaced ? scaler.passesNeeded() : 1;
+    while (true) {
+      while (!idat.isRowReady())
+        if (streamFeeder.feed(chunkseq) < 1)
+          throw new PngjInputException("premature ending");
+      RowInfo ri = idat.rowinfo;
+      if (ri.pass > lastPass)
+        break;
+      idat.updateCrcs(idatCrca, idatCrcb);
+      line.readFromPngRaw(idat.getUnfilteredRow(), ri.buflen, ri.oX, ri.dX);
+      scaler.addRow(line.getScanline(), ri.rowNreal, ri.oX, ri.dX);
+      if (!interlaced) {
+        rowNum++;
+        if (scaler.isLastRowOfBox(rowNum)) {
+          int r2 = scaler.getBoxRow(rowNum);
+          scaler.emitRow(r2, lines.getImageLine(r2));
+        }
+        if (rowNum == imi.rows - 1)
+          break;
+      }
+      idat.advanceToNextRow();
+      if (idat.isDone())
+        break;
+    }
+    idat.done();
+    if (interlaced) {
+      for (int r2 = 0; r2 < rows; r2++)
+        scaler.emitRow(r2, lines.getImageLine(r2));
+      rowNum = imi.rows - 1;
+    }
+    return lines;
+  }
+
+  /**
+   * Copies pixels [k0, k0+n) of a raw row to dst, with the filter byte, aligned to byte; returns the length
+   */
+  private static int extractPixels(byte[] raw, int rawLen, int k0, int n, int bitsPixel, byte[] dst) {
+    dst[0] = raw[0];
+    int len = (n * bitsPixel + 7) / 8;
+    int bitOff = k0 * bitsPixel;
+    int b = 1 + (bitOff >> 3);
+    int s = bitOff & 7;
+    if (s == 0)
+      System.arraycopy(raw, b, dst, 1, len);
+    else
+      for (int i = 1; i <= len; i++, b++)
+        dst[i] = (byte) ((raw[b] << s) | (b + 1 < rawLen ? (raw[b + 1] & 0xff) >>> (8 - s) : 0));
+    return len + 1;
+  }
+
+  /**
+   * While the current chunk is in SKIP mode, or is IDAT from a finished set, skips its data without reading it (for a
+   * file, a seek); the CRC is not checked
+   */
+  private void skipUnneededChunkData() {
+    ChunkReader cr;
+    while ((cr = chunkseq.getCurChunkReader()) != null && !cr.isDone() && (isSkipped(cr) || isDoneIdat(cr))) {
+      int n = chunkseq.skipCurrentChunkData();
+      if (n == 0)
+        break; // empty chunk, or data already read
+      // skip the data, feed the CRC and the next chunk header
+      if (!streamFeeder.skipBytes(n) || !streamFeeder.feedFixed(chunkseq, 12, true))
+        throw new PngjInputException("premature ending");
+    }
+  }
+
+  private static boolean isSkipped(ChunkReader cr) {
+    return cr.mode == ChunkReaderMode.SKIP;
+  }
+
+  private boolean isDoneIdat(ChunkReader cr) {
+    return cr.isFromDeflatedSet() && chunkseq.getCurReaderDeflatedSet().isDone()
+        && cr.getChunkRaw().id.equals(PngChunkIDAT.ID) && !((DeflatedChunkReader) cr).alsoBuffer;
+  }
+
   /**
    * Sets the factory that creates the ImageLine. By default, this implementation uses ImageLineInt but this can be
    * changed (at construction time or later) by calling this method.
@@ -365,12 +592,15 @@ public class PngReader {
   protected void loadAllInterlaced(int nRows, int rowOffset, int rowStep) {
     IdatSet idat = chunkseq.getIdatSet();
     int nread = 0;
+    int passDone = 0;
     do {
       while (!chunkseq.getIdatSet().isRowReady())
         if (streamFeeder.feed(chunkseq) <= 0)
           break;
       if (!chunkseq.getIdatSet().isRowReady())
         throw new PngjInputException("Premature ending?");
+      if (passListener != null)
+        passDone = firePassesDone(passDone, idat.rowinfo.pass - 1);
       chunkseq.getIdatSet().updateCrcs(idatCrca, idatCrcb);
       int rowNumreal = idat.rowinfo.rowNreal;
       boolean inset = imlinesSet.hasImageLine(rowNumreal);
@@ -385,6 +615,35 @@ public class PngReader {
     for (int i = 0, j = rowOffset; i < nRows; i++, j += rowStep) {
       imlinesSet.getImageLine(j).endReadFromPngRaw();
     }
+    if (passListener != null)
+      firePassesDone(passDone, 7);
+  }
+
+  /** notifies passes from passDone+1 to pass, returns the last one */
+  private int firePassesDone(int passDone, int pass) {
+    while (passDone < pass) {
+      passDone++;
+      if (passUpsample)
+        ImageLineHelper.upsampleInterlaced(imlinesSet, getCurImgInfo(), passDone);
+      passListener.passDone(passDone, imlinesSet);
+    }
+    return passDone;
+  }
+
+  /**
+   * Sets a listener to be notified after each Adam7 pass of an interlaced image is decoded (eg, to show a coarse
+   * preview while the image is being read). Ignored for non-interlaced images.
+   * <p>
+   * This applies to {@link #readRows()} and the first {@link #readRow()} call (which load all the interlaced image).
+   * 
+   * @param listener null to disable
+   * @param upsample if true, the pixels not yet decoded are filled by replicating the known ones (see
+   *        {@link ImageLineHelper#upsampleInterlaced(IImageLineSet, ImageInfo, int)}); only for
+   *        {@link ImageLineInt} and {@link ImageLineByte}
+   */
+  public void setInterlacedPassListener(IInterlacedPassListener listener, boolean upsample) {
+    this.passListener = listener;
+    this.passUpsample = upsample;
   }
 
   /**
@@ -442,6 +701,25 @@ public class PngReader {
     chunkseq.dontSkipChunk(chunkToSkip);
   }
 
+  /**
+   * See {@link ChunkSeqReaderPng#setChunkStreamHandler(String, IChunkStreamHandler)}. Must be called before the chunk
+   * is read (typically, right after construction).
+   */
+  public void setChunkStreamHandler(String id, IChunkStreamHandler handler) {
+    chunkseq.setChunkStreamHandler(id, handler);
+  }
+
+
+  /**
+   * Inflates the pixels data in big blocks (of several rows), and coalesces small IDAT chunks. This can give a
+   * noticeable speedup for images with small rows or many small IDAT chunks. Must be called before reading the rows.
+   * See {@link DeflatedChunksSet#setInflateBlockLen(int)}
+   * 
+   * @param inflateBlockLen In bytes, eg 65536. 0: disabled (default)
+   */
+  public void setInflateBlockLen(int inflateBlockLen) {
+    chunkseq.setInflateBlockLen(inflateBlockLen);
+  }
 
   /**
    * if true, input stream will be closed after ending read
@@ -469,9 +747,11 @@ public class PngReader {
         readFirstChunks();
       if (chunkseq.getIdatSet() != null && !chunkseq.getIdatSet().isDone())
         chunkseq.getIdatSet().done();
-      while (!chunkseq.isDone())
+      while (!chunkseq.isDone()) {
+        skipUnneededChunkData();
         if (streamFeeder.feed(chunkseq) <= 0)
           break;
+      }
     } finally {
       close();
     }
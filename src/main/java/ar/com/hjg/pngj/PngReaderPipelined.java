@@ -0,0 +1,345 @@
+package ar.com.hjg.pngj;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A {@link PngReader} that decodes the pixels in a pipeline of three stages, running concurrently: inflation (this
+ * includes reading and parsing the stream), unfiltering, and conversion to {@link IImageLine} (this last one is done in
+ * the caller thread, inside {@link #readRow(int)} or {@link #readRows(int, int, int)}).
+ * <p>
+ * The stages are connected by bounded queues of recycled row buffers, so that the memory usage does not depend on the
+ * image size, see {@link #setPipelineDepth(int)}. The API is the same as {@link PngReader}, the image lines are
+ * identical.
+ * <p>
+ * No speedup over {@link PngReader} has been shown: on a single core it's slower (0.84x to 1.00x, because of the
+ * thread handoffs), and it has not been measured on multicore machines, where at best it would take the time of the
+ * slowest stage instead of the sum. Measure before using it, eg with <tt>PngReaderPipelinedBenchmark</tt> (in the
+ * tests). Interlaced images are read as in {@link PngReader}.
+ * <p>
+ * Warning: while the rows are being read, the stream belongs to the inflater thread: the chunks after IDAT are not
+ * available till all rows are read, or {@link #end()} is called. The pipeline threads are stopped on
+ * {@link #end()} or {@link #close()}, these must be called. If the rows are not all read, and the inflater thread is
+ * blocked reading the stream (socket, pipe...), the stream is closed to unblock it (or, if it's not to be closed by
+ * us, the thread is left behind till the read returns) and the chunks after IDAT are not read.
+ */
+public class PngReaderPipelined extends PngReader {
+
+  private static final byte[] END = new byte[0]; // marker: no more rows in queue
+
+  // on abort, time given to the inflater thread to stop by itself, before closing the source
+  private static final int STOP_WAIT_MS = 100;
+
+  private int pipelineDepth = 16;
+
+  private ArrayBlockingQueue<byte[]> freeRaw; // pool of buffers for inflated (filtered) rows
+  private ArrayBlockingQueue<byte[]> rowsRaw; // inflated rows, inflater->unfilter
+  private ArrayBlockingQueue<byte[]> freeUnfiltered; // pool of buffers for unfiltered rows
+  private ArrayBlockingQueue<byte[]> rowsUnfiltered; // unfiltered rows, unfilter->caller
+  private byte[] rowHeld; // last unfiltered row taken by the caller, recycled when the next one is taken
+
+  private Thread inflaterThread;
+  private Thread unfilterThread;
+  private volatile Throwable failure;
+  private volatile boolean aborted;
+  private boolean sourceLost; // the inflater was stuck in a read on abort: the source is closed or abandoned
+
+  /**
+   * See {@link PngReader#PngReader(InputStream)}
+   */
+  public PngReaderPipelined(InputStream inputStream) {
+    super(inputStream);
+  }
+
+  /**
+   * See {@link PngReader#PngReader(InputStream, boolean)}
+   */
+  public PngReaderPipelined(InputStream inputStream, boolean shouldCloseStream) {
+    super(inputStream, shouldCloseStream);
+  }
+
+  /**
+   * See {@link PngReader#PngReader(File)}
+   */
+  public PngReaderPipelined(File file) {
+    super(file);
+  }
+
+  /**
+   * Maximum number of rows that each stage can have ahead of the next one. Default: 16. Must be called before reading
+   * the rows.
+   */
+  public void setPipelineDepth(int rows) {
+    if (inflaterThread != null)
+      throw new PngjException("pipeline already started");
+    if (rows < 1)
+      throw new PngjException("bad pipeline depth " + rows);
+    pipelineDepth = rows;
+  }
+
+  @Override
+  protected ChunkSeqReaderPng createChunkSeqReader() {
+    return new ChunkSeqReaderPng(false) {
+      @Override
+      protected DeflatedChunksSet createIdatSet(String id) {
+        if (getDeinterlacer() != null)
+          return super.createIdatSet(id);
+        IdatSet ids = new IdatSetRaw(id, getCurImgInfo());
+        ids.setCallbackMode(callbackMode);
+        ids.setInflateBlockLen(getInflateBlockLen());
+        return ids;
+      }
+    };
+  }
+
+  @Override
+  public IImageLine readRow(int nrow) {
+    if (interlaced)
+      return super.readRow(nrow);
+    if (chunkseq.firstChunksNotYetRead())
+      readFirstChunks();
+    if (imlinesSet == null)
+      imlinesSet = createLineSet(true, -1, 0, 1);
+    IImageLine line = imlinesSet.getImageLine(nrow);
+    if (nrow == rowNum)
+      return line; // already read??
+    else if (nrow < rowNum)
+      throw new PngjInputException("rows must be read in increasing order: " + nrow);
+    startPipeline();
+    while (rowNum < nrow) {
+      byte[] rowu = takeUnfilteredRow();
+      rowNum++;
+      updateCrcs(rowu);
+      if (rowNum == nrow) {
+        line.readFromPngRaw(rowu, getCurImgInfo().bytesPerRow + 1, 0, 1);
+        line.endReadFromPngRaw();
+      }
+    }
+    if (rowNum == getCurImgInfo().rows - 1)
+      joinPipeline();
+    return line;
+  }
+
+  @Override
+  public IImageLineSet<? extends IImageLine> readRows(int nRows, int rowOffset, int rowStep) {
+    if (interlaced)
+      return super.readRows(nRows, rowOffset, rowStep);
+    if (chunkseq.firstChunksNotYetRead())
+      readFirstChunks();
+    if (nRows < 0)
+      nRows = (getCurImgInfo().rows - rowOffset) / rowStep;
+    if (rowStep < 1 || rowOffset < 0 || nRows == 0
+        || nRows * rowStep + rowOffset > getCurImgInfo().rows + rowStep - 1)
+      throw new PngjInputException("bad args");
+    if (rowNum >= rowOffset)
+      throw new PngjInputException("readRows cannot be mixed with readRow");
+    imlinesSet = createLineSet(false, nRows, rowOffset, rowStep);
+    startPipeline();
+    int m = -1; // last row already read in
+    while (m < nRows - 1) {
+      byte[] rowu = takeUnfilteredRow();
+      rowNum++;
+      updateCrcs(rowu);
+      int n = (rowNum - rowOffset) / rowStep; // next row to be read
+      if (rowNum >= rowOffset && rowStep * n + rowOffset == rowNum) {
+        m = n;
+        IImageLine line = imlinesSet.getImageLine(rowNum);
+        line.readFromPngRaw(rowu, getCurImgInfo().bytesPerRow + 1, 0, 1);
+        line.endReadFromPngRaw();
+      }
+    }
+    if (rowNum == getCurImgInfo().rows - 1)
+      joinPipeline();
+    else
+      stopPipeline();
+    chunkseq.getIdatSet().done();
+    return imlinesSet;
+  }
+
+  @Override
+  public void end() {
+    if (stopPipeline())
+      super.end();
+    else
+      close(); // can't read the remaining chunks
+  }
+
+  @Override
+  public void close() {
+    stopPipeline();
+    super.close();
+  }
+
+  private void updateCrcs(byte[] rowu) {
+    if (idatCrca != null)
+      idatCrca.update(rowu, 1, getCurImgInfo().bytesPerRow);
+    if (idatCrcb != null)
+      idatCrcb.update(rowu, 1, getCurImgInfo().bytesPerRow);
+  }
+
+  private void startPipeline() {
+    if (inflaterThread != null)
+      return;
+    final int rowlen = getCurImgInfo().bytesPerRow + 1;
+    // 2 extra buffers for unfiltered rows: the one held by the caller, and the previous row in the unfilter stage
+    freeRaw = createPool(pipelineDepth, rowlen);
+    freeUnfiltered = createPool(pipelineDepth + 2, rowlen);
+    rowsRaw = new ArrayBlockingQueue<byte[]>(pipelineDepth + 1);
+    rowsUnfiltered = new ArrayBlockingQueue<byte[]>(pipelineDepth + 3);
+    inflaterThread = new Thread(new Runnable() {
+      public void run() {
+        inflateRows();
+      }
+    }, "pngj-inflater");
+    unfilterThread = new Thread(new Runnable() {
+      public void run() {
+        unfilterRows(rowlen);
+      }
+    }, "pngj-unfilter");
+    inflaterThread.setDaemon(true);
+    unfilterThread.setDaemon(true);
+    inflaterThread.start();
+    unfilterThread.start();
+  }
+
+  private static ArrayBlockingQueue<byte[]> createPool(int n, int rowlen) {
+    ArrayBlockingQueue<byte[]> pool = new ArrayBlockingQueue<byte[]>(n);
+    for (int i = 0; i < n; i++)
+      pool.add(new byte[rowlen]);
+    return pool;
+  }
+
+  /* first stage: runs in its own thread, owns the stream and the chunk sequence till the last row is inflated */
+  private void inflateRows() {
+    try {
+      IdatSet idat = chunkseq.getIdatSet();
+      int rows = getCurImgInfo().rows;
+      for (int r = 0; r < rows && !aborted; r++) {
+        while (!idat.isRowReady())
+          if (streamFeeder.feed(chunkseq) < 1)
+            throw new PngjInputException("premature ending");
+        byte[] buf = freeRaw.take();
+        System.arraycopy(idat.getInflatedRow(), 0, buf, 0, idat.getRowFilled());
+        rowsRaw.put(buf);
+        idat.advanceToNextRow();
+      }
+    } catch (InterruptedException e) {
+      // aborted
+    } catch (Throwable e) {
+      failure = e;
+    } finally {
+      rowsRaw.offer(END);
+    }
+  }
+
+  /* second stage: runs in its own thread */
+  private void unfilterRows(int rowlen) {
+    try {
+      byte[] prev = new byte[rowlen];
+      int bytesPixel = getCurImgInfo().bytesPixel;
+      while (true) {
+        byte[] raw = rowsRaw.take();
+        if (raw == END)
+          break;
+        byte[] rowu = freeUnfiltered.take();
+        IdatSet.unfilterRow(raw, rowu, prev, rowlen - 1, bytesPixel);
+        freeRaw.put(raw);
+        rowsUnfiltered.put(rowu);
+        prev = rowu; // the caller will not recycle it till it takes the next one
+      }
+    } catch (InterruptedException e) {
+      // aborted
+    } catch (Throwable e) {
+      failure = e;
+    } finally {
+      rowsUnfiltered.offer(END);
+    }
+  }
+
+  /* last stage (caller thread) */
+  private byte[] takeUnfilteredRow() {
+    byte[] rowu;
+    try {
+      rowu = rowsUnfiltered.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PngjInputException("interrupted", e);
+    }
+    if (rowu == END) {
+      rowsUnfiltered.offer(END); // in case we are called again
+      Throwable e = failure;
+      if (e instanceof RuntimeException)
+        throw (RuntimeException) e;
+      throw e != null ? new PngjInputException(e) : new PngjInputException("premature ending");
+    }
+    if (rowHeld != null)
+      freeUnfiltered.offer(rowHeld);
+    rowHeld = rowu;
+    return rowu;
+  }
+
+  /* waits for the pipeline threads to terminate, the chunk sequence can be used after this */
+  private void joinPipeline() {
+    joinThread(inflaterThread, 0);
+    joinThread(unfilterThread, 0);
+  }
+
+  /*
+   * aborts the pipeline (if running) and waits for the threads to terminate. Returns false if the source can't be used
+   * any more: an interrupt doesn't wake up a thread blocked in read() (sockets, pipes), so if the inflater doesn't stop
+   * in time the feeder is closed (this closes the stream, if it's ours). If it still doesn't stop (stream not ours),
+   * the thread is abandoned: it will fail when the read returns.
+   */
+  private boolean stopPipeline() {
+    if (inflaterThread == null || sourceLost)
+      return !sourceLost;
+    aborted = true;
+    inflaterThread.interrupt();
+    unfilterThread.interrupt();
+    if (!joinThread(inflaterThread, STOP_WAIT_MS)) {
+      sourceLost = true;
+      streamFeeder.close();
+      joinThread(inflaterThread, STOP_WAIT_MS);
+    }
+    if (inflaterThread.isAlive())
+      joinThread(unfilterThread, 0); // this one only waits on the queues
+    else
+      joinPipeline();
+    return !sourceLost;
+  }
+
+  /* waits for the thread to terminate, at most millis (0: forever); true if terminated */
+  private static boolean joinThread(Thread t, long millis) {
+    boolean interrupted = false;
+    long deadline = System.currentTimeMillis() + millis;
+    while (t.isAlive()) {
+      long wait = millis == 0 ? 0 : deadline - System.currentTimeMillis();
+      if (millis > 0 && wait <= 0)
+        break;
+      try {
+        t.join(wait);
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted)
+      Thread.currentThread().interrupt();
+    return !t.isAlive();
+  }
+
+  /**
+   * The inflater stage only inflates, the unfiltering is done by the next stage
+   */
+  private static class IdatSetRaw extends IdatSet {
+    IdatSetRaw(String id, ImageInfo iminfo) {
+      super(id, iminfo, null);
+    }
+
+    @Override
+    protected void preProcessRow() {
+      rowinfo.update(getRown());
+    }
+  }
+
+}
@@ -0,0 +1,337 @@
+package ar.com.hjg.pngj;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import ar.com.hjg.pngj.chunks.ChunkHelper;
+import ar.com.hjg.pngj.chunks.ChunkRaw;
+import ar.com.hjg.pngj.chunks.PngChunkRIDX;
+
+/**
+ * A {@link PngReader} for files, that allows to read the rows in any order, using the restart points of the image (see
+ * {@link ar.com.hjg.pngj.pixels.PixelsWriter#setRestartInterval(int)}).
+ * <p>
+ * The restart index is read (on first use) from the riDX chunk of the file, or it can be given explicitly, see
+ * {@link #setRestartEntries(List)}. To read a row, the decoding starts from the nearest previous restart point (or
+ * continues from the last row read, if that's nearer): only the IDAT data from there is read and inflated.
+ * <p>
+ * For images without restart points, a {@link PngCheckpointIndex} (built beforehand, and typically stored in a separate
+ * file) can be used instead, see {@link #setCheckpointIndex(PngCheckpointIndex)}.
+ * <p>
+ * If the image has no restart index, {@link #readRow(int)} still accepts any order, but a backward read restarts the
+ * decoding from the first row. Interlaced images are read as in {@link PngReader}.
+ * <p>
+ * Warning: in random access mode, the IDAT chunks CRCs are not checked; and {@link #readRows(int, int, int)} is not
+ * affected (it reads the rows sequentially, and cannot be mixed with {@link #readRow(int)}).
+ */
+public class PngReaderSeekable extends PngReader {
+
+  private final File file;
+  private RandomAccessFile raf;
+  private long firstIdatOffset = -1; // absolute file offset of the first IDAT chunk
+  private List<PngChunkRIDX.Entry> restartEntries; // null: not yet scanned
+  private PngCheckpointIndex checkpointIndex;
+  private ChunkCatalog chunkCatalog;
+  private RowCursor cursor;
+
+  /**
+   * See {@link PngReader#PngReader(File)}
+   */
+  public PngReaderSeekable(File file) {
+    super(file);
+    this.file = file;
+  }
+
+  /**
+   * Sets the restart points, instead of looking for them in the riDX chunk of the file (eg, if they were stored in a
+   * separate file). The offsets are relative to the start of the first IDAT chunk.
+   */
+  public void setRestartEntries(List<PngChunkRIDX.Entry> entries) {
+    this.restartEntries = entries;
+  }
+
+  /**
+   * Sets a checkpoint index (built for this same file), to be used together with the restart points (if any)
+   */
+  public void setCheckpointIndex(PngCheckpointIndex checkpointIndex) {
+    if (checkpointIndex != null && (checkpointIndex.getRowLen() != getCurImgInfo().bytesPerRow + 1
+        || checkpointIndex.getRows() != getCurImgInfo().rows))
+      throw new PngjInputException("checkpoint index does not match the image");
+    this.checkpointIndex = checkpointIndex;
+  }
+
+  public PngCheckpointIndex getCheckpointIndex() {
+    return checkpointIndex;
+  }
+
+  /**
+   * Sets the chunk catalog of this file, so that the IDAT and riDX chunks are located from it, instead of walking the
+   * chunks of the file
+   */
+  public void setChunkCatalog(ChunkCatalog chunkCatalog) {
+    this.chunkCatalog = chunkCatalog;
+  }
+
+  /**
+   * The restart points; empty if the image has none
+   */
+  public List<PngChunkRIDX.Entry> getRestartEntries() {
+    scanChunks();
+    return restartEntries;
+  }
+
+  /**
+   * Reads a row, in any order. See class doc.
+   */
+  @Override
+  public IImageLine readRow(int nrow) {
+    if (interlaced)
+      return super.readRow(nrow);
+    if (chunkseq.firstChunksNotYetRead())
+      readFirstChunks();
+    if (nrow < 0 || nrow >= getCurImgInfo().rows)
+      throw new PngjInputException("invalid row " + nrow);
+    if (imlinesSet == null)
+      imlinesSet = createLineSet(true, -1, 0, 1);
+    IImageLine line = imlinesSet.getImageLine(nrow);
+    if (nrow == rowNum && cursor != null && cursor.row == nrow)
+      return line; // already read
+    RowCursor c = getCursorFor(nrow);
+    c.advanceTo(nrow);
+    line.readFromPngRaw(c.rowUnfiltered, getCurImgInfo().bytesPerRow + 1, 0, 1);
+    line.endReadFromPngRaw();
+    rowNum = nrow;
+    return line;
+  }
+
+  @Override
+  public void close() {
+    closeCursor();
+    if (raf != null) {
+      try {
+        raf.close();
+      } catch (IOException e) {
+        PngHelperInternal.LOGGER.warning("error closing file:" + e.getMessage());
+      }
+      raf = null;
+    }
+    super.close();
+  }
+
+  /** nearest cursor (current one if convenient, or new one from a restart point or checkpoint) */
+  private RowCursor getCursorFor(int nrow) {
+    scanChunks();
+    PngChunkRIDX.Entry entry = null;
+    for (PngChunkRIDX.Entry e : restartEntries) {
+      if (e.row > nrow)
+        break;
+      if (e.filterReset)
+        entry = e;
+    }
+    int startRow = entry == null ? 0 : entry.row;
+    PngCheckpointIndex.RowCheckpoint cp =
+        checkpointIndex != null ? checkpointIndex.getCheckpointForRow(nrow) : null;
+    if (cp != null && cp.row <= startRow)
+      cp = null;
+    if (cp != null)
+      startRow = cp.row;
+    if (cursor != null && cursor.row <= nrow && cursor.row + 1 >= startRow)
+      return cursor; // continue from here
+    closeCursor();
+    if (cp != null)
+      cursor = new RowCursor(cp);
+    else if (entry == null)
+      cursor = new RowCursor(firstIdatOffset, new Inflater(), 0);
+    else
+      cursor = new RowCursor(firstIdatOffset + entry.offset, new Inflater(true), entry.row);
+    return cursor;
+  }
+
+  private void closeCursor() {
+    if (cursor != null) {
+      cursor.inflater.end();
+      cursor = null;
+    }
+  }
+
+  private RandomAccessFile getRaf() throws IOException {
+    if (raf == null)
+      raf = new RandomAccessFile(file, "r");
+    return raf;
+  }
+
+  /**
+   * walks the chunks of the file (without reading the IDAT data), or the chunk catalog, to locate the first IDAT and the
+   * riDX chunk
+   */
+  private void scanChunks() {
+    if (firstIdatOffset >= 0)
+      return;
+    PngChunkRIDX ridx = null;
+    if (chunkCatalog != null) {
+      ChunkCatalog.Entry idat = chunkCatalog.getFirst(ChunkHelper.IDAT);
+      ChunkCatalog.Entry e = chunkCatalog.getFirst(PngChunkRIDX.ID);
+      if (idat != null)
+        firstIdatOffset = idat.offset;
+      if (e != null && restartEntries == null)
+        ridx = readRidx(e.offset, e.len);
+    } else
+      ridx = walkChunks();
+    if (firstIdatOffset < 0)
+      throw new PngjInputException("no IDAT chunk found");
+    if (restartEntries == null)
+      restartEntries =
+          ridx != null ? ridx.getEntries() : Collections.<PngChunkRIDX.Entry>emptyList();
+  }
+
+  private PngChunkRIDX readRidx(long offset, int clen) {
+    try {
+      RandomAccessFile f = getRaf();
+      f.seek(offset + 8);
+      ChunkRaw c = new ChunkRaw(clen, ChunkHelper.toBytes(PngChunkRIDX.ID), true);
+      f.readFully(c.data, 0, clen);
+      PngChunkRIDX ridx = new PngChunkRIDX(getCurImgInfo());
+      ridx.parseFromRaw(c);
+      return ridx;
+    } catch (IOException e) {
+      throw new PngjInputException(e);
+    }
+  }
+
+  /** returns the riDX chunk, if found (and needed) */
+  private PngChunkRIDX walkChunks() {
+    PngChunkRIDX ridx = null;
+    try {
+      RandomAccessFile f = getRaf();
+      long len = f.length();
+      byte[] idbytes = new byte[4];
+      for (long pos = 8; pos + 12 <= len;) { // after the signature
+        f.seek(pos);
+        int clen = f.readInt();
+        f.readFully(idbytes);
+        String id = ChunkHelper.idFromBytes(idbytes, 0);
+        if (id.equals(ChunkHelper.IDAT) && firstIdatOffset < 0)
+          firstIdatOffset = pos;
+        else if (id.equals(PngChunkRIDX.ID) && restartEntries == null)
+          ridx = readRidx(pos, clen);
+        else if (id.equals(ChunkHelper.IEND))
+          break;
+        pos += clen + 12L;
+      }
+    } catch (IOException e) {
+      throw new PngjInputException(e);
+    }
+    return ridx;
+  }
+
+  /**
+   * Decodes rows sequentially, starting from a given IDAT chunk (either the first one, or a restart point)
+   */
+  private class RowCursor {
+    final Inflater inflater;
+    final byte[] rowFiltered;
+    byte[] rowUnfiltered;
+    byte[] rowPrev;
+    final byte[] inbuf = new byte[8192];
+    int row; // last decoded row
+    long pos; // next file position to read
+    int chunkLeft = 0; // bytes left in current IDAT chunk
+    boolean chunksEnded = false;
+    int partialRowLen = 0; // bytes already in rowFiltered, for the next row
+
+    RowCursor(long idatChunkOffset, Inflater inflater, int firstRow) {
+      this.inflater = inflater;
+      int rowlen = getCurImgInfo().bytesPerRow + 1;
+      rowFiltered = new byte[rowlen];
+      rowUnfiltered = new byte[rowlen];
+      rowPrev = new byte[rowlen]; // zeroed: the first row does not use it
+      pos = idatChunkOffset;
+      row = firstRow - 1;
+    }
+
+    /** starts in the middle of an IDAT chunk, from a checkpoint */
+    RowCursor(PngCheckpointIndex.RowCheckpoint cp) {
+      this(0, new InflaterJava(cp.state), cp.row);
+      long streamOffset = cp.state.bitPos >>> 3;
+      int chunk = checkpointIndex.getChunkForStreamOffset(streamOffset);
+      long inChunk = streamOffset - checkpointIndex.getChunkStreamStart(chunk);
+      pos = checkpointIndex.getChunkOffset(chunk) + 8 + inChunk;
+      chunkLeft = (int) (checkpointIndex.getChunkLen(chunk) - inChunk);
+      System.arraycopy(cp.prevRow, 0, rowUnfiltered, 0, rowUnfiltered.length);
+      partialRowLen = cp.partialRow.length;
+      System.arraycopy(cp.partialRow, 0, rowFiltered, 0, partialRowLen);
+    }
+
+    void advanceTo(int nrow) {
+      while (row < nrow) {
+        inflateRow();
+        byte[] aux = rowPrev;
+        rowPrev = rowUnfiltered;
+        rowUnfiltered = aux;
+        IdatSet.unfilterRow(rowFiltered, rowUnfiltered, rowPrev, rowFiltered.length - 1,
+            getCurImgInfo().bytesPixel);
+        row++;
+      }
+    }
+
+    private void inflateRow() {
+      try {
+        int off = partialRowLen;
+        partialRowLen = 0;
+        while (off < rowFiltered.length) {
+          int n = inflater.inflate(rowFiltered, off, rowFiltered.length - off);
+          off += n;
+          if (n == 0) {
+            if (inflater.finished() || inflater.needsDictionary())
+              throw new PngjInputException("premature ending of compressed stream at row " + (row + 1));
+            if (inflater.needsInput()) {
+              int r = readIdatData(inbuf);
+              if (r <= 0)
+                throw new PngjInputException("premature ending of IDAT data at row " + (row + 1));
+              inflater.setInput(inbuf, 0, r);
+            }
+          }
+        }
+      } catch (DataFormatException e) {
+        throw new PngjInputException("error decompressing row " + (row + 1), e);
+      }
+    }
+
+    /** reads data from the IDAT chunks, skipping the headers and CRCs */
+    private int readIdatData(byte[] buf) {
+      try {
+        RandomAccessFile f = getRaf();
+        while (chunkLeft == 0) {
+          if (chunksEnded)
+            return -1;
+          f.seek(pos);
+          int clen = f.readInt();
+          if (f.readInt() != ChunkHelper.idToInt(ChunkHelper.IDAT)) {
+            chunksEnded = true;
+            return -1;
+          }
+          pos += 8;
+          chunkLeft = clen;
+          if (clen == 0)
+            pos += 4;
+        }
+        int n = Math.min(buf.length, chunkLeft);
+        f.seek(pos);
+        f.readFully(buf, 0, n);
+        pos += n;
+        chunkLeft -= n;
+        if (chunkLeft == 0)
+          pos += 4; // crc
+        return n;
+      } catch (IOException e) {
+        throw new PngjInputException(e);
+      }
+    }
+  }
+
+}
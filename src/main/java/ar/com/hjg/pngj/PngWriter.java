@@ -12,6 +12,7 @@ import ar.com.hjg.pngj.chunks.PngChunk;
 import ar.com.hjg.pngj.chunks.PngChunkIEND;
 import ar.com.hjg.pngj.chunks.PngChunkIHDR;
 import ar.com.hjg.pngj.chunks.PngChunkPLTE;
+import ar.com.hjg.pngj.chunks.PngChunkRIDX;
 import ar.com.hjg.pngj.chunks.PngMetadata;
 import ar.com.hjg.pngj.pixels.PixelsWriter;
 import ar.com.hjg.pngj.pixels.PixelsWriterDefault;
@@ -127,6 +128,16 @@ public class PngWriter {
     nw = chunksList.writeChunks(os, currentChunkGroup);
   }
 
+  /* if there are restart points, see PixelsWriter.setRestartInterval() */
+  private void queueRestartIndex() {
+    List<PngChunkRIDX.Entry> entries = pixelsWriter.getRestartEntries();
+    if (entries.isEmpty())
+      return;
+    PngChunkRIDX ridx = new PngChunkRIDX(imgInfo);
+    ridx.setEntries(entries);
+    queueChunk(ridx);
+  }
+
   private void writeLastChunks() { // not including end
     currentChunkGroup = ChunksList.CHUNK_GROUP_5_AFTERIDAT;
     queueChunksFromOther();
@@ -167,6 +178,8 @@ public class PngWriter {
       if (chunk.crit && !chunk.id.equals(PngChunkPLTE.ID))
         continue; // critical chunks (except perhaps PLTE) are never
       // copied
+      if (chunk.id.equals(PngChunkRIDX.ID))
+        continue; // the restart index refers to the original IDAT
       boolean copy = copyFromPredicate.match(chunk);
       if (copy) {
         // but if the chunk is already queued or writen, it's ommited!
@@ -261,8 +274,10 @@ public class PngWriter {
     if (rowNum != imgInfo.rows - 1 || !pixelsWriter.isDone())
       throw new PngjOutputException("all rows have not been written");
     try {
-      if (pixelsWriter != null)
+      if (pixelsWriter != null) {
         pixelsWriter.close();
+        queueRestartIndex();
+      }
       if (currentChunkGroup < ChunksList.CHUNK_GROUP_5_AFTERIDAT)
         writeLastChunks();
       if (currentChunkGroup < ChunksList.CHUNK_GROUP_6_END)
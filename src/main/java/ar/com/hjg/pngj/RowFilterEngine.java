@@ -0,0 +1,119 @@
+package ar.com.hjg.pngj;
+
+/**
+ * Implementation of the PNG row filters, for reading (unfilter) and writing (filter, and the histograms used by the
+ * adaptive strategies, see {@link ar.com.hjg.pngj.pixels.FiltersPerformance}).
+ * <p>
+ * The default engine is selected once, at first use: if the system property {@link #PROPERTY_ENGINE} is set, it's
+ * either "scalar" or the name of a class that extends this; otherwise the optional {@link #VECTOR_ENGINE_CLASS} is
+ * tried, if present in the classpath. Any failure (class missing, unsupported JVM, {@link #isSupported()} false) falls
+ * back to {@link RowFilterEngineScalar}.
+ * <p>
+ * Implementations must be stateless and thread safe. All rows include the filter byte at position 0; <tt>nbytes</tt>
+ * does not include it.
+ */
+public abstract class RowFilterEngine {
+
+  /** System property to force an engine: "scalar" or a class name */
+  public static final String PROPERTY_ENGINE = "pngj.filterEngine";
+
+  /**
+   * Optional engine (SIMD, Java 17+ with jdk.incubator.vector), built from src/vector/java as a separate jar. It's used
+   * if it's in the classpath and the JVM runs with <tt>--add-modules jdk.incubator.vector</tt>
+   */
+  public static final String VECTOR_ENGINE_CLASS = "ar.com.hjg.pngj.vector.RowFilterEngineVector";
+
+  private static volatile RowFilterEngine defaultEngine;
+
+  /**
+   * Unfilters a raw row into <tt>rowUnfiltered</tt> (the filter byte is also copied), see
+   * {@link IdatSet#unfilterRow(byte[], byte[], byte[], int, int)}
+   */
+  public final void unfilterRow(byte[] row, byte[] rowUnfiltered, byte[] rowUnfilteredPrev, int nbytes,
+      int bytesPixel) {
+    unfilterRow(row, rowUnfiltered, rowUnfilteredPrev, 1, nbytes, bytesPixel);
+  }
+
+  /**
+   * Unfilters a raw row, the destination and previous rows can have a different layout than the raw one.
+   * <p>
+   * Implementations must support <tt>rowUnfiltered == rowUnfilteredPrev</tt> (in place) at least for bytesPixel 1 to
+   * 4: this is used to unfilter 8 bits images directly into the lines, see {@link IdatSet#unfilterRowInto(byte[])}
+   *
+   * @param offset Position of the first byte (after the filter byte) in <tt>rowUnfiltered</tt> and
+   *          <tt>rowUnfilteredPrev</tt>: 1 (the filter byte is copied to position 0) or 0 (no filter byte, eg the
+   *          scanline of a {@link ImageLineByte})
+   */
+  public abstract void unfilterRow(byte[] row, byte[] rowUnfiltered, byte[] rowUnfilteredPrev, int offset,
+      int nbytes, int bytesPixel);
+
+  /**
+   * Filters a row with a standard filter type (not NONE), leaving the result in <tt>rowf</tt>, from position 1 (the
+   * filter byte is not written).
+   *
+   * @param rowbprev Previous row, all zeros for the first one
+   */
+  public abstract void filterRow(FilterType filterType, byte[] rowb, byte[] rowbprev, byte[] rowf, int nbytes,
+      int bytesPixel);
+
+  /**
+   * Computes the histogram (256 values) of the bytes that the filter would produce, without storing them. The
+   * histogram is not cleared, the counts are added.
+   */
+  public abstract void histogramForFilter(FilterType filterType, byte[] rowb, byte[] rowbprev, int nbytes,
+      int bytesPixel, int[] histog);
+
+  /** Checked once, before selecting this as default engine (eg: the needed JVM features are available) */
+  protected boolean isSupported() {
+    return true;
+  }
+
+  /** Short description, for logging */
+  public String getName() {
+    return getClass().getSimpleName();
+  }
+
+  /**
+   * The engine used by the readers and writers
+   */
+  public static RowFilterEngine getDefault() {
+    RowFilterEngine e = defaultEngine;
+    if (e == null) {
+      e = select();
+      defaultEngine = e;
+    }
+    return e;
+  }
+
+  /**
+   * Overrides the default engine (null: select again). Mostly for tests and benchmarks, this affects all the readers and
+   * writers.
+   */
+  public static void setDefault(RowFilterEngine engine) {
+    defaultEngine = engine;
+  }
+
+  private static RowFilterEngine select() {
+    String name = null;
+    try {
+      name = System.getProperty(PROPERTY_ENGINE);
+    } catch (Throwable e) { // security manager
+    }
+    if ("scalar".equals(name))
+      return RowFilterEngineScalar.INSTANCE;
+    RowFilterEngine e = tryLoad(name != null && name.length() > 0 ? name : VECTOR_ENGINE_CLASS);
+    if (e == null && name != null)
+      PngHelperInternal.LOGGER.warning("filter engine " + name + " not available, using scalar");
+    return e != null ? e : RowFilterEngineScalar.INSTANCE;
+  }
+
+  private static RowFilterEngine tryLoad(String className) {
+    try {
+      RowFilterEngine e = (RowFilterEngine) Class.forName(className).getConstructor().newInstance();
+      if (e.isSupported())
+        return e;
+    } catch (Throwable t) { // missing, or the JVM can't load it: ClassNotFound, NoSuchMethod, LinkageError...
+    }
+    return null;
+  }
+}
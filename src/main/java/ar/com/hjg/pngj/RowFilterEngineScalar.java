@@ -0,0 +1,89 @@
+package ar.com.hjg.pngj;
+
+/**
+ * Plain Java implementation of {@link RowFilterEngine}, works on any JVM. Unfiltering uses the kernels of
+ * {@link IdatSet}, specialized by bytesPixel.
+ * <p>
+ * Other engines can extend this, to fall back for the cases they don't handle.
+ */
+public class RowFilterEngineScalar extends RowFilterEngine {
+
+  public static final RowFilterEngineScalar INSTANCE = new RowFilterEngineScalar();
+
+  @Override
+  public void unfilterRow(byte[] row, byte[] rowUnfiltered, byte[] rowUnfilteredPrev, int offset, int nbytes,
+      int bytesPixel) {
+    IdatSet.unfilterRowScalar(row, rowUnfiltered, rowUnfilteredPrev, offset, nbytes, bytesPixel);
+  }
+
+  @Override
+  public void filterRow(FilterType filterType, byte[] rowb, byte[] rowbprev, byte[] rowf, int nbytes,
+      int bytesPixel) {
+    int i, j;
+    switch (filterType) {
+      case FILTER_NONE:
+        System.arraycopy(rowb, 1, rowf, 1, nbytes);
+        break;
+      case FILTER_PAETH:
+        for (i = 1; i <= bytesPixel; i++)
+          rowf[i] = (byte) (rowb[i] - rowbprev[i]); // paeth(0,b,0)=b
+        for (j = 1, i = bytesPixel + 1; i <= nbytes; i++, j++)
+          rowf[i] = (byte) (rowb[i] - IdatSet.paeth(rowb[j] & 0xFF, rowbprev[i] & 0xFF, rowbprev[j] & 0xFF));
+        break;
+      case FILTER_SUB:
+        for (i = 1; i <= bytesPixel; i++)
+          rowf[i] = rowb[i];
+        for (j = 1, i = bytesPixel + 1; i <= nbytes; i++, j++)
+          rowf[i] = (byte) (rowb[i] - rowb[j]);
+        break;
+      case FILTER_AVERAGE:
+        for (i = 1; i <= bytesPixel; i++)
+          rowf[i] = (byte) (rowb[i] - ((rowbprev[i] & 0xFF) >> 1));
+        for (j = 1, i = bytesPixel + 1; i <= nbytes; i++, j++)
+          rowf[i] = (byte) (rowb[i] - (((rowbprev[i] & 0xFF) + (rowb[j] & 0xFF)) >> 1));
+        break;
+      case FILTER_UP:
+        for (i = 1; i <= nbytes; i++)
+          rowf[i] = (byte) (rowb[i] - rowbprev[i]);
+        break;
+      default:
+        throw new PngjOutputException("Filter type not recognized: " + filterType);
+    }
+  }
+
+  @Override
+  public void histogramForFilter(FilterType filterType, byte[] rowb, byte[] rowbprev, int nbytes, int bytesPixel,
+      int[] histog) {
+    int i, j;
+    switch (filterType) {
+      case FILTER_NONE:
+        for (i = 1; i <= nbytes; i++)
+          histog[rowb[i] & 0xFF]++;
+        break;
+      case FILTER_PAETH:
+        for (i = 1; i <= bytesPixel; i++)
+          histog[(rowb[i] - rowbprev[i]) & 0xFF]++;
+        for (j = 1, i = bytesPixel + 1; i <= nbytes; i++, j++)
+          histog[(rowb[i] - IdatSet.paeth(rowb[j] & 0xFF, rowbprev[i] & 0xFF, rowbprev[j] & 0xFF)) & 0xFF]++;
+        break;
+      case FILTER_SUB:
+        for (i = 1; i <= bytesPixel; i++)
+          histog[rowb[i] & 0xFF]++;
+        for (j = 1, i = bytesPixel + 1; i <= nbytes; i++, j++)
+          histog[(rowb[i] - rowb[j]) & 0xFF]++;
+        break;
+      case FILTER_UP:
+        for (i = 1; i <= nbytes; i++)
+          histog[(rowb[i] - rowbprev[i]) & 0xFF]++;
+        break;
+      case FILTER_AVERAGE:
+        for (i = 1; i <= bytesPixel; i++)
+          histog[(rowb[i] - ((rowbprev[i] & 0xFF) >> 1)) & 0xFF]++;
+        for (j = 1, i = bytesPixel + 1; i <= nbytes; i++, j++)
+          histog[(rowb[i] - (((rowbprev[i] & 0xFF) + (rowb[j] & 0xFF)) >> 1)) & 0xFF]++;
+        break;
+      default:
+        throw new PngjOutputException("Filter type not recognized: " + filterType);
+    }
+  }
+}
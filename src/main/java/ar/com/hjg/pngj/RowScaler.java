@@ -0,0 +1,119 @@
+package ar.com.hjg.pngj;
+
+import java.util.Arrays;
+
+/**
+ * Box (area-average) downscaler, fed with the source rows as they are decoded. Used by
+ * {@link PngReader#readScaled(int, int)}.
+ * <p>
+ * Each source pixel belongs to exactly one destination pixel (box); the value is the rounded average of the samples of
+ * the box that were fed (for indexed images: the first one). In sequential mode only one destination row of
+ * accumulators is kept; otherwise (interlaced) rows can be fed in any order.
+ */
+class RowScaler {
+
+  final ImageInfo src;
+  final ImageInfo dst;
+  private final int[] colBox; // destination column for each source column
+  private final int[] rowBox; // destination row for each source row
+  private final boolean sequential;
+  private final boolean nearest;
+  private final long[][] acc; // sums, one row per destination row (only one if sequential)
+  private final int[][] count; // samples per destination pixel
+  private final byte[] raw;
+
+  RowScaler(ImageInfo src, ImageInfo dst, boolean sequential) {
+    if (dst.cols > src.cols || dst.rows > src.rows)
+      throw new PngjException("only downscaling is supported");
+    this.src = src;
+    this.dst = dst;
+    this.sequential = sequential;
+    this.nearest = src.indexed;
+    colBox = new int[src.cols];
+    for (int c = 0; c < src.cols; c++)
+      colBox[c] = (int) ((long) c * dst.cols / src.cols);
+    rowBox = new int[src.rows];
+    for (int r = 0; r < src.rows; r++)
+      rowBox[r] = (int) ((long) r * dst.rows / src.rows);
+    int nrows = sequential ? 1 : dst.rows;
+    acc = new long[nrows][dst.samplesPerRow];
+    count = new int[nrows][dst.cols];
+    raw = new byte[dst.bytesPerRow + 1];
+  }
+
+  /**
+   * Last Adam7 pass that must be decoded so that each box gets at least one pixel
+   */
+  int passesNeeded() {
+    int minBoxW = src.cols / dst.cols;
+    int minBoxH = src.rows / dst.rows;
+    for (int p = 1; p < 7; p++) {
+      int[] grid = Deinterlacer.gridAfterPass(p);
+      if (grid[0] <= minBoxW && grid[1] <= minBoxH)
+        return p;
+    }
+    return 7;
+  }
+
+  /**
+   * Accumulates the pixels of a source row, at columns <tt>offsetX + k*stepX</tt>
+   *
+   * @param scanline Samples, in the format of {@link ImageLineInt} (full width)
+   */
+  void addRow(int[] scanline, int srcRow, int offsetX, int stepX) {
+    int dr = sequential ? 0 : rowBox[srcRow];
+    long[] a = acc[dr];
+    int[] cnt = count[dr];
+    final int ch = src.channels;
+    for (int c = offsetX; c < src.cols; c += stepX) {
+      int dc = colBox[c];
+      if (nearest && cnt[dc] > 0)
+        continue;
+      for (int i = c * ch, j = dc * ch, k = 0; k < ch; k++)
+        a[j++] += scanline[i++];
+      cnt[dc]++;
+    }
+  }
+
+  /** true if this is the last source row of its box */
+  boolean isLastRowOfBox(int srcRow) {
+    return srcRow == src.rows - 1 || rowBox[srcRow + 1] != rowBox[srcRow];
+  }
+
+  int getBoxRow(int srcRow) {
+    return rowBox[srcRow];
+  }
+
+  /**
+   * Computes the averages of a destination row and loads them into the line; resets the accumulators
+   */
+  void emitRow(int dstRow, IImageLine line) {
+    int dr = sequential ? 0 : dstRow;
+    long[] a = acc[dr];
+    int[] cnt = count[dr];
+    final int ch = dst.channels;
+    final int bd = dst.bitDepth;
+    if (bd < 8)
+      Arrays.fill(raw, (byte) 0);
+    raw[0] = 0; // filter NONE
+    for (int c = 0, j = 0; c < dst.cols; c++) {
+      int n = cnt[c];
+      for (int k = 0; k < ch; k++, j++) {
+        int v = n == 0 ? 0 : (int) ((a[j] + n / 2) / n);
+        if (bd == 8)
+          raw[j + 1] = (byte) v;
+        else if (bd == 16) {
+          raw[j * 2 + 1] = (byte) (v >> 8);
+          raw[j * 2 + 2] = (byte) v;
+        } else {
+          int bitpos = j * bd;
+          raw[1 + (bitpos >> 3)] |= (byte) (v << (8 - bd - (bitpos & 7)));
+        }
+        a[j] = 0;
+      }
+      cnt[c] = 0;
+    }
+    line.readFromPngRaw(raw, raw.length, 0, 1);
+    line.endReadFromPngRaw();
+  }
+}
@@ -101,6 +101,8 @@ public class ChunkFactory implements IChunkFactory {
       return new PngChunkOFFS(imgInfo);
     if (id.equals(PngChunkSTER.ID))
       return new PngChunkSTER(imgInfo);
+    if (id.equals(PngChunkRIDX.ID))
+      return new PngChunkRIDX(imgInfo);
     return null; // extend!
   }
 
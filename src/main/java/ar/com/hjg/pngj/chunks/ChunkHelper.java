@@ -12,7 +12,9 @@ import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 import ar.com.hjg.pngj.PngHelperInternal;
@@ -51,9 +53,23 @@ public class ChunkHelper {
   public static final byte[] b_IEND = toBytes(IEND);
 
   /*
-   * static auxiliary buffer. any method that uses this should synchronize against this
+   * ids already seen, indexed by a hash of their int code (see idToInt()): the same String instance is returned for each
+   * occurrence of an id, so that it's not allocated for each chunk, its hash is cached, and equals() against the
+   * constants is trivial. Slots are just overwritten on collision
    */
-  private static byte[] tmpbuffer = new byte[4096];
+  private static final String[] idCache = new String[256];
+
+  static {
+    for (String id : new String[] {IHDR, PLTE, IDAT, IEND, cHRM, gAMA, iCCP, sBIT, sRGB, bKGD, hIST, tRNS, pHYs,
+        sPLT, tIME, iTXt, tEXt, zTXt, "acTL", "fcTL", "fdAT", "riDX"})
+      idCache[idCacheSlot(idToInt(id))] = id;
+  }
+
+  /*
+   * per thread (reset and reused) by compressBytes: no lock, threads can inflate/deflate in parallel
+   */
+  private static final ThreadLocal<Inflater> inflater = new ThreadLocal<Inflater>();
+  private static final ThreadLocal<Deflater> deflater = new ThreadLocal<Deflater>();
 
   /**
    * Converts to bytes using Latin1 (ISO-8859-1)
@@ -88,6 +104,33 @@ public class ChunkHelper {
     }
   }
 
+  /**
+   * Chunk id as a 32-bit big endian integer (as it's stored in the PNG)
+   */
+  public static int idToInt(String id) {
+    return ((id.charAt(0) & 0xff) << 24) | ((id.charAt(1) & 0xff) << 16) | ((id.charAt(2) & 0xff) << 8)
+        | (id.charAt(3) & 0xff);
+  }
+
+  /**
+   * Chunk id, from 4 bytes at this offset. Equivalent to <tt>toString(b, offset, 4)</tt>, but an already seen id is
+   * not created again
+   */
+  public static String idFromBytes(byte[] b, int offset) {
+    int code = PngHelperInternal.readInt4fromBytes(b, offset);
+    int slot = idCacheSlot(code);
+    String id = idCache[slot];
+    if (id == null || idToInt(id) != code) {
+      id = toString(b, offset, 4);
+      idCache[slot] = id;
+    }
+    return id;
+  }
+
+  private static int idCacheSlot(int code) {
+    return (code ^ (code >>> 8) ^ (code >>> 19)) & 0xff;
+  }
+
   /**
    * Converts to bytes using UTF-8
    */
@@ -193,11 +236,11 @@ public class ChunkHelper {
   public static byte[] compressBytes(byte[] ori, int offset, int len, boolean compress) {
     try {
       ByteArrayInputStream inb = new ByteArrayInputStream(ori, offset, len);
-      InputStream in = compress ? inb : new InflaterInputStream(inb);
       ByteArrayOutputStream outb = new ByteArrayOutputStream();
-      OutputStream out = compress ? new DeflaterOutputStream(outb) : outb;
+      InputStream in = compress ? inb : new InflaterInputStream(inb, threadInflater());
+      OutputStream out = compress ? new DeflaterOutputStream(outb, threadDeflater()) : outb;
       shovelInToOut(in, out);
-      in.close();
+      in.close(); // this does not end the reused inflater/deflater
       out.close();
       return outb.toByteArray();
     } catch (Exception e) {
@@ -205,15 +248,34 @@ public class ChunkHelper {
     }
   }
 
+  private static Inflater threadInflater() {
+    Inflater inf = inflater.get();
+    if (inf == null) {
+      inf = new Inflater();
+      inflater.set(inf);
+    } else
+      inf.reset();
+    return inf;
+  }
+
+  private static Deflater threadDeflater() {
+    Deflater def = deflater.get();
+    if (def == null) {
+      def = new Deflater();
+      deflater.set(def);
+    } else
+      def.reset();
+    return def;
+  }
+
   /**
    * Shovels all data from an input stream to an output stream.
    */
   private static void shovelInToOut(InputStream in, OutputStream out) throws IOException {
-    synchronized (tmpbuffer) {
-      int len;
-      while ((len = in.read(tmpbuffer)) > 0) {
-        out.write(tmpbuffer, 0, len);
-      }
+    byte[] buf = new byte[4096];
+    int len;
+    while ((len = in.read(buf)) > 0) {
+      out.write(buf, 0, len);
     }
   }
 
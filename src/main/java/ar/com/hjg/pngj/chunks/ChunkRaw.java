@@ -49,7 +49,10 @@ public class ChunkRaw {
   public ChunkRaw(int len, String id, boolean alloc) {
     this.len = len;
     this.id = id;
-    this.idbytes = ChunkHelper.toBytes(id);
+    if (id.length() != 4)
+      throw new PngjException("Bad id chunk: must be 4 letters " + id);
+    this.idbytes = new byte[4];
+    PngHelperInternal.writeInt4tobytes(ChunkHelper.idToInt(id), idbytes, 0);
     for (int i = 0; i < 4; i++) {
       if (idbytes[i] < 65 || idbytes[i] > 122 || (idbytes[i] > 90 && idbytes[i] < 97))
         throw new PngjException("Bad id chunk: must be ascii letters " + id);
@@ -59,7 +62,7 @@ public class ChunkRaw {
   }
 
   public ChunkRaw(int len, byte[] idbytes, boolean alloc) {
-    this(len, ChunkHelper.toString(idbytes), alloc);
+    this(len, ChunkHelper.idFromBytes(idbytes, 0), alloc);
   }
 
   public void allocData() { // TODO: not public
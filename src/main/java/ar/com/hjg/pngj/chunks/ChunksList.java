@@ -1,6 +1,5 @@
 package ar.com.hjg.pngj.chunks;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import ar.com.hjg.pngj.ImageInfo;
@@ -26,9 +25,7 @@ public class ChunksList {
    * 
    * But IDAT is a single pseudo chunk without data
    */
-  List<PngChunk> chunks = new ArrayList<PngChunk>();
-  // protected HashMap<String, List<PngChunk>> chunksById = new HashMap<String, List<PngChunk>>();
-  // // does not include IDAT
+  final IndexedChunks chunks = new IndexedChunks();
 
   final ImageInfo imageInfo; // only required for writing
 
@@ -48,6 +45,8 @@ public class ChunksList {
 
   protected static List<PngChunk> getXById(final List<PngChunk> list, final String id,
       final String innerid) {
+    if (list instanceof IndexedChunks)
+      return ((IndexedChunks) list).getById(id, innerid);
     if (innerid == null)
       return ChunkHelper.filterList(list, new ChunkPredicate() {
         public boolean match(PngChunk c) {
@@ -141,11 +140,7 @@ public class ChunksList {
    * @return Empty if nothing found
    */
   public List<PngChunk> getEquivalent(final PngChunk c2) {
-    return ChunkHelper.filterList(chunks, new ChunkPredicate() {
-      public boolean match(PngChunk c) {
-        return ChunkHelper.equivalent(c, c2);
-      }
-    });
+    return chunks.getEquivalent(c2);
   }
 
   public String toString() {
@@ -3,7 +3,6 @@ package ar.com.hjg.pngj.chunks;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 
 import ar.com.hjg.pngj.ImageInfo;
@@ -15,7 +14,7 @@ public class ChunksListForWrite extends ChunksList {
   /**
    * chunks not yet writen - does not include IHDR, IDAT, END, perhaps yes PLTE
    */
-  private final List<PngChunk> queuedChunks = new ArrayList<PngChunk>();
+  private final IndexedChunks queuedChunks = new IndexedChunks();
 
   // redundant, just for eficciency
   private HashMap<String, Integer> alreadyWrittenKeys = new HashMap<String, Integer>();
@@ -71,11 +70,7 @@ public class ChunksListForWrite extends ChunksList {
    * @return Empty if nothing found
    */
   public List<PngChunk> getQueuedEquivalent(final PngChunk c2) {
-    return ChunkHelper.filterList(queuedChunks, new ChunkPredicate() {
-      public boolean match(PngChunk c) {
-        return ChunkHelper.equivalent(c, c2);
-      }
-    });
+    return queuedChunks.getEquivalent(c2);
   }
 
   /**
@@ -137,11 +132,12 @@ public class ChunksListForWrite extends ChunksList {
 
   public int writeChunks(OutputStream os, int currentGroup) {
     int cont = 0;
-    Iterator<PngChunk> it = queuedChunks.iterator();
-    while (it.hasNext()) {
-      PngChunk c = it.next();
-      if (!shouldWrite(c, currentGroup))
+    List<PngChunk> notWritten = new ArrayList<PngChunk>();
+    for (PngChunk c : queuedChunks) {
+      if (!shouldWrite(c, currentGroup)) {
+        notWritten.add(c);
         continue;
+      }
       if (ChunkHelper.isCritical(c.id) && !c.id.equals(ChunkHelper.PLTE))
         throw new PngjOutputException("bad chunk queued: " + c);
       if (alreadyWrittenKeys.containsKey(c.id) && !c.allowsMultiple())
@@ -151,9 +147,10 @@ public class ChunksListForWrite extends ChunksList {
       alreadyWrittenKeys.put(c.id,
           alreadyWrittenKeys.containsKey(c.id) ? alreadyWrittenKeys.get(c.id) + 1 : 1);
       c.setChunkGroup(currentGroup);
-      it.remove();
       cont++;
     }
+    if (cont > 0)
+      queuedChunks.reset(notWritten); // single pass, instead of removing one by one
     return cont;
   }
 
@@ -0,0 +1,186 @@
+package ar.com.hjg.pngj.chunks;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A list of chunks that keeps indexes by id and by (id, inner id), so that lookups don't need to scan the whole list.
+ * <p>
+ * The inner id (key for text chunks, palette name for sPLT) is taken when the chunk is added: it should not be changed
+ * afterwards. All modifications (including those through iterators) go through {@link #add(int, PngChunk)},
+ * {@link #set(int, PngChunk)} and {@link #remove(int)}, which keep the indexes updated.
+ */
+final class IndexedChunks extends AbstractList<PngChunk> {
+
+  private final ArrayList<PngChunk> list = new ArrayList<PngChunk>();
+  // chunks by id, and by id+innerid, in list order. Null if must be rebuilt
+  private HashMap<String, List<PngChunk>> byId;
+  private HashMap<String, List<PngChunk>> byInnerId;
+  // number of chunks of each id without inner id (for ids that usually have one)
+  private HashMap<String, Integer> withoutInnerId;
+
+  /**
+   * Inner id of text and sPLT chunks (null for other chunks, or if not set)
+   */
+  static String innerId(PngChunk c) {
+    if (c instanceof PngChunkTextVar)
+      return ((PngChunkTextVar) c).getKey();
+    if (c instanceof PngChunkSPLT)
+      return ((PngChunkSPLT) c).getPalName();
+    return null;
+  }
+
+  private static boolean hasInnerId(PngChunk c) {
+    return c instanceof PngChunkTextVar || c instanceof PngChunkSPLT;
+  }
+
+  @Override
+  public PngChunk get(int index) {
+    return list.get(index);
+  }
+
+  @Override
+  public int size() {
+    return list.size();
+  }
+
+  @Override
+  public void add(int index, PngChunk c) {
+    list.add(index, c);
+    modCount++;
+    if (index == list.size() - 1 && byId != null)
+      addToIndex(c);
+    else
+      byId = null; // not appended: order changed
+  }
+
+  @Override
+  public PngChunk set(int index, PngChunk c) {
+    PngChunk old = list.set(index, c);
+    byId = null;
+    return old;
+  }
+
+  @Override
+  public PngChunk remove(int index) {
+    PngChunk c = list.remove(index);
+    modCount++;
+    if (byId != null)
+      removeFromIndex(c);
+    return c;
+  }
+
+  @Override
+  public void clear() {
+    list.clear();
+    modCount++;
+    byId = null;
+  }
+
+  /**
+   * Replaces all the content (in one pass)
+   */
+  void reset(List<PngChunk> chunks) {
+    list.clear();
+    list.addAll(chunks);
+    modCount++;
+    byId = null;
+  }
+
+  /**
+   * Chunks with this id, filtered by inner id if innerid is not null (in this case, chunks that don't have inner id are
+   * included)
+   */
+  List<PngChunk> getById(String id, String innerid) {
+    buildIndex();
+    if (innerid == null || withoutInnerId.containsKey(id))
+      return filterByInnerId(byId.get(id), innerid);
+    List<PngChunk> li = byInnerId.get(id + innerid);
+    return li == null ? new ArrayList<PngChunk>() : new ArrayList<PngChunk>(li);
+  }
+
+  /**
+   * Chunks "equivalent" to this one, see {@link ChunkHelper#equivalent(PngChunk, PngChunk)}
+   */
+  List<PngChunk> getEquivalent(PngChunk c2) {
+    buildIndex();
+    String inner = c2.allowsMultiple() ? innerId(c2) : null;
+    List<PngChunk> candidates = inner != null ? byInnerId.get(c2.id + inner) : byId.get(c2.id);
+    List<PngChunk> res = new ArrayList<PngChunk>();
+    if (candidates != null)
+      for (PngChunk c : candidates)
+        if (ChunkHelper.equivalent(c, c2))
+          res.add(c);
+    return res;
+  }
+
+  private static List<PngChunk> filterByInnerId(List<PngChunk> li, String innerid) {
+    List<PngChunk> res = new ArrayList<PngChunk>();
+    if (li != null)
+      for (PngChunk c : li)
+        if (innerid == null || !hasInnerId(c) || innerid.equals(innerId(c)))
+          res.add(c);
+    return res;
+  }
+
+  private void buildIndex() {
+    if (byId != null)
+      return;
+    byId = new HashMap<String, List<PngChunk>>();
+    byInnerId = new HashMap<String, List<PngChunk>>();
+    withoutInnerId = new HashMap<String, Integer>();
+    for (PngChunk c : list)
+      addToIndex(c);
+  }
+
+  private void addToIndex(PngChunk c) {
+    add(byId, c.id, c);
+    String inner = innerId(c);
+    if (inner != null)
+      add(byInnerId, c.id + inner, c);
+    else {
+      Integer n = withoutInnerId.get(c.id);
+      withoutInnerId.put(c.id, n == null ? 1 : n + 1);
+    }
+  }
+
+  private void removeFromIndex(PngChunk c) {
+    String inner = innerId(c);
+    Integer n = withoutInnerId.get(c.id);
+    boolean ok = remove(byId, c.id, c);
+    if (inner != null)
+      ok = ok && remove(byInnerId, c.id + inner, c);
+    else if (n != null && n > 1)
+      withoutInnerId.put(c.id, n - 1);
+    else
+      ok = ok && withoutInnerId.remove(c.id) != null;
+    if (!ok)
+      byId = null; // inner id was changed after adding: rebuild
+  }
+
+  private static void add(HashMap<String, List<PngChunk>> map, String key, PngChunk c) {
+    List<PngChunk> li = map.get(key);
+    if (li == null) {
+      li = new ArrayList<PngChunk>(1);
+      map.put(key, li);
+    }
+    li.add(c);
+  }
+
+  private static boolean remove(HashMap<String, List<PngChunk>> map, String key, PngChunk c) {
+    List<PngChunk> li = map.get(key);
+    if (li == null)
+      return false;
+    for (int i = li.size() - 1; i >= 0; i--) { // by identity, not equals()
+      if (li.get(i) == c) {
+        li.remove(i);
+        if (li.isEmpty())
+          map.remove(key);
+        return true;
+      }
+    }
+    return false;
+  }
+}
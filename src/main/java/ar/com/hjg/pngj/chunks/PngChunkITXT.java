@@ -37,7 +37,7 @@ public class PngChunkITXT extends PngChunkTextVar {
       ba.write(0); // separator
       ba.write(ChunkHelper.toBytesUTF8(translatedTag));
       ba.write(0); // separator
-      byte[] textbytes = ChunkHelper.toBytesUTF8(val);
+      byte[] textbytes = ChunkHelper.toBytesUTF8(getVal());
       if (compressed) {
         textbytes = ChunkHelper.compressBytes(textbytes, true);
       }
@@ -76,13 +76,16 @@ public class PngChunkITXT extends PngChunkTextVar {
     langTag = ChunkHelper.toString(c.data, i, nullsIdx[1] - i);
     translatedTag =
         ChunkHelper.toStringUTF8(c.data, nullsIdx[1] + 1, nullsIdx[2] - nullsIdx[1] - 1);
-    i = nullsIdx[2] + 1;
-    if (compressed) {
-      byte[] bytes = ChunkHelper.compressBytes(c.data, i, c.data.length - i, false);
-      val = ChunkHelper.toStringUTF8(bytes);
-    } else {
-      val = ChunkHelper.toStringUTF8(c.data, i, c.data.length - i);
-    }
+    val = null;
+    valOffset = nullsIdx[2] + 1; // decoded (and uncompressed) lazily
+  }
+
+  @Override
+  protected String decodeVal(byte[] data, int offset) {
+    if (compressed)
+      return ChunkHelper.toStringUTF8(ChunkHelper.compressBytes(data, offset, data.length - offset, false));
+    else
+      return ChunkHelper.toStringUTF8(data, offset, data.length - offset);
   }
 
   public boolean isCompressed() {
@@ -90,6 +93,7 @@ public class PngChunkITXT extends PngChunkTextVar {
   }
 
   public void setCompressed(boolean compressed) {
+    getVal();
     this.compressed = compressed;
   }
 
@@ -0,0 +1,113 @@
+package ar.com.hjg.pngj.chunks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.PngHelperInternal;
+import ar.com.hjg.pngj.PngjException;
+
+/**
+ * riDX chunk: row index of restart points. Private PNGJ chunk, not standard.
+ * <p>
+ * A restart point is a row where the deflated stream was fully flushed (so that it can be inflated from there without
+ * the previous data) and a new IDAT chunk begins. Written after the IDAT chunks, see
+ * {@link ar.com.hjg.pngj.pixels.PixelsWriter#setRestartInterval(int)}
+ * <p>
+ * Contents: a sequence of entries, each one of 13 bytes: row (4 bytes), offset (8 bytes) of the IDAT chunk (measured
+ * from the start of the first IDAT chunk), and a flag (1 byte, bit 0: the row filter does not use the previous row)
+ * <p>
+ * It's unsafe to copy: it depends on the IDAT chunks.
+ */
+public class PngChunkRIDX extends PngChunkSingle {
+  public final static String ID = "riDX";
+
+  private static final int ENTRY_LEN = 13;
+
+  private List<Entry> entries = new ArrayList<Entry>();
+
+  public PngChunkRIDX(ImageInfo info) {
+    super(ID, info);
+  }
+
+  @Override
+  public ChunkOrderingConstraint getOrderingConstraint() {
+    return ChunkOrderingConstraint.AFTER_IDAT;
+  }
+
+  @Override
+  public ChunkRaw createRawChunk() {
+    ChunkRaw c = createEmptyChunk(entries.size() * ENTRY_LEN, true);
+    int off = 0;
+    for (Entry e : entries) {
+      PngHelperInternal.writeInt4tobytes(e.row, c.data, off);
+      PngHelperInternal.writeInt4tobytes((int) (e.offset >>> 32), c.data, off + 4);
+      PngHelperInternal.writeInt4tobytes((int) e.offset, c.data, off + 8);
+      c.data[off + 12] = (byte) (e.filterReset ? 1 : 0);
+      off += ENTRY_LEN;
+    }
+    return c;
+  }
+
+  @Override
+  public void parseFromRaw(ChunkRaw chunk) {
+    if (chunk.len % ENTRY_LEN != 0)
+      throw new PngjException("bad chunk length " + chunk);
+    entries = new ArrayList<Entry>();
+    for (int off = 0; off < chunk.len; off += ENTRY_LEN) {
+      int row = PngHelperInternal.readInt4fromBytes(chunk.data, off);
+      long offset =
+          ((long) PngHelperInternal.readInt4fromBytes(chunk.data, off + 4) << 32)
+              | ((long) PngHelperInternal.readInt4fromBytes(chunk.data, off + 8) << 32 >>> 32);
+      entries.add(new Entry(row, offset, (chunk.data[off + 12] & 1) != 0));
+    }
+  }
+
+  /** Entries, in increasing row order */
+  public List<Entry> getEntries() {
+    return Collections.unmodifiableList(entries);
+  }
+
+  public void setEntries(List<Entry> entries) {
+    this.entries = new ArrayList<Entry>(entries);
+  }
+
+  /**
+   * Last restart point with row &lt;= the given row, and that does not need the previous row (filterReset); null if
+   * none
+   */
+  public Entry getEntryForRow(int row) {
+    Entry found = null;
+    for (Entry e : entries) {
+      if (e.row > row)
+        break;
+      if (e.filterReset)
+        found = e;
+    }
+    return found;
+  }
+
+  /**
+   * A restart point
+   */
+  public static class Entry {
+    /** first row after the restart point */
+    public final int row;
+    /** offset of the IDAT chunk that starts at the restart point, measured from the start of the first IDAT chunk */
+    public final long offset;
+    /** true if the filter of the row does not use the previous row (NONE or SUB) */
+    public final boolean filterReset;
+
+    public Entry(int row, long offset, boolean filterReset) {
+      this.row = row;
+      this.offset = offset;
+      this.filterReset = filterReset;
+    }
+
+    @Override
+    public String toString() {
+      return "row=" + row + " offset=" + offset + (filterReset ? "" : " (no filter reset)");
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package ar.com.hjg.pngj.chunks;
 
 import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.PngjExceptionInternal;
 
 /**
  * Superclass (abstract) for three textual chunks (TEXT, ITXT, ZTXT)
@@ -8,6 +9,11 @@ import ar.com.hjg.pngj.ImageInfo;
 public abstract class PngChunkTextVar extends PngChunkMultiple {
   protected String key; // key/val: only for tEXt. lazy computed
   protected String val;
+  /**
+   * If non negative, the value has not been decoded yet: it's in the raw data, starting at this offset (see
+   * {@link #decodeVal(byte[], int)})
+   */
+  protected int valOffset = -1;
 
   // http://www.w3.org/TR/PNG/#11keywords
   public final static String KEY_Title = "Title"; // Short (one line) title or caption for image
@@ -49,12 +55,31 @@ public abstract class PngChunkTextVar extends PngChunkMultiple {
   }
 
   public String getVal() {
+    if (valOffset >= 0) {
+      val = decodeVal(raw.data, valOffset);
+      valOffset = -1;
+    }
     return val;
   }
 
   public void setKeyVal(String key, String val) {
     this.key = key;
     this.val = val;
+    valOffset = -1;
+  }
+
+  /**
+   * Decodes the value from the raw chunk data, on first access. Only called for chunks that set {@link #valOffset} on
+   * parsing (so that, eg, a zTXt value is not decompressed if nobody asks for it)
+   */
+  protected String decodeVal(byte[] data, int offset) {
+    throw new PngjExceptionInternal("lazy value not supported for " + id);
+  }
+
+  @Override
+  public void invalidateRawData() {
+    getVal();
+    super.invalidateRawData();
   }
 
 }
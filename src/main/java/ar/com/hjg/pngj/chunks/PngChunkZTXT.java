@@ -28,7 +28,7 @@ public class PngChunkZTXT extends PngChunkTextVar {
       ba.write(ChunkHelper.toBytes(key));
       ba.write(0); // separator
       ba.write(0); // compression method: 0
-      byte[] textbytes = ChunkHelper.compressBytes(ChunkHelper.toBytes(val), true);
+      byte[] textbytes = ChunkHelper.compressBytes(ChunkHelper.toBytes(getVal()), true);
       ba.write(textbytes);
       byte[] b = ba.toByteArray();
       ChunkRaw chunk = createEmptyChunk(b.length, false);
@@ -54,9 +54,13 @@ public class PngChunkZTXT extends PngChunkTextVar {
     int compmet = (int) c.data[nullsep + 1];
     if (compmet != 0)
       throw new PngjException("bad zTXt chunk: unknown compression method");
-    byte[] uncomp =
-        ChunkHelper.compressBytes(c.data, nullsep + 2, c.data.length - nullsep - 2, false); // uncompress
-    val = ChunkHelper.toString(uncomp);
+    val = null;
+    valOffset = nullsep + 2; // uncompressed lazily
+  }
+
+  @Override
+  protected String decodeVal(byte[] data, int offset) {
+    return ChunkHelper.toString(ChunkHelper.compressBytes(data, offset, data.length - offset, false));
   }
 
 }
@@ -38,11 +38,8 @@ public class PngMetadata {
     if (readonly)
       throw new PngjException("cannot set chunk : readonly metadata");
     if (lazyOverwrite) {
-      ChunkHelper.trimList(cl.getQueuedChunks(), new ChunkPredicate() {
-        public boolean match(PngChunk c2) {
-          return ChunkHelper.equivalent(c, c2);
-        }
-      });
+      for (PngChunk other : cl.getQueuedEquivalent(c))
+        cl.removeChunk(other);
     }
     cl.queue(c);
   }
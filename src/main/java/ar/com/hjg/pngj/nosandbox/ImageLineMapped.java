@@ -0,0 +1,118 @@
+package ar.com.hjg.pngj.nosandbox;
+
+import java.nio.ByteBuffer;
+
+import ar.com.hjg.pngj.FilterType;
+import ar.com.hjg.pngj.IImageLine;
+import ar.com.hjg.pngj.IImageLineArray;
+import ar.com.hjg.pngj.ImageInfo;
+
+/**
+ * A view of an image line stored in a {@link ByteBuffer}, see {@link ImageLineSetMapped}.
+ * <p>
+ * The layout is the raw PNG row without the filter byte, as in {@link ar.com.hjg.pngj.ImageLinePacked}: packed
+ * samples for bitdepth 1/2/4, one byte per sample for 8 bits, two bytes (big endian) for 16 bits.
+ */
+public class ImageLineMapped implements IImageLine, IImageLineArray {
+  public final ImageInfo imgInfo;
+
+  private final ByteBuffer buf;
+  private final int pos; // start of the row in buf
+  private final int size;
+  protected FilterType filterType = FilterType.FILTER_UNKNOWN;
+
+  public ImageLineMapped(ImageInfo imgInfo, ByteBuffer buf, int pos) {
+    this.imgInfo = imgInfo;
+    this.buf = buf.duplicate(); // own position
+    this.pos = pos;
+    size = imgInfo.samplesPerRow;
+  }
+
+  public void readFromPngRaw(byte[] raw, int len, int offset, int step) {
+    filterType = FilterType.getByVal(raw[0]);
+    if (step == 1 && offset == 0) {
+      buf.position(pos);
+      buf.put(raw, 1, len - 1);
+    } else if (imgInfo.bitDepth >= 8) {
+      final int bpp = imgInfo.bytesPixel;
+      for (int s = 1, i = pos + offset * bpp; s < len; s += bpp, i += step * bpp) {
+        buf.position(i);
+        buf.put(raw, s, bpp);
+      }
+    } else { // packed: only one channel
+      final int bd = imgInfo.bitDepth, mask = (1 << bd) - 1;
+      for (int k = 0, c = offset; c < imgInfo.cols; k++, c += step) {
+        int bitpos = k * bd;
+        setElem(c, (raw[1 + (bitpos >> 3)] >> (8 - bd - (bitpos & 7))) & mask);
+      }
+    }
+  }
+
+  public void writeToPngRaw(byte[] raw) {
+    raw[0] = (byte) filterType.val;
+    buf.position(pos);
+    buf.get(raw, 1, imgInfo.bytesPerRow);
+  }
+
+  public void endReadFromPngRaw() {}
+
+  public int getSize() {
+    return size;
+  }
+
+  public int getElem(int i) {
+    switch (imgInfo.bitDepth) {
+      case 8:
+        return buf.get(pos + i) & 0xFF;
+      case 16:
+        return ((buf.get(pos + (i << 1)) & 0xFF) << 8) | (buf.get(pos + (i << 1) + 1) & 0xFF);
+      default:
+        int bd = imgInfo.bitDepth;
+        int bitpos = i * bd;
+        return (buf.get(pos + (bitpos >> 3)) >> (8 - bd - (bitpos & 7))) & ((1 << bd) - 1);
+    }
+  }
+
+  public void setElem(int i, int v) {
+    switch (imgInfo.bitDepth) {
+      case 8:
+        buf.put(pos + i, (byte) v);
+        break;
+      case 16:
+        buf.put(pos + (i << 1), (byte) (v >> 8));
+        buf.put(pos + (i << 1) + 1, (byte) v);
+        break;
+      default:
+        int bd = imgInfo.bitDepth;
+        int bitpos = i * bd;
+        int shift = 8 - bd - (bitpos & 7);
+        int mask = ((1 << bd) - 1) << shift;
+        int p = pos + (bitpos >> 3);
+        buf.put(p, (byte) ((buf.get(p) & ~mask) | ((v << shift) & mask)));
+    }
+  }
+
+  /**
+   * Copies the raw row (without filter byte) into <tt>dst</tt>, {@link ImageInfo#bytesPerRow} bytes
+   */
+  public void getRaw(byte[] dst, int offset) {
+    buf.position(pos);
+    buf.get(dst, offset, imgInfo.bytesPerRow);
+  }
+
+  public FilterType getFilterType() {
+    return filterType;
+  }
+
+  public void setFilterType(FilterType ft) {
+    filterType = ft;
+  }
+
+  public ImageInfo getImageInfo() {
+    return imgInfo;
+  }
+
+  public String toString() {
+    return " cols=" + imgInfo.cols + " bpc=" + imgInfo.bitDepth + " pos=" + pos;
+  }
+}
@@ -0,0 +1,175 @@
+package ar.com.hjg.pngj.nosandbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import ar.com.hjg.pngj.IImageLineSet;
+import ar.com.hjg.pngj.IImageLineSetFactory;
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.PngjException;
+
+/**
+ * A {@link IImageLineSet} that stores the rows outside the Java heap: in direct buffers, or in a memory mapped
+ * temporary file, so that the size of the image is bounded only by the address space or the disk.
+ * <p>
+ * The rows are kept in the raw PNG layout (see {@link ImageLineMapped}), in segments of several rows, that are
+ * allocated (mapped) as they are needed. No line object is kept: {@link #getImageLine(int)} returns a new lightweight
+ * view each time.
+ * <p>
+ * Use {@link #getFactory(File)} or {@link #getFactoryDirect()} with {@link ar.com.hjg.pngj.PngReader#setLineSetFactory}
+ * to have {@link ar.com.hjg.pngj.PngReader#readRows()} load the image here; then it can be written with
+ * {@link ar.com.hjg.pngj.PngWriter#writeRows(IImageLineSet)}. Call {@link #close()} when done.
+ */
+public class ImageLineSetMapped implements IImageLineSet<ImageLineMapped> {
+
+  /** default maximum size of each segment */
+  public static final int SEGMENT_SIZE_DEFAULT = 1 << 28;
+
+  protected final ImageInfo imgInfo;
+  private final boolean singleCursor;
+  private final int nlines, offset, step;
+  private final int rowBytes;
+  private final int rowsPerSegment;
+  private final List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+  private final File tmpDir; // null: direct buffers
+  private File file; // backing file, if mapped
+  private RandomAccessFile raf;
+  private int currentRow = -1;
+
+  /**
+   * @param tmpDir Directory for the temporary backing file; if null, direct ByteBuffers are used
+   * @param segmentSize Maximum bytes per segment; it's adjusted to hold an integral number of rows
+   */
+  public ImageLineSetMapped(ImageInfo imgInfo, boolean singleCursor, int nlines, int offset, int step, File tmpDir,
+      int segmentSize) {
+    this.imgInfo = imgInfo;
+    this.singleCursor = singleCursor;
+    this.nlines = singleCursor ? 1 : nlines;
+    this.offset = singleCursor ? 0 : offset;
+    this.step = singleCursor ? 1 : step;
+    this.tmpDir = tmpDir;
+    rowBytes = imgInfo.bytesPerRow;
+    rowsPerSegment = Math.max(1, Math.min(this.nlines, segmentSize / rowBytes));
+    if ((long) rowsPerSegment * rowBytes > Integer.MAX_VALUE)
+      throw new PngjException("row too big for a segment: " + rowBytes);
+  }
+
+  /**
+   * Factory for sets backed by a temporary file in <tt>tmpDir</tt> (null: default temporary dir)
+   */
+  public static IImageLineSetFactory<ImageLineMapped> getFactory(final File tmpDir) {
+    return new IImageLineSetFactory<ImageLineMapped>() {
+      public IImageLineSet<ImageLineMapped> create(ImageInfo iminfo, boolean singleCursor, int nlines, int noffset,
+          int step) {
+        return new ImageLineSetMapped(iminfo, singleCursor, nlines, noffset, step,
+            tmpDir != null ? tmpDir : new File(System.getProperty("java.io.tmpdir")), SEGMENT_SIZE_DEFAULT);
+      }
+    };
+  }
+
+  /**
+   * Factory for sets backed by direct buffers (off heap, but in memory)
+   */
+  public static IImageLineSetFactory<ImageLineMapped> getFactoryDirect() {
+    return new IImageLineSetFactory<ImageLineMapped>() {
+      public IImageLineSet<ImageLineMapped> create(ImageInfo iminfo, boolean singleCursor, int nlines, int noffset,
+          int step) {
+        return new ImageLineSetMapped(iminfo, singleCursor, nlines, noffset, step, null, SEGMENT_SIZE_DEFAULT);
+      }
+    };
+  }
+
+  /**
+   * A view of the image line (row number in the original image). The view is only valid while this set is open.
+   */
+  public ImageLineMapped getImageLine(int n) {
+    currentRow = n;
+    int r = singleCursor ? 0 : imageRowToMatrixRowStrict(n);
+    if (r < 0)
+      throw new PngjException("Invalid row number");
+    return getImageLineRawNum(r);
+  }
+
+  public ImageLineMapped getImageLineRawNum(int r) {
+    if (r < 0 || r >= nlines)
+      throw new PngjException("Invalid row number");
+    ByteBuffer seg = getSegment(r / rowsPerSegment);
+    return new ImageLineMapped(imgInfo, seg, (r % rowsPerSegment) * rowBytes);
+  }
+
+  public boolean hasImageLine(int n) {
+    return singleCursor ? currentRow == n : imageRowToMatrixRowStrict(n) >= 0;
+  }
+
+  public int size() {
+    return nlines;
+  }
+
+  /**
+   * Same as {@link ar.com.hjg.pngj.ImageLineSetDefault#imageRowToMatrixRowStrict(int)}
+   */
+  public int imageRowToMatrixRowStrict(int imrow) {
+    imrow -= offset;
+    int mrow = imrow >= 0 && (step == 1 || imrow % step == 0) ? imrow / step : -1;
+    return mrow < nlines ? mrow : -1;
+  }
+
+  private ByteBuffer getSegment(int s) {
+    while (segments.size() <= s)
+      segments.add(null);
+    ByteBuffer seg = segments.get(s);
+    if (seg == null) {
+      int rows = Math.min(rowsPerSegment, nlines - s * rowsPerSegment);
+      int len = rows * rowBytes;
+      try {
+        if (tmpDir == null) {
+          seg = ByteBuffer.allocateDirect(len);
+        } else {
+          if (raf == null) {
+            file = File.createTempFile("pngjlines", ".raw", tmpDir);
+            file.deleteOnExit();
+            raf = new RandomAccessFile(file, "rw");
+          }
+          long pos = (long) s * rowsPerSegment * rowBytes;
+          seg = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, pos, len);
+        }
+      } catch (IOException e) {
+        throw new PngjException("could not allocate segment " + s, e);
+      }
+      segments.set(s, seg);
+    }
+    return seg;
+  }
+
+  /**
+   * Number of segments allocated so far
+   */
+  public int getSegmentsAllocated() {
+    int n = 0;
+    for (ByteBuffer b : segments)
+      if (b != null)
+        n++;
+    return n;
+  }
+
+  /**
+   * Releases the segments and deletes the backing file (if possible: on some platforms the mapping is only released
+   * when the buffers are garbage collected, the file is then deleted at exit). The lines views become invalid.
+   */
+  public void close() {
+    segments.clear();
+    if (raf != null) {
+      try {
+        raf.close();
+      } catch (IOException e) {
+      }
+      raf = null;
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package ar.com.hjg.pngj.nosandbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import ar.com.hjg.pngj.BufferedStreamFeeder;
+import ar.com.hjg.pngj.PngjInputException;
+
+/**
+ * A {@link BufferedStreamFeeder} that reads a file through memory mapped windows (the whole file, if it fits in one
+ * window), instead of read() calls.
+ * <p>
+ * Skipped bytes (eg, the IDAT chunks when only the metadata is read) are jumped over by moving the position, or by
+ * mapping the window that starts after them; they are never read.
+ * <p>
+ * The windows are released when garbage collected (there is no explicit unmapping in Java), the file is closed on
+ * {@link #close()}.
+ */
+public class MappedFileFeeder extends BufferedStreamFeeder {
+
+  /** default (maximum) size of each mapped window */
+  public static final int WINDOW_SIZE_DEFAULT = 1 << 26;
+
+  private final int windowSize;
+  private RandomAccessFile raf;
+  private FileChannel fc;
+  private final long size;
+  private long windowEnd; // file offset of the end of the current window
+
+  public MappedFileFeeder(File file) {
+    this(file, WINDOW_SIZE_DEFAULT);
+  }
+
+  /**
+   * @param windowSize Maximum bytes mapped at a time
+   */
+  public MappedFileFeeder(File file, int windowSize) {
+    this(open(file), windowSize);
+  }
+
+  private MappedFileFeeder(RandomAccessFile raf, int windowSize) {
+    super(ByteBuffer.allocateDirect(0));
+    this.raf = raf;
+    this.windowSize = windowSize < 1 ? WINDOW_SIZE_DEFAULT : windowSize;
+    fc = raf.getChannel();
+    try {
+      size = fc.size();
+    } catch (IOException e) {
+      close();
+      throw new PngjInputException(e);
+    }
+  }
+
+  private static RandomAccessFile open(File file) {
+    try {
+      return new RandomAccessFile(file, "r");
+    } catch (IOException e) {
+      throw new PngjInputException("Could not open " + file, e);
+    }
+  }
+
+  @Override
+  protected ByteBuffer nextSource(long skip) {
+    long start = windowEnd + skip;
+    if (fc == null || start >= size)
+      return null;
+    windowEnd = Math.min(size, start + windowSize);
+    try {
+      return fc.map(FileChannel.MapMode.READ_ONLY, start, windowEnd - start);
+    } catch (IOException e) {
+      throw new PngjInputException(e);
+    }
+  }
+
+  /** Size of the file */
+  public long getSize() {
+    return size;
+  }
+
+  @Override
+  public void close() {
+    super.close();
+    if (raf != null) {
+      try {
+        raf.close();
+      } catch (Exception e) {
+      }
+    }
+    raf = null;
+    fc = null;
+  }
+}
@@ -0,0 +1,217 @@
+package ar.com.hjg.pngj.nosandbox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ar.com.hjg.pngj.ChunkCatalog;
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.PngHelperInternal;
+import ar.com.hjg.pngj.PngReader;
+import ar.com.hjg.pngj.PngjException;
+import ar.com.hjg.pngj.PngjInputException;
+import ar.com.hjg.pngj.PngjOutputException;
+import ar.com.hjg.pngj.chunks.ChunkHelper;
+import ar.com.hjg.pngj.chunks.PngChunk;
+import ar.com.hjg.pngj.chunks.PngChunkIDAT;
+import ar.com.hjg.pngj.chunks.PngChunkIEND;
+import ar.com.hjg.pngj.chunks.PngChunkIHDR;
+
+/**
+ * Edits the ancillary chunks of a PNG file (remove, add, replace) without decoding it: the result is written by
+ * copying the untouched byte ranges of the source file (IDAT included) with {@link FileChannel#transferTo}, and writing
+ * only the new chunks.
+ * <p>
+ * The layout of the source is taken from a {@link ChunkCatalog} (built here if not given). The CRCs of the copied
+ * chunks are not checked.
+ * <p>
+ * Added chunks are placed according to their ordering constraint: right after IHDR if they must go before PLTE; before
+ * the first IDAT if they must go before IDAT (or if they have priority); otherwise, before IEND.
+ */
+public class PngChunkEditor {
+
+  private final File file;
+  private final ChunkCatalog catalog;
+  private final Set<ChunkCatalog.Entry> removed = new HashSet<ChunkCatalog.Entry>();
+  private final List<PngChunk> addedAfterIhdr = new ArrayList<PngChunk>();
+  private final List<PngChunk> addedBeforeIdat = new ArrayList<PngChunk>();
+  private final List<PngChunk> addedBeforeIend = new ArrayList<PngChunk>();
+  private ImageInfo imgInfo;
+
+  public PngChunkEditor(File file) {
+    this(file, ChunkCatalog.build(file));
+  }
+
+  /**
+   * @param catalog Catalog of this file (eg, stored beforehand)
+   */
+  public PngChunkEditor(File file, ChunkCatalog catalog) {
+    this.file = file;
+    this.catalog = catalog;
+    if (catalog.getFileSize() != file.length())
+      throw new PngjInputException("chunk catalog does not match the file " + file);
+    if (catalog.getFirst(PngChunkIDAT.ID) == null || catalog.getFirst(PngChunkIEND.ID) == null)
+      throw new PngjInputException("no IDAT or IEND chunk " + file);
+  }
+
+  /**
+   * Image info of the source (needed to create new chunks)
+   */
+  public ImageInfo getImageInfo() {
+    if (imgInfo == null) {
+      PngReader pngr = new PngReader(file);
+      imgInfo = pngr.imgInfo;
+      pngr.close();
+    }
+    return imgInfo;
+  }
+
+  /** Chunks of the source file */
+  public List<ChunkCatalog.Entry> getEntries() {
+    return catalog.getEntries();
+  }
+
+  /**
+   * Removes a chunk of the source; it must be ancillary
+   */
+  public void remove(ChunkCatalog.Entry e) {
+    if (ChunkHelper.isCritical(e.id))
+      throw new PngjException("cannot remove critical chunk " + e);
+    removed.add(e);
+  }
+
+  /**
+   * Removes the chunks of the source with this id
+   *
+   * @return number of chunks removed
+   */
+  public int remove(String id) {
+    int n = 0;
+    for (ChunkCatalog.Entry e : catalog.getById(id)) {
+      remove(e);
+      n++;
+    }
+    return n;
+  }
+
+  /**
+   * Adds a new ancillary chunk
+   */
+  public void add(PngChunk chunk) {
+    if (ChunkHelper.isCritical(chunk.id))
+      throw new PngjException("cannot add critical chunk " + chunk.id);
+    PngChunk.ChunkOrderingConstraint oc = chunk.getOrderingConstraint();
+    if (oc.mustGoBeforePLTE())
+      addedAfterIhdr.add(chunk);
+    else if (oc.mustGoBeforeIDAT() || oc.mustGoAfterPLTE() || (!oc.mustGoAfterIDAT() && chunk.hasPriority()))
+      addedBeforeIdat.add(chunk);
+    else
+      addedBeforeIend.add(chunk);
+  }
+
+  /**
+   * Removes the chunks of the source with the same id, and adds this one
+   */
+  public void replace(PngChunk chunk) {
+    remove(chunk.id);
+    add(chunk);
+  }
+
+  /**
+   * Writes the result. The destination can be the source file itself (then a temporary file is written and renamed)
+   */
+  public void write(File dest) {
+    boolean inplace = dest.getAbsoluteFile().equals(file.getAbsoluteFile());
+    File out = inplace ? new File(dest.getAbsolutePath() + ".tmp_pngj") : dest;
+    RandomAccessFile raf = null;
+    FileOutputStream fos = null;
+    boolean written = false;
+    try {
+      raf = new RandomAccessFile(file, "r");
+      fos = new FileOutputStream(out);
+      write(raf.getChannel(), fos.getChannel());
+      written = true;
+    } catch (IOException e) {
+      throw new PngjOutputException(e);
+    } finally {
+      close(raf);
+      close(fos);
+      if (!written)
+        out.delete(); // incomplete
+    }
+    if (inplace && !out.renameTo(dest)) { // some platforms don't rename over an existing file
+      if (!dest.delete()) {
+        out.delete();
+        throw new PngjOutputException("could not replace " + dest);
+      }
+      if (!out.renameTo(dest)) // the original is gone: keep the result
+        throw new PngjOutputException("could not rename " + out + " to " + dest);
+    }
+  }
+
+  private void write(FileChannel in, FileChannel out) throws IOException {
+    long start = 0, end = PngHelperInternal.getPngIdSignature().length; // pending range of the source
+    boolean idatSeen = false;
+    for (ChunkCatalog.Entry e : catalog.getEntries()) {
+      List<PngChunk> before = null;
+      if (e.id.equals(PngChunkIDAT.ID) && !idatSeen) {
+        before = addedBeforeIdat;
+        idatSeen = true;
+      } else if (e.id.equals(PngChunkIEND.ID))
+        before = addedBeforeIend;
+      if (before != null && !before.isEmpty()) {
+        transfer(in, start, end, out);
+        start = end = e.offset;
+        writeChunks(before, out);
+      }
+      long chunkEnd = e.offset + (e.len + 12L);
+      if (removed.contains(e)) {
+        transfer(in, start, end, out);
+        start = chunkEnd;
+      }
+      end = chunkEnd;
+      if (e.id.equals(PngChunkIHDR.ID) && !addedAfterIhdr.isEmpty()) {
+        transfer(in, start, end, out);
+        start = end;
+        writeChunks(addedAfterIhdr, out);
+      }
+    }
+    transfer(in, start, end, out);
+  }
+
+  private static void transfer(FileChannel in, long start, long end, FileChannel out) throws IOException {
+    while (start < end) {
+      long n = in.transferTo(start, end - start, out);
+      if (n <= 0)
+        throw new PngjInputException("premature ending of source at " + start);
+      start += n;
+    }
+  }
+
+  private static void writeChunks(List<PngChunk> chunks, FileChannel out) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    for (PngChunk c : chunks)
+      c.createRawChunk().writeChunk(bos);
+    ByteBuffer bb = ByteBuffer.wrap(bos.toByteArray());
+    while (bb.hasRemaining())
+      out.write(bb);
+  }
+
+  private static void close(Closeable c) {
+    if (c != null) {
+      try {
+        c.close();
+      } catch (IOException e) {
+      }
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package ar.com.hjg.pngj.nosandbox;
+
+import java.io.File;
+
+import ar.com.hjg.pngj.PngReader;
+
+/**
+ * A {@link PngReader} that reads the file with a {@link MappedFileFeeder}, instead of a stream.
+ * <p>
+ * Fewer system calls for large files, and reading only the metadata (see {@link #readSkippingAllRows()}) does not touch
+ * the pixels data.
+ */
+public class PngReaderMapped extends PngReader {
+
+  public PngReaderMapped(File file) {
+    this(file, MappedFileFeeder.WINDOW_SIZE_DEFAULT);
+  }
+
+  /**
+   * @param windowSize Maximum bytes mapped at a time
+   */
+  public PngReaderMapped(File file, int windowSize) {
+    super(new MappedFileFeeder(file, windowSize));
+  }
+}
@@ -1,8 +1,12 @@
 package ar.com.hjg.pngj.pixels;
 
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import ar.com.hjg.pngj.IDatChunkWriter;
+import ar.com.hjg.pngj.PngjUnsupportedException;
+import ar.com.hjg.pngj.chunks.PngChunkRIDX;
 
 /**
  * This is an OutputStream that compresses (via Deflater or a deflater-like object), and optionally passes the
@@ -37,6 +41,9 @@ public abstract class CompressorStream extends OutputStream {
   private byte[] firstBytes;
   protected boolean storeFirstByte = false;
 
+  /** restart points made by {@link #fullFlush(int, boolean)} */
+  private final List<PngChunkRIDX.Entry> restartEntries = new ArrayList<PngChunkRIDX.Entry>();
+
   /**
    * 
    * @param idatCw Can be null (if we are only interested in compute compression ratio)
@@ -143,8 +150,35 @@ public abstract class CompressorStream extends OutputStream {
       firstBytes = null;
   }
 
+  /**
+   * Makes a restart point: flushes the compressor so that the data that follows can be decompressed without the
+   * previous data, and starts a new IDAT chunk. The point is recorded, see {@link #getRestartEntries()}
+   * <p>
+   * Not supported by default.
+   * 
+   * @param row Next row to be written
+   * @param filterReset If the filter of the next row does not depend on the previous row
+   */
+  public void fullFlush(int row, boolean filterReset) {
+    throw new PngjUnsupportedException("full flush not supported by " + getClass().getSimpleName());
+  }
+
+  /**
+   * To be called by implementations of {@link #fullFlush(int, boolean)}, after flushing the idatChunkWriter
+   */
+  protected void addRestartEntry(int row, boolean filterReset) {
+    long offset = idatChunkWriter != null ? idatChunkWriter.getTotalBytesWriten() : bytesOut;
+    restartEntries.add(new PngChunkRIDX.Entry(row, offset, filterReset));
+  }
+
+  /** Restart points, see {@link #fullFlush(int, boolean)}. This should be called only when done */
+  public List<PngChunkRIDX.Entry> getRestartEntries() {
+    return restartEntries;
+  }
+
   public void reset() {
     done();
+    restartEntries.clear();
     bytesIn = 0;
     bytesOut = 0;
     block = -1;
@@ -0,0 +1,202 @@
+package ar.com.hjg.pngj.pixels;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import ar.com.hjg.pngj.PngjOutputException;
+import ar.com.hjg.pngj.PngjUnsupportedException;
+import ar.com.hjg.pngj.chunks.PngChunkRIDX;
+
+/**
+ * CompressorStream that delegates the real work (compression and output) to another CompressorStream, which runs in a
+ * background thread.
+ * <p>
+ * The written rows are copied to a bounded queue of pooled buffers, so that the caller (typically
+ * {@link ar.com.hjg.pngj.PngWriter#writeRow(ar.com.hjg.pngj.IImageLine)}) only blocks if the background thread falls
+ * behind by more than the queue size.
+ * <p>
+ * An error in the background thread is rethrown in the next write, or in {@link #done()} (which waits for the
+ * background thread to terminate, hence it acts as a barrier). Rows written after an error are discarded.
+ */
+public class CompressorStreamAsync extends CompressorStream {
+
+  private static final byte[] END = new byte[0]; // marker: no more rows
+  private static final byte[] FLUSH = new byte[0]; // marker: full flush, with the arguments queued in flushes
+
+  private final CompressorStream cs; // this does the real work, in the background thread
+  private final ArrayBlockingQueue<byte[]> free; // pool of buffers
+  private final ArrayBlockingQueue<byte[]> queue; // rows to be written
+  private final ConcurrentLinkedQueue<int[]> flushes = new ConcurrentLinkedQueue<int[]>(); // row, filterReset
+
+  private Thread thread;
+  private volatile Throwable failure;
+
+  /**
+   * @param cs The real compressor stream, it will be closed on close
+   * @param queueRows Maximum number of rows queued
+   */
+  public CompressorStreamAsync(CompressorStream cs, int queueRows) {
+    super(null, cs.blockLen, -1); // the stream is ended on done(), not on total bytes
+    if (queueRows < 1)
+      throw new PngjOutputException("bad queue size " + queueRows);
+    this.cs = cs;
+    free = new ArrayBlockingQueue<byte[]>(queueRows);
+    queue = new ArrayBlockingQueue<byte[]>(queueRows + 1);
+  }
+
+  @Override
+  public void mywrite(byte[] data, int off, int len) {
+    if (done || closed)
+      throw new PngjOutputException("write beyond end of stream");
+    checkFailure();
+    if (thread == null)
+      start();
+    try {
+      byte[] b = len == blockLen ? free.poll() : null;
+      if (b == null) // the number of buffers is bounded anyway by the queue size
+        b = new byte[len];
+      System.arraycopy(data, off, b, 0, len);
+      queue.put(b);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PngjOutputException("interrupted", e);
+    }
+    bytesIn += len;
+  }
+
+  private void start() {
+    thread = new Thread(new Runnable() {
+      public void run() {
+        consume();
+      }
+    }, "pngj-compressor");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /* runs in the background thread; after a failure it keeps draining the queue, so that the producer never blocks */
+  private void consume() {
+    try {
+      while (true) {
+        byte[] b = queue.take();
+        if (b == END)
+          break;
+        if (failure == null) {
+          try {
+            if (b == FLUSH) {
+              int[] f = flushes.poll();
+              cs.fullFlush(f[0], f[1] != 0);
+            } else
+              cs.write(b, 0, b.length);
+          } catch (Throwable e) {
+            failure = e;
+          }
+        }
+        if (b.length == blockLen)
+          free.offer(b);
+      }
+      if (failure == null)
+        cs.done();
+    } catch (InterruptedException e) {
+      // aborted
+    } catch (Throwable e) {
+      failure = e;
+    }
+  }
+
+  @Override
+  public void fullFlush(int row, boolean filterReset) {
+    if (done || closed)
+      throw new PngjOutputException("flush beyond end of stream");
+    checkFailure();
+    if (thread == null)
+      start();
+    flushes.add(new int[] {row, filterReset ? 1 : 0});
+    try {
+      queue.put(FLUSH);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PngjOutputException("interrupted", e);
+    }
+  }
+
+  @Override
+  public List<PngChunkRIDX.Entry> getRestartEntries() {
+    return cs.getRestartEntries();
+  }
+
+  private void checkFailure() {
+    Throwable e = failure;
+    if (e == null)
+      return;
+    if (e instanceof RuntimeException)
+      throw (RuntimeException) e;
+    throw new PngjOutputException(e);
+  }
+
+  /** Waits for the background thread to write all the queued rows, and rethrows any error */
+  @Override
+  public void done() {
+    if (done)
+      return;
+    done = true;
+    if (thread != null) {
+      boolean interrupted = false;
+      while (true) {
+        try {
+          queue.put(END);
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      while (thread.isAlive()) {
+        try {
+          thread.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted)
+        Thread.currentThread().interrupt();
+    } else
+      cs.done();
+    bytesOut = cs.getBytesCompressed();
+    checkFailure();
+  }
+
+  @Override
+  public void close() {
+    if (closed)
+      return;
+    try {
+      if (!done)
+        done();
+    } finally {
+      closed = true;
+      if (thread != null && thread.isAlive()) {
+        thread.interrupt();
+        try {
+          thread.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      if (failure == null)
+        cs.close();
+      else {
+        try {
+          cs.close();
+        } catch (RuntimeException e) { // we already have an error
+        }
+      }
+    }
+  }
+
+  /** not supported */
+  @Override
+  public void reset() {
+    throw new PngjUnsupportedException("cannot reset an async compressor stream");
+  }
+}
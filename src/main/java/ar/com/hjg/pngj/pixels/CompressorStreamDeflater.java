@@ -48,6 +48,11 @@ public class CompressorStreamDeflater extends CompressorStream {
   }
 
   protected void deflate() {
+    deflate(Deflater.NO_FLUSH);
+  }
+
+  /** returns true if the output buffer was filled (with a flush mode, this means that it must be called again) */
+  private boolean deflate(int flushMode) {
     byte[] buf;
     int off, n;
     if (idatChunkWriter != null) {
@@ -61,12 +66,27 @@ public class CompressorStreamDeflater extends CompressorStream {
       off = 0;
       n = buf1.length;
     }
-    int len = deflater.deflate(buf, off, n);
+    int len =
+        flushMode == Deflater.NO_FLUSH ? deflater.deflate(buf, off, n) : deflater.deflate(buf, off,
+            n, flushMode);
     if (len > 0) {
       if (idatChunkWriter != null)
         idatChunkWriter.incrementOffset(len);
       bytesOut += len;
     }
+    return len == n;
+  }
+
+  /** Requires Java 7 (Deflater.FULL_FLUSH) */
+  @Override
+  public void fullFlush(int row, boolean filterReset) {
+    if (deflater.finished() || done || closed)
+      throw new PngjOutputException("flush beyond end of stream");
+    while (deflate(Deflater.FULL_FLUSH))
+      ;
+    if (idatChunkWriter != null)
+      idatChunkWriter.flush();
+    addRestartEntry(row, filterReset);
   }
 
   /** automatically called when done */
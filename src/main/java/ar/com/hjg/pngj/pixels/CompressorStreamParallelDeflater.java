@@ -0,0 +1,286 @@
+package ar.com.hjg.pngj.pixels;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+import ar.com.hjg.pngj.IDatChunkWriter;
+import ar.com.hjg.pngj.PngjOutputException;
+
+/**
+ * CompressorStream that deflates in parallel, in the style of pigz.
+ * <p>
+ * The input is split in big blocks that are compressed concurrently, each one by its own Deflater (raw deflate), primed
+ * with the last 32KB of the previous block as dictionary, and ended with a sync flush, so that the concatenation is a
+ * valid deflate stream. The per-block Adler-32 checksums are combined, and the output is a standard zlib stream, the
+ * compression ratio is practically the same as with a single Deflater.
+ * <p>
+ * The compressed blocks are written in order, from the caller thread, to the IDatChunkWriter.
+ * <p>
+ * A {@link #fullFlush(int, boolean)} ends the current block, and the next one is compressed without dictionary.
+ * <p>
+ * Warning: this requires Java 7 (Deflater with SYNC_FLUSH)
+ */
+public class CompressorStreamParallelDeflater extends CompressorStream {
+
+  public static final int BLOCK_SIZE_DEFAULT = 128 * 1024;
+  private static final int DICT_SIZE = 32768;
+
+  private final int deflaterCompLevel;
+  private final int deflaterStrategy;
+  private final int blockSize;
+  private final ExecutorService executor;
+  private final boolean executorIsOwn;
+  private final int maxPending; // max blocks being compressed concurrently
+
+  private final LinkedList<Future<Block>> pending = new LinkedList<Future<Block>>();
+  private final LinkedList<byte[]> freeBuffers = new LinkedList<byte[]>();
+  private byte[] cur; // block being filled
+  private int curLen;
+  private byte[] dict; // last bytes (up to 32K) of the previous block, null if none
+  private boolean headerWritten = false;
+  private long adler = 1;
+  private int restartRow = -1; // if non negative, the next block starts a restart point
+  private boolean restartFilterReset;
+
+  /**
+   * @param idatCw Can be null (if we are only interested in compute compression ratio)
+   * @param maxBlockLen see {@link CompressorStream}, this is normally a row, not the compression block
+   * @param totalLen Expected total bytes to be fed. If unknown, use -1.
+   * @param executor to run the compression tasks, it will not be shut down. If null, a pool with a daemon thread per
+   *        core is created, and shut down on close
+   * @param blockSize Size (uncompressed) of the blocks compressed in parallel; 0: default (128KB)
+   */
+  public CompressorStreamParallelDeflater(IDatChunkWriter idatCw, int maxBlockLen, long totalLen,
+      int deflaterCompLevel, int deflaterStrategy, ExecutorService executor, int blockSize) {
+    super(idatCw, maxBlockLen, totalLen);
+    this.deflaterCompLevel = deflaterCompLevel;
+    this.deflaterStrategy = deflaterStrategy;
+    this.blockSize = blockSize > 0 ? blockSize : BLOCK_SIZE_DEFAULT;
+    int nthreads = Runtime.getRuntime().availableProcessors();
+    if (executor == null) {
+      executor = Executors.newFixedThreadPool(nthreads, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "pngj-deflater");
+          t.setDaemon(true);
+          return t;
+        }
+      });
+      executorIsOwn = true;
+    } else
+      executorIsOwn = false;
+    this.executor = executor;
+    this.maxPending = nthreads * 2;
+    cur = new byte[this.blockSize];
+  }
+
+  public CompressorStreamParallelDeflater(IDatChunkWriter idatCw, int maxBlockLen, long totalLen,
+      int deflaterCompLevel, int deflaterStrategy, ExecutorService executor) {
+    this(idatCw, maxBlockLen, totalLen, deflaterCompLevel, deflaterStrategy, executor, 0);
+  }
+
+  @Override
+  public void mywrite(byte[] data, int off, int len) {
+    if (done || closed)
+      throw new PngjOutputException("write beyond end of stream");
+    bytesIn += len;
+    while (len > 0) {
+      int n = Math.min(len, blockSize - curLen);
+      System.arraycopy(data, off, cur, curLen, n);
+      curLen += n;
+      off += n;
+      len -= n;
+      if (curLen == blockSize)
+        submitBlock(false);
+    }
+  }
+
+  /** sends the current block to compress */
+  private void submitBlock(boolean last) {
+    final Block b = new Block(cur, curLen, dict, last);
+    b.restartRow = restartRow;
+    b.restartFilterReset = restartFilterReset;
+    restartRow = -1;
+    dict = last ? null : lastBytes(dict, cur, curLen);
+    pending.add(executor.submit(b));
+    cur = freeBuffers.isEmpty() ? new byte[blockSize] : freeBuffers.removeFirst();
+    curLen = 0;
+    while (pending.size() > maxPending || (last && !pending.isEmpty()))
+      writeNextBlock();
+  }
+
+  /* the new dictionary: last DICT_SIZE bytes of the concatenation of previous dictionary and block */
+  private static byte[] lastBytes(byte[] dict, byte[] b, int blen) {
+    if (blen >= DICT_SIZE)
+      return Arrays.copyOfRange(b, blen - DICT_SIZE, blen);
+    int keep = dict == null ? 0 : Math.min(dict.length, DICT_SIZE - blen);
+    byte[] d = new byte[keep + blen];
+    if (keep > 0)
+      System.arraycopy(dict, dict.length - keep, d, 0, keep);
+    System.arraycopy(b, 0, d, keep, blen);
+    return d;
+  }
+
+  /** waits for the oldest block and writes it */
+  private void writeNextBlock() {
+    Block b;
+    try {
+      b = pending.removeFirst().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PngjOutputException("interrupted", e);
+    } catch (ExecutionException e) {
+      throw new PngjOutputException("error compressing", e.getCause());
+    }
+    if (!headerWritten) {
+      writeOut(zlibHeader(deflaterCompLevel), 0, 2);
+      headerWritten = true;
+    }
+    if (b.restartRow >= 0) {
+      if (idatChunkWriter != null)
+        idatChunkWriter.flush();
+      addRestartEntry(b.restartRow, b.restartFilterReset);
+    }
+    writeOut(b.out, 0, b.outLen);
+    adler = adler32Combine(adler, b.adler, b.inLen);
+    if (b.in.length == blockSize && freeBuffers.size() < maxPending)
+      freeBuffers.add(b.in);
+    b.in = null;
+  }
+
+  private void writeOut(byte[] buf, int off, int len) {
+    if (idatChunkWriter != null)
+      idatChunkWriter.write(buf, off, len);
+    bytesOut += len;
+  }
+
+  @Override
+  public void fullFlush(int row, boolean filterReset) {
+    if (done || closed)
+      throw new PngjOutputException("flush beyond end of stream");
+    if (curLen > 0)
+      submitBlock(false); // ends with a sync flush
+    dict = null; // the next block will not depend on the previous data
+    restartRow = row;
+    restartFilterReset = filterReset;
+  }
+
+  @Override
+  public void done() {
+    if (done)
+      return;
+    done = true;
+    submitBlock(true); // even if empty, to end the deflate stream
+    byte[] trailer = new byte[4];
+    for (int i = 0; i < 4; i++)
+      trailer[i] = (byte) (adler >> (24 - 8 * i));
+    writeOut(trailer, 0, 4);
+    if (idatChunkWriter != null)
+      idatChunkWriter.close();
+  }
+
+  @Override
+  public void close() {
+    try {
+      if (!done)
+        done();
+    } finally {
+      for (Future<Block> f : pending)
+        f.cancel(true);
+      pending.clear();
+      if (executorIsOwn)
+        executor.shutdownNow();
+      super.close();
+    }
+  }
+
+  @Override
+  public void reset() {
+    super.reset();
+    headerWritten = false;
+    adler = 1;
+    dict = null;
+    curLen = 0;
+    restartRow = -1;
+  }
+
+  static byte[] zlibHeader(int level) {
+    int cmf = 0x78; // deflate, 32K window
+    int flevel = level < 0 || level == 6 ? 2 : (level < 2 ? 0 : (level < 6 ? 1 : 3));
+    int flg = flevel << 6;
+    flg += (31 - ((cmf << 8) + flg) % 31) % 31;
+    return new byte[] {(byte) cmf, (byte) flg};
+  }
+
+  /** as zlib's adler32_combine() */
+  static long adler32Combine(long adler1, long adler2, long len2) {
+    final long BASE = 65521;
+    long rem = len2 % BASE;
+    long sum1 = adler1 & 0xffff;
+    long sum2 = (rem * sum1) % BASE;
+    sum1 += (adler2 & 0xffff) + BASE - 1;
+    sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + BASE - rem;
+    if (sum1 >= BASE)
+      sum1 -= BASE;
+    if (sum1 >= BASE)
+      sum1 -= BASE;
+    if (sum2 >= (BASE << 1))
+      sum2 -= (BASE << 1);
+    if (sum2 >= BASE)
+      sum2 -= BASE;
+    return sum1 | (sum2 << 16);
+  }
+
+  private class Block implements Callable<Block> {
+    byte[] in;
+    final int inLen;
+    final byte[] dict;
+    final boolean last;
+    byte[] out;
+    int outLen;
+    long adler;
+    int restartRow;
+    boolean restartFilterReset;
+
+    Block(byte[] in, int inLen, byte[] dict, boolean last) {
+      this.in = in;
+      this.inLen = inLen;
+      this.dict = dict;
+      this.last = last;
+    }
+
+    public Block call() {
+      Adler32 ad = new Adler32();
+      ad.update(in, 0, inLen);
+      adler = ad.getValue();
+      Deflater def = new Deflater(deflaterCompLevel, true);
+      try {
+        def.setStrategy(deflaterStrategy);
+        if (dict != null)
+          def.setDictionary(dict);
+        def.setInput(in, 0, inLen);
+        if (last)
+          def.finish();
+        out = new byte[inLen + (inLen >> 8) + 64];
+        while (true) {
+          int avail = out.length - outLen;
+          outLen += def.deflate(out, outLen, avail, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+          if (last ? def.finished() : outLen < out.length)
+            break;
+          if (outLen == out.length)
+            out = Arrays.copyOf(out, out.length * 2);
+        }
+      } finally {
+        def.end();
+      }
+      return this;
+    }
+  }
+}
@@ -6,6 +6,7 @@ import ar.com.hjg.pngj.FilterType;
 import ar.com.hjg.pngj.ImageInfo;
 import ar.com.hjg.pngj.PngHelperInternal;
 import ar.com.hjg.pngj.PngjExceptionInternal;
+import ar.com.hjg.pngj.RowFilterEngine;
 
 /** for use in adaptative strategy */
 public class FiltersPerformance {
@@ -64,6 +65,30 @@ public class FiltersPerformance {
 
   private void updateFromRawOrFiltered(FilterType ftype, byte[] rowff, byte[] rowb,
       byte[] rowbprev, int rown) {
+    if (rowff != null)
+      computeHistogram(rowff);
+    else
+      computeHistogramForFilter(ftype, rowb, rowbprev);
+    updateFromStat(ftype, ftype == FilterType.FILTER_NONE ? computeEntropyFromHistogram()
+        : computeAbsFromHistogram(), rown);
+  }
+
+  /**
+   * Computes the statistic that {@link #updateFromFiltered(FilterType, byte[], int)} would use, without updating the
+   * state. This allows to compute them in several threads (with one instance of this per thread), see
+   * {@link #updateFromStat(FilterType, double, int)}
+   */
+  public double computeStatFromFiltered(FilterType ftype, byte[] rowff) {
+    computeHistogram(rowff);
+    return ftype == FilterType.FILTER_NONE ? computeEntropyFromHistogram()
+        : computeAbsFromHistogram();
+  }
+
+  /**
+   * Same as {@link #updateFromFiltered(FilterType, byte[], int)}, with a precomputed statistic, see
+   * {@link #computeStatFromFiltered(FilterType, byte[])}
+   */
+  public void updateFromStat(FilterType ftype, double stat, int rown) {
     if (!initdone)
       init();
     if (rown != lastrow) {
@@ -71,14 +96,10 @@ public class FiltersPerformance {
       Arrays.fill(entropy, Double.NaN);
     }
     lastrow = rown;
-    if (rowff != null)
-      computeHistogram(rowff);
-    else
-      computeHistogramForFilter(ftype, rowb, rowbprev);
     if (ftype == FilterType.FILTER_NONE)
-      entropy[ftype.val] = computeEntropyFromHistogram();
+      entropy[ftype.val] = stat;
     else
-      absum[ftype.val] = computeAbsFromHistogram();
+      absum[ftype.val] = stat;
   }
 
   /* WARNING: this is not idempotent, call it just once per cycle (sigh) */
@@ -105,39 +126,11 @@ public class FiltersPerformance {
   }
 
   public final void computeHistogramForFilter(FilterType filterType, byte[] rowb, byte[] rowbprev) {
+    if (!FilterType.isValidStandard(filterType))
+      throw new PngjExceptionInternal("Bad filter:" + filterType);
     Arrays.fill(histog, 0);
-    int i, j, imax = iminfo.bytesPerRow;
-    switch (filterType) {
-      case FILTER_NONE:
-        for (i = 1; i <= imax; i++)
-          histog[rowb[i] & 0xFF]++;
-        break;
-      case FILTER_PAETH:
-        for (i = 1; i <= imax; i++)
-          histog[PngHelperInternal.filterRowPaeth(rowb[i], 0, rowbprev[i] & 0xFF, 0)]++;
-        for (j = 1, i = iminfo.bytesPixel + 1; i <= imax; i++, j++)
-          histog[PngHelperInternal.filterRowPaeth(rowb[i], rowb[j] & 0xFF, rowbprev[i] & 0xFF,
-              rowbprev[j] & 0xFF)]++;
-        break;
-      case FILTER_SUB:
-        for (i = 1; i <= iminfo.bytesPixel; i++)
-          histog[rowb[i] & 0xFF]++;
-        for (j = 1, i = iminfo.bytesPixel + 1; i <= imax; i++, j++)
-          histog[(rowb[i] - rowb[j]) & 0xFF]++;
-        break;
-      case FILTER_UP:
-        for (i = 1; i <= iminfo.bytesPerRow; i++)
-          histog[(rowb[i] - rowbprev[i]) & 0xFF]++;
-        break;
-      case FILTER_AVERAGE:
-        for (i = 1; i <= iminfo.bytesPixel; i++)
-          histog[((rowb[i] & 0xFF) - ((rowbprev[i] & 0xFF)) / 2) & 0xFF]++;
-        for (j = 1, i = iminfo.bytesPixel + 1; i <= imax; i++, j++)
-          histog[((rowb[i] & 0xFF) - ((rowbprev[i] & 0xFF) + (rowb[j] & 0xFF)) / 2) & 0xFF]++;
-        break;
-      default:
-        throw new PngjExceptionInternal("Bad filter:" + filterType);
-    }
+    RowFilterEngine.getDefault().histogramForFilter(filterType, rowb, rowbprev, iminfo.bytesPerRow,
+        iminfo.bytesPixel, histog);
   }
 
   public void computeHistogram(byte[] rowff) {
@@ -1,13 +1,16 @@
 package ar.com.hjg.pngj.pixels;
 
 import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.Deflater;
 
 import ar.com.hjg.pngj.FilterType;
 import ar.com.hjg.pngj.IDatChunkWriter;
 import ar.com.hjg.pngj.ImageInfo;
-import ar.com.hjg.pngj.PngHelperInternal;
-import ar.com.hjg.pngj.PngjOutputException;
+import ar.com.hjg.pngj.RowFilterEngine;
+import ar.com.hjg.pngj.chunks.PngChunkRIDX;
 
 /**
  * Encodes a set of rows (pixels) as a continuous deflated stream (does not know about IDAT chunk segmentation).
@@ -30,11 +33,22 @@ public abstract class PixelsWriter {
   protected final int bytesPixel;
   protected final int bytesRow;
 
+  /** does the filtering, see {@link RowFilterEngine#getDefault()} */
+  protected final RowFilterEngine filterEngine = RowFilterEngine.getDefault();
+
   private CompressorStream compressorStream; // to compress the idat stream
 
   protected int deflaterCompLevel = 6;
   protected int deflaterStrategy = Deflater.DEFAULT_STRATEGY;
 
+  protected boolean parallelDeflate = false;
+  protected ExecutorService deflaterExecutor; // for parallel deflate, can be null
+
+  protected int asyncQueueRows = 0; // if positive, compression is done in a background thread
+
+  protected int restartInterval = 0; // if positive, rows between restart points
+  private int rowsSent = 0; // rows sent to the compressor stream
+
   protected boolean initdone = false;
 
   /**
@@ -77,6 +91,10 @@ public abstract class PixelsWriter {
   }
 
   protected void sendToCompressedStream(byte[] rowf) {
+    if (isRestartRow(rowsSent))
+      compressorStream.fullFlush(rowsSent, rowf[0] == FilterType.FILTER_NONE.val
+          || rowf[0] == FilterType.FILTER_SUB.val);
+    rowsSent++;
     compressorStream.write(rowf, 0, rowf.length);
     filtersUsed[rowf[0]]++;
   }
@@ -108,38 +126,8 @@ public abstract class PixelsWriter {
     if (_filterType == FilterType.FILTER_NONE)
       _rowf = _rowb;
     _rowf[0] = (byte) _filterType.val;
-    int i, j;
-    switch (_filterType) {
-      case FILTER_NONE:
-        // we return the same original (be careful!)
-        break;
-      case FILTER_PAETH:
-        for (i = 1; i <= bytesPixel; i++)
-          _rowf[i] = (byte) PngHelperInternal.filterRowPaeth(_rowb[i], 0, _rowbprev[i] & 0xFF, 0);
-        for (j = 1, i = bytesPixel + 1; i <= bytesRow; i++, j++)
-          _rowf[i] =
-              (byte) PngHelperInternal.filterRowPaeth(_rowb[i], _rowb[j] & 0xFF,
-                  _rowbprev[i] & 0xFF, _rowbprev[j] & 0xFF);
-        break;
-      case FILTER_SUB:
-        for (i = 1; i <= bytesPixel; i++)
-          _rowf[i] = (byte) _rowb[i];
-        for (j = 1, i = bytesPixel + 1; i <= bytesRow; i++, j++)
-          _rowf[i] = (byte) (_rowb[i] - _rowb[j]);
-        break;
-      case FILTER_AVERAGE:
-        for (i = 1; i <= bytesPixel; i++)
-          _rowf[i] = (byte) (_rowb[i] - (_rowbprev[i] & 0xFF) / 2);
-        for (j = 1, i = bytesPixel + 1; i <= bytesRow; i++, j++)
-          _rowf[i] = (byte) (_rowb[i] - ((_rowbprev[i] & 0xFF) + (_rowb[j] & 0xFF)) / 2);
-        break;
-      case FILTER_UP:
-        for (i = 1; i <= bytesRow; i++)
-          _rowf[i] = (byte) (_rowb[i] - _rowbprev[i]);
-        break;
-      default:
-        throw new PngjOutputException("Filter type not recognized: " + _filterType);
-    }
+    if (_filterType != FilterType.FILTER_NONE) // NONE: we return the same original (be careful!)
+      filterEngine.filterRow(_filterType, _rowb, _rowbprev, _rowf, bytesRow, bytesPixel);
     return _rowf;
   }
 
@@ -163,10 +151,17 @@ public abstract class PixelsWriter {
   protected void initParams() {
     IDatChunkWriter idatWriter = new IDatChunkWriter(os, idatMaxSize);
     if (compressorStream == null) { // if not set, use the deflater
-      compressorStream =
-          new CompressorStreamDeflater(idatWriter, buflen, imgInfo.getTotalRawBytes(),
-              deflaterCompLevel, deflaterStrategy);
+      if (parallelDeflate)
+        compressorStream =
+            new CompressorStreamParallelDeflater(idatWriter, buflen, imgInfo.getTotalRawBytes(),
+                deflaterCompLevel, deflaterStrategy, deflaterExecutor);
+      else
+        compressorStream =
+            new CompressorStreamDeflater(idatWriter, buflen, imgInfo.getTotalRawBytes(),
+                deflaterCompLevel, deflaterStrategy);
     }
+    if (asyncQueueRows > 0 && !(compressorStream instanceof CompressorStreamAsync))
+      compressorStream = new CompressorStreamAsync(compressorStream, asyncQueueRows);
   }
 
   /** cleanup. This should be called explicitly. Idempotent and secure */
@@ -195,6 +190,55 @@ public abstract class PixelsWriter {
     return deflaterCompLevel;
   }
 
+  /**
+   * Compress the pixels in parallel, with a {@link CompressorStreamParallelDeflater}. Only worth for big images.
+   * Default: false
+   */
+  public void setParallelDeflate(boolean parallelDeflate) {
+    this.parallelDeflate = parallelDeflate;
+  }
+
+  /**
+   * Executor to use for parallel deflating (see {@link #setParallelDeflate(boolean)}); it will not be shut down. If
+   * null (default) a pool with one thread per core is created for each image.
+   */
+  public void setDeflaterExecutor(ExecutorService deflaterExecutor) {
+    this.deflaterExecutor = deflaterExecutor;
+  }
+
+  /**
+   * If positive, the compression and output of the IDAT stream is done in a background thread, fed by a queue of (at
+   * most) this number of rows; see {@link CompressorStreamAsync}. The errors in the background thread are deferred:
+   * they are rethrown in a later write, or at the end. Default: 0 (no background thread)
+   */
+  public void setAsyncCompression(int queueRows) {
+    this.asyncQueueRows = queueRows;
+  }
+
+  /**
+   * If positive, every this number of rows a restart point is made: the deflater is fully flushed, a new IDAT chunk
+   * is started, and the row is filtered with NONE or SUB (unless the filter type is FILTER_PRESERVE), so that the
+   * pixels can be decoded from there, without the previous data. The restart points are recorded in a
+   * {@link PngChunkRIDX} chunk, written after the IDAT chunks. The image is a standard PNG, the compression is slightly
+   * worse.
+   * <p>
+   * Default: 0 (no restart points)
+   */
+  public void setRestartInterval(int rows) {
+    this.restartInterval = rows;
+  }
+
+  /** true if the row (not the first one) must be a restart point, see {@link #setRestartInterval(int)} */
+  protected boolean isRestartRow(int row) {
+    return restartInterval > 0 && row > 0 && row % restartInterval == 0;
+  }
+
+  /** restart points, see {@link #setRestartInterval(int)}. To be called after close */
+  public List<PngChunkRIDX.Entry> getRestartEntries() {
+    return compressorStream != null ? compressorStream.getRestartEntries() : Collections
+        .<PngChunkRIDX.Entry>emptyList();
+  }
+
 
   public final void setOs(OutputStream datStream) {
     this.os = datStream;
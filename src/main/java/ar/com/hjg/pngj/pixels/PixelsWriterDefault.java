@@ -117,9 +117,9 @@ public class PixelsWriterDefault extends PixelsWriter {
     } else {
       throw new PngjOutputException("not implemented filter: " + getFilterType());
     }
-    if (currentRow == 0 && curfilterType != FilterType.FILTER_NONE
-        && curfilterType != FilterType.FILTER_SUB)
-      curfilterType = FilterType.FILTER_SUB; // first row should always be none or sub
+    if ((currentRow == 0 || (isRestartRow(currentRow) && getFilterType() != FilterType.FILTER_PRESERVE))
+        && curfilterType != FilterType.FILTER_NONE && curfilterType != FilterType.FILTER_SUB)
+      curfilterType = FilterType.FILTER_SUB; // first row (and restart rows) should always be none or sub
   }
 
   @Override
@@ -1,10 +1,17 @@
 package ar.com.hjg.pngj.pixels;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.zip.Deflater;
 
 import ar.com.hjg.pngj.FilterType;
 import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.PngjOutputException;
 
 /** Special pixels writer for experimental super adaptive strategy */
 public class PixelsWriterMultiple extends PixelsWriter {
@@ -40,6 +47,9 @@ public class PixelsWriterMultiple extends PixelsWriter {
 
   private boolean useLz4 = true;
 
+  private ExecutorService executor; // if not null, the filters bank is evaluated concurrently
+  private byte[][] laneRows; // for concurrent evaluation, a filtered row buffer for each filter
+
   public PixelsWriterMultiple(ImageInfo imgInfo) {
     super(imgInfo);
     filtersPerf = new FiltersPerformance(imgInfo);
@@ -56,6 +66,14 @@ public class PixelsWriterMultiple extends PixelsWriter {
     if (rowb != rows.get(0))
       throw new RuntimeException("?");
     setBandFromNewRown();
+    if (executor != null) { // all the work is done at the end of the band
+      if (currentRow == lastRowInThisBand) {
+        evaluateBandConcurrently();
+        writeBand(false);
+      }
+      rotateRows();
+      return;
+    }
     byte[] rowbprev = rows.get(1);
     for (FilterType ftype : FilterType.getAllStandardNoneLast()) {
       // this has a special behaviour for NONE: filteredRows[0] is null, and the returned value is
@@ -79,32 +97,107 @@ public class PixelsWriterMultiple extends PixelsWriter {
       FilterType preferredAdaptive = filtersPerf.getPreferred();
       filterBank[5].write(filteredRows[preferredAdaptive.val]);
     }
-    if (currentRow == lastRowInThisBand) {
-      int best = getBestCompressor();
-      // PngHelperInternal.debug("won: " + best + " (rows: " + firstRowInThisBand + ":" + lastRowInThisBand + ")");
-      // if(currentRow>90&&currentRow<100)
-      // PngHelperInternal.debug(String.format("row=%d ft=%s",currentRow,FilterType.getByVal(best)));
-      byte[] filtersAdapt = filterBank[best].getFirstBytes();
-      for (int r = firstRowInThisBand, i = 0, j = lastRowInThisBand - firstRowInThisBand; r <= lastRowInThisBand; r++, j--, i++) {
-        int fti = filtersAdapt[i];
-        byte[] filtered = null;
-        if (r != lastRowInThisBand) {
-          filtered =
-              filterRowWithFilterType(FilterType.getByVal(fti), rows.get(j), rows.get(j + 1),
-                  filteredRowTmp);
-        } else { // no need to do this filtering, we already have it
-          filtered = filteredRows[fti];
-        }
-        sendToCompressedStream(filtered);
+    if (currentRow == lastRowInThisBand)
+      writeBand(true);
+    rotateRows();
+  }
+
+  /** picks the best compressor and writes the rows of the band with the corresponding filters */
+  private void writeBand(boolean lastRowIsFiltered) {
+    int best = getBestCompressor();
+    // PngHelperInternal.debug("won: " + best + " (rows: " + firstRowInThisBand + ":" + lastRowInThisBand + ")");
+    // if(currentRow>90&&currentRow<100)
+    // PngHelperInternal.debug(String.format("row=%d ft=%s",currentRow,FilterType.getByVal(best)));
+    byte[] filtersAdapt = filterBank[best].getFirstBytes();
+    for (int r = firstRowInThisBand, i = 0, j = lastRowInThisBand - firstRowInThisBand; r <= lastRowInThisBand; r++, j--, i++) {
+      int fti = filtersAdapt[i];
+      boolean forceSub =
+          isRestartRow(r) && fti != FilterType.FILTER_NONE.val && fti != FilterType.FILTER_SUB.val;
+      if (forceSub)
+        fti = FilterType.FILTER_SUB.val;
+      byte[] filtered = null;
+      if (r != lastRowInThisBand || !lastRowIsFiltered || forceSub) {
+        filtered =
+            filterRowWithFilterType(FilterType.getByVal(fti), rows.get(j), rows.get(j + 1),
+                filteredRowTmp);
+      } else { // no need to do this filtering, we already have it
+        filtered = filteredRows[fti];
       }
+      sendToCompressedStream(filtered);
     }
-    // rotate
+  }
+
+  private void rotateRows() {
     if (rows.size() > rowsPerBandCurrent) {
       rows.addFirst(rows.removeLast());
     } else
       rows.addFirst(new byte[buflen]);
   }
 
+  /**
+   * Concurrent alternative to the per-row evaluation: at the end of the band, each filter is evaluated (filtered and fed
+   * to its estimator) for all the rows of the band in a separate task. The adaptive estimator is fed afterwards. The
+   * results are the same as in the serial evaluation.
+   */
+  private void evaluateBandConcurrently() {
+    final int nrows = rowsPerBandCurrent;
+    final byte[][] band = new byte[nrows + 1][]; // band[0]: row previous to the band, band[i+1]: row i of band
+    int k = 0;
+    for (byte[] b : rows) { // rows.get(0) is the last row of the band
+      if (k > nrows)
+        break;
+      band[nrows - k] = b;
+      k++;
+    }
+    final boolean adaptive = tryAdaptive;
+    final double[][] stats = adaptive ? new double[5][nrows] : null;
+    List<Future<?>> lanes = new ArrayList<Future<?>>(5);
+    for (final FilterType ftype : FilterType.getAllStandardNoneLast()) {
+      lanes.add(executor.submit(new Callable<Object>() {
+        public Object call() {
+          FiltersPerformance fperf = adaptive ? new FiltersPerformance(imgInfo) : null;
+          byte[] buf = laneRows[ftype.val];
+          for (int i = 0, r = firstRowInThisBand; i < nrows; i++, r++) {
+            boolean firstRowOnlySub =
+                r == 0 && ftype != FilterType.FILTER_NONE && ftype != FilterType.FILTER_SUB;
+            // for the first row, the filters that use the previous row get the SUB filtered, as in the serial case
+            byte[] filtered =
+                filterRowWithFilterType(firstRowOnlySub ? FilterType.FILTER_SUB : ftype,
+                    band[i + 1], band[i], buf);
+            filterBank[ftype.val].write(filtered);
+            if (adaptive && !firstRowOnlySub)
+              stats[ftype.val][i] = fperf.computeStatFromFiltered(ftype, filtered);
+          }
+          return null;
+        }
+      }));
+    }
+    try {
+      for (Future<?> f : lanes)
+        f.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PngjOutputException("interrupted", e);
+    } catch (ExecutionException e) {
+      throw new PngjOutputException("error evaluating filters", e.getCause());
+    } finally {
+      for (Future<?> f : lanes)
+        f.cancel(true);
+    }
+    if (adaptive) {
+      for (int i = 0, r = firstRowInThisBand; i < nrows; i++, r++) {
+        for (FilterType ftype : FilterType.getAllStandardNoneLast()) {
+          if (r == 0 && ftype != FilterType.FILTER_NONE && ftype != FilterType.FILTER_SUB)
+            continue;
+          filtersPerf.updateFromStat(ftype, stats[ftype.val][i], r);
+        }
+        FilterType preferredAdaptive = filtersPerf.getPreferred();
+        filterBank[5].write(filterRowWithFilterType(preferredAdaptive, band[i + 1], band[i],
+            filteredRowTmp));
+      }
+    }
+  }
+
   @Override
   public byte[] getRowb() {
     return rows.get(0);
@@ -205,6 +298,11 @@ public class PixelsWriterMultiple extends PixelsWriter {
     }
     if (rowsPerBand == 0)
       rowsPerBand = computeInitialRowsPerBand();
+    if (executor != null) {
+      laneRows = new byte[5][];
+      for (int i = 0; i < 5; i++)
+        laneRows[i] = new byte[buflen];
+    }
   }
 
   @Override
@@ -238,4 +336,14 @@ public class PixelsWriterMultiple extends PixelsWriter {
     this.tryAdaptive = tryAdaptive;
   }
 
+  /**
+   * If set, the filters are evaluated concurrently using this executor (one task per filter type, for each band). The
+   * result is the same, but it takes less time in multicore machines. It will not be shut down.
+   * <p>
+   * Must be called before writing the first row. Default: null (serial evaluation)
+   */
+  public void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
 }
@@ -0,0 +1,70 @@
+package ar.com.hjg.pngj;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Rough benchmark of {@link PngReaderPipelined} against {@link PngReader}: wall-clock time to read all the rows of a
+ * big image from memory. Not a test; run the main method, eg with <tt>-Xmx512m</tt>. Arguments (optional): cols rows
+ * channels bitdepth
+ */
+public class PngReaderPipelinedBenchmark {
+
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) {
+    Locale.setDefault(Locale.US);
+    int cols = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+    int rows = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+    int channels = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+    int bitdepth = args.length > 3 ? Integer.parseInt(args[3]) : 8;
+    ImageInfo imi = new ImageInfo(cols, rows, bitdepth, channels == 2 || channels == 4, channels < 3, false);
+    byte[] png = createPng(imi);
+    System.out.printf("%dx%d channels=%d bitdepth=%d, %d bytes, %d cpus%n", cols, rows, channels, bitdepth,
+        png.length, Runtime.getRuntime().availableProcessors());
+    for (int depth : new int[] {4, 16, 64}) {
+      double t0 = 0, t1 = 0;
+      for (int rep = 0; rep < 3; rep++) { // the first one is warmup
+        long n0 = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++)
+          read(new PngReader(new ByteArrayInputStream(png)));
+        long n1 = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+          PngReaderPipelined pngr = new PngReaderPipelined(new ByteArrayInputStream(png));
+          pngr.setPipelineDepth(depth);
+          read(pngr);
+        }
+        long n2 = System.nanoTime();
+        t0 = (n1 - n0) / 1e6 / ROUNDS;
+        t1 = (n2 - n1) / 1e6 / ROUNDS;
+      }
+      System.out.printf("depth=%-3d PngReader: %.1f ms  PngReaderPipelined: %.1f ms  speedup: %.2fx%n", depth, t0,
+          t1, t0 / t1);
+    }
+  }
+
+  private static void read(PngReader pngr) {
+    for (int r = 0; r < pngr.imgInfo.rows; r++)
+      pngr.readRow(r);
+    pngr.end();
+  }
+
+  /** smooth gradients with some noise: compresses, but not trivially */
+  private static byte[] createPng(ImageInfo imi) {
+    Random rand = new Random(1);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    PngWriter pngw = new PngWriter(bos, imi);
+    int maxv = (1 << imi.bitDepth) - 1;
+    ImageLineInt line = new ImageLineInt(imi);
+    for (int r = 0; r < imi.rows; r++) {
+      for (int c = 0, i = 0; c < imi.cols; c++)
+        for (int k = 0; k < imi.channels; k++, i++)
+          line.getScanline()[i] = ((c + r * (k + 1)) * maxv / (imi.cols + imi.rows * 4) + rand.nextInt(4)) & maxv;
+      pngw.writeRow(line);
+    }
+    pngw.end();
+    return bos.toByteArray();
+  }
+}
@@ -0,0 +1,74 @@
+package ar.com.hjg.pngj;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Rough benchmark of the unfiltering kernels of {@link IdatSet}, against the former generic loops (copied here). Not a
+ * test; run the main method, eg with <tt>-Xmx256m</tt>.
+ */
+public class UnfilterBenchmark {
+
+  private static final int NBYTES = 1 << 16;
+  private static final int ROUNDS = 2000;
+
+  public static void main(String[] args) {
+    Locale.setDefault(Locale.US);
+    Random rand = new Random(1);
+    byte[] row = new byte[NBYTES + 1];
+    byte[] prev = new byte[NBYTES + 1];
+    byte[] out = new byte[NBYTES + 1];
+    rand.nextBytes(row);
+    rand.nextBytes(prev);
+    for (int bpp : new int[] {1, 2, 3, 4, 6, 8}) {
+      int nbytes = NBYTES / 24 * 24;
+      for (int ft = 1; ft <= 4; ft++) {
+        if (ft == 2)
+          continue; // UP is not specialized
+        row[0] = (byte) ft;
+        double t0 = 0, t1 = 0;
+        for (int rep = 0; rep < 3; rep++) { // the first one is warmup
+          long n0 = System.nanoTime();
+          for (int r = 0; r < ROUNDS; r++)
+            unfilterRowGeneric(row, out, prev, nbytes, bpp);
+          long n1 = System.nanoTime();
+          for (int r = 0; r < ROUNDS; r++)
+            IdatSet.unfilterRow(row, out, prev, nbytes, bpp);
+          long n2 = System.nanoTime();
+          t0 = (n1 - n0) / (double) ROUNDS / nbytes;
+          t1 = (n2 - n1) / (double) ROUNDS / nbytes;
+        }
+        System.out.printf("bpp=%d %-14s generic: %.3f ns/byte  specialized: %.3f ns/byte  speedup: %.2fx%n",
+            bpp, FilterType.getByVal(ft), t0, t1, t0 / t1);
+      }
+    }
+  }
+
+  /** the generic loops, as they were before the specialized kernels */
+  static void unfilterRowGeneric(byte[] row, byte[] rowUnfiltered, byte[] rowUnfilteredPrev, int nbytes,
+      int bytesPixel) {
+    int i, j, x, y;
+    switch (row[0]) {
+      case 1:
+        for (i = 1; i <= bytesPixel; i++)
+          rowUnfiltered[i] = row[i];
+        for (j = 1, i = bytesPixel + 1; i <= nbytes; i++, j++)
+          rowUnfiltered[i] = (byte) (row[i] + rowUnfiltered[j]);
+        break;
+      case 3:
+        for (j = 1 - bytesPixel, i = 1; i <= nbytes; i++, j++) {
+          x = j > 0 ? (rowUnfiltered[j] & 0xff) : 0;
+          rowUnfiltered[i] = (byte) (row[i] + (x + (rowUnfilteredPrev[i] & 0xFF)) / 2);
+        }
+        break;
+      case 4:
+        for (j = 1 - bytesPixel, i = 1; i <= nbytes; i++, j++) {
+          x = j > 0 ? (rowUnfiltered[j] & 0xFF) : 0;
+          y = j > 0 ? (rowUnfilteredPrev[j] & 0xFF) : 0;
+          rowUnfiltered[i] =
+              (byte) (row[i] + PngHelperInternal.filterPaethPredictor(x, rowUnfilteredPrev[i] & 0xFF, y));
+        }
+        break;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package ar.com.hjg.pngj;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import ar.com.hjg.pngj.test.PngjTest;
+
+public class UnfilterTest extends PngjTest {
+  Random rand = new Random(5);
+
+  /** straightforward unfiltering, from the spec */
+  static void unfilterReference(byte[] row, byte[] out, byte[] prev, int nbytes, int bpp) {
+    out[0] = row[0];
+    for (int i = 1; i <= nbytes; i++) {
+      int a = i > bpp ? out[i - bpp] & 0xff : 0;
+      int b = prev[i] & 0xff;
+      int c = i > bpp ? prev[i - bpp] & 0xff : 0;
+      int x = row[i] & 0xff;
+      switch (row[0]) {
+        case 1:
+          x += a;
+          break;
+        case 2:
+          x += b;
+          break;
+        case 3:
+          x += (a + b) / 2;
+          break;
+        case 4:
+          x += PngHelperInternal.filterPaethPredictor(a, b, c);
+          break;
+      }
+      out[i] = (byte) x;
+    }
+  }
+
+  @Test
+  public void testKernels() {
+    for (int bpp : new int[] {1, 2, 3, 4, 6, 8}) {
+      for (int ft = 0; ft <= 4; ft++) {
+        for (int npix : new int[] {1, 2, 7, 100}) {
+          int nbytes = npix * bpp;
+          byte[] row = new byte[nbytes + 1];
+          byte[] prev = new byte[nbytes + 1];
+          for (int k = 0; k < 20; k++) {
+            rand.nextBytes(row);
+            rand.nextBytes(prev);
+            if (k % 3 == 0) // low values, lots of ties in Paeth
+              for (int i = 0; i <= nbytes; i++)
+                row[i] = (byte) (row[i] & 3);
+            row[0] = (byte) ft;
+            byte[] expected = new byte[nbytes + 1];
+            byte[] res = new byte[nbytes + 1];
+            unfilterReference(row, expected, prev, nbytes, bpp);
+            IdatSet.unfilterRow(row, res, prev, nbytes, bpp);
+            TestCase.assertTrue("bpp=" + bpp + " ft=" + ft, Arrays.equals(expected, res));
+            // without filter byte, in place (as unfilterRowInto does)
+            byte[] inplace = Arrays.copyOfRange(prev, 1, nbytes + 1);
+            RowFilterEngine.getDefault().unfilterRow(row, inplace, inplace, 0, nbytes, bpp);
+            TestCase.assertTrue("in place bpp=" + bpp + " ft=" + ft,
+                Arrays.equals(Arrays.copyOfRange(expected, 1, nbytes + 1), inplace));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFilterEngine() {
+    RowFilterEngine eng = RowFilterEngine.getDefault();
+    TestCase.assertNotNull(eng);
+    for (int bpp : new int[] {1, 2, 3, 4, 5, 6, 8}) {
+      int nbytes = 37 * bpp;
+      byte[] rowb = new byte[nbytes + 1];
+      byte[] prev = new byte[nbytes + 1];
+      byte[] rowf = new byte[nbytes + 1];
+      byte[] res = new byte[nbytes + 1];
+      for (int ft = 0; ft <= 4; ft++) {
+        FilterType ftype = FilterType.getByVal(ft);
+        rand.nextBytes(rowb);
+        rand.nextBytes(prev);
+        prev[0] = 0;
+        eng.filterRow(ftype, rowb, prev, rowf, nbytes, bpp);
+        rowf[0] = (byte) ft;
+        rowb[0] = (byte) ft;
+        unfilterReference(rowf, res, prev, nbytes, bpp);
+        TestCase.assertTrue("bpp=" + bpp + " ft=" + ft, Arrays.equals(rowb, res));
+        int[] histog = new int[256];
+        int[] expected = new int[256];
+        eng.histogramForFilter(ftype, rowb, prev, nbytes, bpp, histog);
+        for (int i = 1; i <= nbytes; i++)
+          expected[rowf[i] & 0xff]++;
+        TestCase.assertTrue("histogram bpp=" + bpp + " ft=" + ft, Arrays.equals(expected, histog));
+      }
+    }
+  }
+}
@@ -6,8 +6,9 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import ar.com.hjg.pngj.FilterType;
+import ar.com.hjg.pngj.IImageLine;
+import ar.com.hjg.pngj.IImageLineSet;
 import ar.com.hjg.pngj.ImageInfo;
-import ar.com.hjg.pngj.ImageLineInt;
 import ar.com.hjg.pngj.PngReaderInt;
 import ar.com.hjg.pngj.PngWriter;
 import ar.com.hjg.pngj.PngjException;
@@ -113,16 +114,9 @@ public class CropImage {
     PngWriter pngw = new PngWriter(file2, imi2);
     pngw.copyChunksFrom(pngr.getChunksList(), ChunkCopyBehaviour.COPY_ALL);
     pngw.setFilterType(ft);
-    ImageLineInt iline2 = new ImageLineInt(imi2);
-    int[] line2 = iline2.getScanline();
-    for (int r = oy2, rr = 0; rr < imi2.rows; rr++, r++) {
-      ImageLineInt iline1 = (ImageLineInt) pngr.readRow(r);
-      iline2.setFilterType(iline1.getFilterType());
-      int[] line1 = iline1.getScanline();
-      line2[0] = line1[0];
-      System.arraycopy(line1, ox2 * imi2.channels, line2, 0, w2 * imi2.channels);
-      pngw.writeRow(iline2);
-    }
+    IImageLineSet<? extends IImageLine> region = pngr.readRegion(ox2, oy2, w2, h2);
+    for (int rr = 0; rr < imi2.rows; rr++)
+      pngw.writeRow(region.getImageLine(rr));
     pngr.end();
     pngw.end();
   }
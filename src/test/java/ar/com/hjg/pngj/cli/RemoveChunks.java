@@ -9,12 +9,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import ar.com.hjg.pngj.ChunkCatalog;
 import ar.com.hjg.pngj.ChunkReader;
 import ar.com.hjg.pngj.ChunkReader.ChunkReaderMode;
 import ar.com.hjg.pngj.PngjOutputException;
 import ar.com.hjg.pngj.chunks.ChunkHelper;
 import ar.com.hjg.pngj.chunks.ChunkRaw;
 import ar.com.hjg.pngj.misc.MappedCounterInt;
+import ar.com.hjg.pngj.nosandbox.PngChunkEditor;
 import ar.com.hjg.pngj.samples.ChunkSeqReaderOpaque;
 
 /**
@@ -31,7 +33,7 @@ public class RemoveChunks {
     help.append("    -r: list of chunks to remove, comma separated. Case insensitive \n");
     help.append("    -k: list of ancillary chunks to keep, comma separated. Case insensitive \n");
     help.append("    -q: quiet mode\n");
-    help.append("    -f: faster mode: don't check CRC\n");
+    help.append("    -f: faster mode: don't check CRC, copy the untouched chunks without reading them\n");
     help.append(" With -i accepts paths in the form 'mypath/*' (all pngs in dir) or 'mypath/**' (idem recursive)  \n");
     help.append(" Examples:  \n");
     help.append("   RemoveChunks -rTEXT ori.png dest.png    \n");
@@ -93,6 +95,10 @@ public class RemoveChunks {
 
   public void doitForFile(File file1, File file2) throws Exception {// warning: file1 can be the
                                                                     // same as file2 (in place)
+    if (fastMode) {
+      doitForFileFast(file1, file2);
+      return;
+    }
     File dest = file1.equals(file2) ? new File(file2.getAbsolutePath() + ".tmp_pngj") : file2;
     FileInputStream fin = new FileInputStream(file1);
     FileOutputStream fout = new FileOutputStream(dest);
@@ -119,6 +125,30 @@ public class RemoveChunks {
     }
   }
 
+  private void doitForFileFast(File file1, File file2) {
+    PngChunkEditor editor = new PngChunkEditor(file1);
+    MappedCounterInt removedChunks = new MappedCounterInt();
+    for (ChunkCatalog.Entry e : editor.getEntries()) {
+      if (ChunkHelper.isCritical(e.id) || chunks.contains(e.id.toUpperCase()) == keep)
+        continue;
+      editor.remove(e);
+      removedChunks.add(e.id, 1);
+    }
+    editor.write(file2);
+    if (!quietMode) {
+      StringBuilder sb = new StringBuilder();
+      int r = 0;
+      for (String id : removedChunks.getKeys()) {
+        sb.append(id + ":" + Integer.toString(removedChunks.get(id)) + " ");
+        r += removedChunks.get(id);
+      }
+      if (r == 0)
+        System.out.printf("no chunks removed : %s -> %s\n", file1, file2);
+      else
+        System.out.printf("%d chunks removed (%s): %s -> %s\n", r, sb, file1, file2);
+    }
+  }
+
   public static class ChunkSeqReaderRemoveChunks extends ChunkSeqReaderOpaque {
 
     public boolean checkrc = false;
@@ -3,8 +3,10 @@ package ar.com.hjg.pngj.cli;
 import java.io.File;
 import java.util.List;
 
+import ar.com.hjg.pngj.ChunkCatalog;
 import ar.com.hjg.pngj.IImageLine;
 import ar.com.hjg.pngj.PngReaderByte;
+import ar.com.hjg.pngj.chunks.PngChunkIDAT;
 
 /** see help */
 public class ShowPngInfo {
@@ -22,6 +24,7 @@ public class ShowPngInfo {
     help.append("    -s: size raw pixels \n");
     help.append("    -c: compressed idat size \n");
     help.append("    -d: digest of full raw pixel data and palette    \n");
+    help.append("    -k: chunks (id[length]@offset), without reading their data    \n");
     help.append("  Accepts paths in the form 'mypath/*' (all pngs in dir) or 'mypath/**' (idem recursive)  \n");
 
     CliArgs cli = CliArgs.buildFrom(args, help);
@@ -31,6 +34,7 @@ public class ShowPngInfo {
     me.showFullPixelsDigest = cli.hasOpt("d");
     me.showRawPixelSize = cli.hasOpt("s");
     me.showIdatCompressedSize = cli.hasOpt("c");
+    me.showChunks = cli.hasOpt("k");
     me.listpng = cli.listPngsFromArgs();
     cli.checkNoMoreOpts();
     me.doit();
@@ -43,6 +47,7 @@ public class ShowPngInfo {
   private boolean showFullPixelsDigest;
   private boolean showRawPixelSize;
   private boolean showIdatCompressedSize;
+  private boolean showChunks;
 
   private ShowPngInfo() {}
 
@@ -57,7 +62,7 @@ public class ShowPngInfo {
     try {
       PngReaderByte png = new PngReaderByte(f);
       png.prepareSimpleDigestComputation();
-      if (showIdatCompressedSize || showFullPixelsDigest) {
+      if (showFullPixelsDigest) {
         IImageLine iline;
         while (png.hasMoreRows())
           iline = png.readRow();
@@ -67,10 +72,14 @@ public class ShowPngInfo {
         System.out.printf("%s\t", png.toStringCompact());
       if (showRawPixelSize)
         System.out.printf("%d\t", png.imgInfo.getTotalRawBytes());
+      ChunkCatalog catalog = showIdatCompressedSize || showChunks ? ChunkCatalog.build(f) : null;
       if (showIdatCompressedSize)
-        System.out.printf("%d\t", png.getChunkseq().getIdatBytes());
+        System.out.printf("%d\t", catalog.getTotalLen(PngChunkIDAT.ID));
       if (showFullPixelsDigest)
         System.out.printf("%s\t", png.getSimpleDigestHex());
+      if (showChunks)
+        for (ChunkCatalog.Entry e : catalog.getEntries())
+          System.out.printf("%s ", e);
     } catch (Exception e) {
       System.out.printf("%s: %s\t", BAD_OR_NOT_PNG, e.getMessage());
     }
@@ -0,0 +1,69 @@
+package ar.com.hjg.pngj.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineInt;
+import ar.com.hjg.pngj.PngWriter;
+import ar.com.hjg.pngj.PngjOutputException;
+
+public class AsyncCompressionTest extends PngjTest {
+
+  private static void write(OutputStream os, int queueRows) {
+    ImageInfo imi = new ImageInfo(300, 200, 8, true);
+    PngWriter pngw = new PngWriter(os, imi);
+    pngw.getPixelsWriter().setAsyncCompression(queueRows);
+    ImageLineInt line = new ImageLineInt(imi);
+    Random rand = new Random(1);
+    for (int r = 0; r < imi.rows; r++) {
+      for (int i = 0; i < imi.samplesPerRow; i++)
+        line.getScanline()[i] = (r * 7 + i * (r % 3) + rand.nextInt(8)) & 0xff;
+      pngw.writeRow(line);
+    }
+    pngw.end();
+  }
+
+  @Test
+  public void testSameOutput() {
+    ByteArrayOutputStream bos1 = new ByteArrayOutputStream();
+    write(bos1, 0);
+    for (int queueRows : new int[] {1, 16}) {
+      ByteArrayOutputStream bos2 = new ByteArrayOutputStream();
+      write(bos2, queueRows);
+      TestCase.assertTrue(Arrays.equals(bos1.toByteArray(), bos2.toByteArray()));
+    }
+  }
+
+  @Test
+  public void testDeferredError() {
+    OutputStream os = new OutputStream() { // fails after the first IDAT chunk
+      int n = 0;
+
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        n += len;
+        if (n > 40000)
+          throw new IOException("disk full");
+      }
+    };
+    try {
+      write(os, 4);
+      TestCase.fail("exception expected");
+    } catch (PngjOutputException e) {
+      TestCase.assertTrue(e.getMessage(), e.getMessage().contains("disk full"));
+    }
+  }
+}
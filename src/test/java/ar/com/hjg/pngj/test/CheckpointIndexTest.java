@@ -0,0 +1,139 @@
+package ar.com.hjg.pngj.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineInt;
+import ar.com.hjg.pngj.InflaterJava;
+import ar.com.hjg.pngj.PngCheckpointIndex;
+import ar.com.hjg.pngj.PngReaderSeekable;
+import ar.com.hjg.pngj.PngWriter;
+
+public class CheckpointIndexTest extends PngjTest {
+
+  private static final ImageInfo IMI = new ImageInfo(300, 400, 8, false);
+
+  private static int[][] pixels() {
+    Random rand = new Random(7);
+    int[][] p = new int[IMI.rows][IMI.samplesPerRow];
+    for (int r = 0; r < IMI.rows; r++)
+      for (int i = 0; i < IMI.samplesPerRow; i++)
+        p[r][i] = (r + i / 3 + (i % 3) * 50 + rand.nextInt(8)) & 0xff;
+    return p;
+  }
+
+  private static File writeImage(int[][] pix) throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    PngWriter pngw = new PngWriter(bos, IMI);
+    pngw.getPixelsWriter().setIdatMaxSize(10000);
+    for (int r = 0; r < IMI.rows; r++)
+      pngw.writeRowInt(pix[r]);
+    pngw.end();
+    File f = TestSupport.getTmpFile("checkpoints");
+    FileOutputStream fos = new FileOutputStream(f);
+    fos.write(bos.toByteArray());
+    fos.close();
+    return f;
+  }
+
+  private static byte[] inflateJava(byte[] z, boolean raw, int len, Random rand) throws Exception {
+    InflaterJava inf = new InflaterJava(raw);
+    byte[] res = new byte[len + 10];
+    int in = 0, out = 0;
+    while (!inf.finished()) {
+      if (inf.needsInput()) {
+        TestCase.assertTrue("premature end of input", in < z.length);
+        int n = Math.min(z.length - in, 1 + rand.nextInt(300));
+        inf.setInput(z, in, n);
+        in += n;
+      }
+      out += inf.inflate(res, out, Math.min(res.length - out, 1 + rand.nextInt(5000)));
+    }
+    inf.end();
+    return Arrays.copyOf(res, out);
+  }
+
+  @Test
+  public void testInflaterJava() throws Exception {
+    Random rand = new Random(3);
+    byte[] data = new byte[200000];
+    for (int i = 0; i < data.length; i++)
+      data[i] = (byte) (i < 50000 ? rand.nextInt(256) : (i / 100 + rand.nextInt(i % 7 + 1)));
+    int[][] configs = { {0, Deflater.DEFAULT_STRATEGY}, {1, Deflater.DEFAULT_STRATEGY},
+        {6, Deflater.DEFAULT_STRATEGY}, {9, Deflater.FILTERED}, {6, Deflater.HUFFMAN_ONLY}};
+    for (int[] conf : configs) {
+      for (boolean raw : new boolean[] {false, true}) {
+        Deflater def = new Deflater(conf[0], raw);
+        def.setStrategy(conf[1]);
+        def.setInput(data);
+        def.finish();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        while (!def.finished())
+          bos.write(buf, 0, def.deflate(buf));
+        def.end();
+        byte[] res = inflateJava(bos.toByteArray(), raw, data.length, rand);
+        TestCase.assertTrue("level " + conf[0] + " raw " + raw, Arrays.equals(data, res));
+        // output buffer of exactly the data size: it must finish in one call, as java.util.zip.Inflater
+        InflaterJava inf = new InflaterJava(raw);
+        inf.setInput(bos.toByteArray());
+        res = new byte[data.length];
+        TestCase.assertEquals(data.length, inf.inflate(res));
+        TestCase.assertTrue("not finished, level " + conf[0] + " raw " + raw, inf.finished());
+        TestCase.assertTrue(Arrays.equals(data, res));
+        inf.end();
+        // ByteBuffer methods (Java 11+ in Inflater): must not reach the closed native inflater
+        inf = new InflaterJava(raw);
+        inf.setInput(ByteBuffer.wrap(bos.toByteArray()));
+        ByteBuffer out = ByteBuffer.allocateDirect(data.length);
+        TestCase.assertEquals(data.length, inf.inflate(out));
+        TestCase.assertTrue(inf.finished());
+        out.flip();
+        out.get(res);
+        TestCase.assertTrue(Arrays.equals(data, res));
+        inf.end();
+      }
+    }
+  }
+
+  @Test
+  public void testCheckpointIndex() throws Exception {
+    int[][] pix = pixels();
+    File f = writeImage(pix);
+    PngCheckpointIndex index = PngCheckpointIndex.build(f, 20);
+    TestCase.assertTrue(index.getCheckpoints().size() > 5);
+    // round trip to a sidecar
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    index.writeTo(bos);
+    index = PngCheckpointIndex.readFrom(new ByteArrayInputStream(bos.toByteArray()));
+    PngReaderSeekable pngr = new PngReaderSeekable(f);
+    pngr.setCheckpointIndex(index);
+    TestCase.assertEquals(0, pngr.getRestartEntries().size());
+    int[] rows = {350, 351, 20, 399, 0, 200, 199, 77};
+    for (PngCheckpointIndex.RowCheckpoint cp : index.getCheckpoints())
+      rows = appendRow(rows, cp.row); // starting exactly at each checkpoint
+    for (int r : rows) {
+      int[] sl = ((ImageLineInt) pngr.readRow(r)).getScanline();
+      TestCase.assertTrue("row " + r, Arrays.equals(pix[r], sl));
+    }
+    pngr.end();
+  }
+
+  private static int[] appendRow(int[] rows, int r) {
+    int[] res = Arrays.copyOf(rows, rows.length + 2);
+    res[rows.length] = r;
+    res[rows.length + 1] = 0; // force a backward jump
+    return res;
+  }
+}
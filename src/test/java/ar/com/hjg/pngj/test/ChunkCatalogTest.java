@@ -0,0 +1,106 @@
+package ar.com.hjg.pngj.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import ar.com.hjg.pngj.ChunkCatalog;
+import ar.com.hjg.pngj.ChunkSeqSkipping;
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineInt;
+import ar.com.hjg.pngj.PngHelperInternal;
+import ar.com.hjg.pngj.PngReader;
+import ar.com.hjg.pngj.PngReaderSeekable;
+import ar.com.hjg.pngj.PngWriter;
+import ar.com.hjg.pngj.chunks.ChunkRaw;
+import ar.com.hjg.pngj.chunks.PngChunkIDAT;
+
+public class ChunkCatalogTest extends PngjTest {
+
+  @Test
+  public void testCatalog() {
+    for (File f : TestSupport.getPngsFromDir(TestSupport.getPngTestSuiteDir())) {
+      if (f.getName().startsWith("x"))
+        continue;
+      ChunkCatalog cat = ChunkCatalog.build(f);
+      // compare with a full reading, which checks the CRCs
+      ChunkSeqSkipping cs = new ChunkSeqSkipping(false);
+      cs.feedFromFile(f);
+      List<ChunkRaw> chunks = cs.getChunks();
+      TestCase.assertEquals(f.getName(), chunks.size(), cat.getEntries().size());
+      for (int i = 0; i < chunks.size(); i++) {
+        ChunkCatalog.Entry e = cat.getEntries().get(i);
+        TestCase.assertEquals(chunks.get(i).id, e.id);
+        TestCase.assertEquals(chunks.get(i).getOffset(), e.offset);
+        TestCase.assertEquals(chunks.get(i).len, e.len);
+        TestCase.assertEquals(PngHelperInternal.readInt4fromBytes(chunks.get(i).crcval, 0), e.crc);
+      }
+      TestCase.assertEquals(f.length(), cat.getFileSize());
+      PngReader pngr = new PngReader(f);
+      pngr.readSkippingAllRows();
+      TestCase.assertEquals(pngr.getChunkseq().getIdatBytes(), cat.getTotalLen(PngChunkIDAT.ID));
+      // round trip
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      cat.writeTo(bos);
+      ChunkCatalog cat2 = ChunkCatalog.readFrom(new ByteArrayInputStream(bos.toByteArray()));
+      TestCase.assertEquals(cat.toString(), cat2.toString());
+      for (int i = 0; i < chunks.size(); i++)
+        TestCase.assertEquals(cat.getEntries().get(i).crc, cat2.getEntries().get(i).crc);
+    }
+  }
+
+  @Test
+  public void testHugeChunks() { // offsets are computed as long: no overflow with lengths near 2^31-1
+    int max = Integer.MAX_VALUE;
+    List<ChunkCatalog.Entry> list = new ArrayList<ChunkCatalog.Entry>();
+    list.add(new ChunkCatalog.Entry("IHDR", 8, 13, 0));
+    list.add(new ChunkCatalog.Entry("IDAT", 33, max, 0));
+    list.add(new ChunkCatalog.Entry("IDAT", 33L + max + 12, max, 0));
+    list.add(new ChunkCatalog.Entry("IEND", 33 + 2 * (max + 12L), 0, 0));
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    new ChunkCatalog(list).writeTo(bos);
+    ChunkCatalog cat = ChunkCatalog.readFrom(new ByteArrayInputStream(bos.toByteArray()));
+    for (int i = 0; i < list.size(); i++)
+      TestCase.assertEquals(list.get(i).offset, cat.getEntries().get(i).offset);
+    TestCase.assertEquals(33 + 2 * (max + 12L) + 12, cat.getFileSize());
+    TestCase.assertEquals(2L * max, cat.getTotalLen(PngChunkIDAT.ID));
+  }
+
+  @Test
+  public void testSeekableWithCatalog() throws Exception {
+    ImageInfo imi = new ImageInfo(100, 80, 8, false);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    PngWriter pngw = new PngWriter(bos, imi);
+    pngw.getPixelsWriter().setRestartInterval(10);
+    pngw.getPixelsWriter().setIdatMaxSize(3000);
+    Random rand = new Random(5);
+    int[][] pix = new int[imi.rows][imi.samplesPerRow];
+    for (int r = 0; r < imi.rows; r++) {
+      for (int i = 0; i < imi.samplesPerRow; i++)
+        pix[r][i] = rand.nextInt(256);
+      pngw.writeRowInt(pix[r]);
+    }
+    pngw.end();
+    File f = TestSupport.getTmpFile("catalog");
+    FileOutputStream fos = new FileOutputStream(f);
+    fos.write(bos.toByteArray());
+    fos.close();
+    PngReaderSeekable pngr = new PngReaderSeekable(f);
+    pngr.setChunkCatalog(ChunkCatalog.build(f));
+    TestCase.assertEquals(7, pngr.getRestartEntries().size());
+    for (int r : new int[] {33, 79, 0, 40, 41, 12}) {
+      int[] sl = ((ImageLineInt) pngr.readRow(r)).getScanline();
+      for (int i = 0; i < sl.length; i++)
+        TestCase.assertEquals("row " + r, pix[r][i], sl[i]);
+    }
+    pngr.end();
+  }
+}
@@ -0,0 +1,114 @@
+package ar.com.hjg.pngj.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import ar.com.hjg.pngj.ChunkStreamInflater;
+import ar.com.hjg.pngj.IBytesConsumer;
+import ar.com.hjg.pngj.IChunkStreamHandler;
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.PngReader;
+import ar.com.hjg.pngj.PngWriter;
+import ar.com.hjg.pngj.chunks.ChunkHelper;
+import ar.com.hjg.pngj.chunks.ChunkRaw;
+import ar.com.hjg.pngj.chunks.PngChunkICCP;
+import ar.com.hjg.pngj.chunks.PngChunkITXT;
+import ar.com.hjg.pngj.chunks.PngChunkUNKNOWN;
+
+public class ChunkStreamHandlerTest extends PngjTest {
+
+  private static final ImageInfo IMI = new ImageInfo(10, 5, 8, false);
+
+  private static String bigText(int len) {
+    StringBuilder sb = new StringBuilder();
+    Random r = new Random(1);
+    while (sb.length() < len)
+      sb.append("line ").append(r.nextInt(1000)).append('\n');
+    return sb.toString();
+  }
+
+  /** collects the content fed, by chunk, with the keyword; checks the block size */
+  private static class Collector implements IBytesConsumer {
+    ChunkStreamInflater inflater;
+    List<String> keys = new ArrayList<String>();
+    List<ByteArrayOutputStream> contents = new ArrayList<ByteArrayOutputStream>();
+
+    public int consume(byte[] buf, int offset, int len) {
+      TestCase.assertTrue(len <= 1000);
+      String k = inflater.getChunkId() + ":" + inflater.getKeyword();
+      if (keys.isEmpty() || !keys.get(keys.size() - 1).equals(k) || inflater.getInflatedBytes() == len) {
+        keys.add(k);
+        contents.add(new ByteArrayOutputStream());
+      }
+      contents.get(contents.size() - 1).write(buf, offset, len);
+      return len;
+    }
+  }
+
+  @Test
+  public void testStreamedChunks() {
+    String text1 = bigText(300000);
+    String text2 = bigText(50000);
+    byte[] profile = bigText(100000).getBytes();
+    final byte[] priv = new byte[200000];
+    new Random(2).nextBytes(priv);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    PngWriter pngw = new PngWriter(bos, IMI);
+    PngChunkICCP iccp = new PngChunkICCP(IMI);
+    iccp.setProfileNameAndContent("myprofile", profile);
+    pngw.queueChunk(iccp);
+    pngw.getMetadata().setText("big", text1, true, true); // zTXt
+    ((PngChunkITXT) pngw.getMetadata().setText("utf", text2, false, false)).setCompressed(true);
+    pngw.getMetadata().setText("plain", "uncompressed á", false, false); // iTXt
+    pngw.queueChunk(new PngChunkUNKNOWN("prVt", IMI) {
+      @Override
+      public ChunkRaw createRawChunk() {
+        ChunkRaw c = createEmptyChunk(priv.length, false);
+        c.data = priv;
+        return c;
+      }
+    });
+    for (int r = 0; r < IMI.rows; r++)
+      pngw.writeRowInt(new int[IMI.samplesPerRow]);
+    pngw.end();
+
+    PngReader pngr = new PngReader(new ByteArrayInputStream(bos.toByteArray()));
+    pngr.setSkipChunkMaxSize(1000); // streamed chunks are not affected
+    pngr.setMaxBytesMetadata(1000);
+    Collector col = new Collector();
+    col.inflater = new ChunkStreamInflater(col, 1000);
+    for (String id : new String[] {ChunkHelper.zTXt, ChunkHelper.iTXt, ChunkHelper.iCCP})
+      pngr.setChunkStreamHandler(id, col.inflater);
+    final ByteArrayOutputStream privRead = new ByteArrayOutputStream();
+    pngr.setChunkStreamHandler("prVt", new IChunkStreamHandler() {
+      public void chunkStart(ChunkRaw chunkRaw) {
+        TestCase.assertNull(chunkRaw.data);
+      }
+
+      public void processData(ChunkRaw chunkRaw, int offsetInChunk, byte[] buf, int off, int len) {
+        TestCase.assertEquals(privRead.size(), offsetInChunk);
+        privRead.write(buf, off, len);
+      }
+
+      public void chunkDone(ChunkRaw chunkRaw) {}
+    });
+    pngr.readRows();
+    pngr.end();
+    TestCase.assertTrue(Arrays.equals(priv, privRead.toByteArray()));
+    TestCase.assertEquals("[iCCP:myprofile, zTXt:big, iTXt:utf, iTXt:plain]", col.keys.toString());
+    TestCase.assertTrue(Arrays.equals(profile, col.contents.get(0).toByteArray()));
+    TestCase.assertEquals(text1, new String(col.contents.get(1).toByteArray()));
+    TestCase.assertEquals(text2, new String(col.contents.get(2).toByteArray()));
+    TestCase.assertEquals("uncompressed á", ChunkHelper.toStringUTF8(col.contents.get(3).toByteArray()));
+    // not stored
+    TestCase.assertTrue(pngr.getChunksList().getById(ChunkHelper.zTXt).isEmpty());
+  }
+}
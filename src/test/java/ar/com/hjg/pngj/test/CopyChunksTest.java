@@ -17,6 +17,7 @@ import ar.com.hjg.pngj.chunks.ChunkLoadBehaviour;
 import ar.com.hjg.pngj.chunks.ChunkPredicate;
 import ar.com.hjg.pngj.chunks.ChunksList;
 import ar.com.hjg.pngj.chunks.PngChunk;
+import ar.com.hjg.pngj.chunks.PngChunkTEXT;
 import ar.com.hjg.pngj.chunks.PngChunkTIME;
 
 /**
@@ -238,4 +239,38 @@ public class CopyChunksTest extends PngjTest {
 
   }
 
+  /**
+   * many text chunks (queued and copied through the chunk indexes)
+   */
+  @Test
+  public void testCopyManyTexts() {
+    int n = 5000;
+    File src = TestSupport.getTmpFile("manytexts");
+    PngWriter pngw = TestSupport.prepareFileTmp(src, false);
+    for (int i = 0; i < n; i++)
+      pngw.getMetadata().setText("k" + i, "v" + i, true, false);
+    pngw.getMetadata().setText("k7", "v7b", true, false); // overwrites
+    PngChunk k9 = pngw.getChunksList().getQueuedChunks().remove(8); // k7 was moved to the end
+    TestCase.assertEquals("k9", ((PngChunkTEXT) k9).getKey());
+    TestCase.assertTrue(pngw.getChunksList().getQueuedById(PngChunkTEXT.ID, "k9").isEmpty());
+    TestSupport.endFileTmp(pngw);
+
+    File dest = TestSupport.getTmpFile("manytexts2");
+    PngReader pngr = new PngReader(src);
+    pngw = new PngWriter(dest, pngr.imgInfo, true);
+    pngw.getMetadata().setText("k3", "v3b", true, false); // the copied one is ommited
+    pngw.copyChunksFrom(pngr.getChunksList(), ChunkCopyBehaviour.COPY_ALL);
+    pngw.writeRows(pngr.readRows());
+    pngr.end();
+    pngw.end();
+
+    PngReader pngr2 = new PngReader(dest);
+    pngr2.readSkippingAllRows();
+    TestCase.assertEquals(n - 1, pngr2.getChunksList().getById(PngChunkTEXT.ID).size());
+    TestCase.assertEquals("v3b", pngr2.getMetadata().getTxtForKey("k3"));
+    TestCase.assertEquals("v7b", pngr2.getMetadata().getTxtForKey("k7"));
+    TestCase.assertEquals("", pngr2.getMetadata().getTxtForKey("k9"));
+    TestCase.assertEquals("v" + (n - 1), pngr2.getMetadata().getTxtForKey("k" + (n - 1)));
+  }
+
 }
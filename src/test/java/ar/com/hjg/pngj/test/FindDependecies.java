@@ -52,8 +52,6 @@ class FindDependecies {
   private static Set<String> getReferencedClassesFromFile(File file) throws IOException {
     Map<Integer, String> strings = new HashMap<Integer, String>();
     Set<Integer> classes = new HashSet<Integer>();
-    int indexCorrection = 0; // for correcting indexes to constant
-    // pools with long and double entries
     DataInputStream stream =
         new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
     try {
@@ -70,7 +68,7 @@ class FindDependecies {
             break;
           case 7: // Class
             int nameIndex = readU2(stream);
-            classes.add(nameIndex - indexCorrection);
+            classes.add(nameIndex);
             break;
           case 8: // String
             readU2(stream);
@@ -83,7 +81,7 @@ class FindDependecies {
           case 6: // Double
             readU4(stream);
             readU4(stream);
-            indexCorrection++;
+            n++; // takes two entries
             break;
           case 9: // Fieldref
           case 10: // Methodref
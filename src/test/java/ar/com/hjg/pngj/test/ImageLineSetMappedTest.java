@@ -0,0 +1,70 @@
+package ar.com.hjg.pngj.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import ar.com.hjg.pngj.IImageLine;
+import ar.com.hjg.pngj.IImageLineSet;
+import ar.com.hjg.pngj.IImageLineSetFactory;
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineInt;
+import ar.com.hjg.pngj.PngReader;
+import ar.com.hjg.pngj.PngWriter;
+import ar.com.hjg.pngj.nosandbox.ImageLineMapped;
+import ar.com.hjg.pngj.nosandbox.ImageLineSetMapped;
+
+public class ImageLineSetMappedTest extends PngjTest {
+
+  /** small segments, to test several of them */
+  private static IImageLineSetFactory<ImageLineMapped> factory(final File tmpDir, final int segmentSize) {
+    return new IImageLineSetFactory<ImageLineMapped>() {
+      public IImageLineSet<ImageLineMapped> create(ImageInfo iminfo, boolean singleCursor, int nlines, int noffset,
+          int step) {
+        return new ImageLineSetMapped(iminfo, singleCursor, nlines, noffset, step, tmpDir, segmentSize);
+      }
+    };
+  }
+
+  @Test
+  public void testReadWriteMapped() {
+    File tmpDir = TestSupport.getTempDir();
+    for (File f : TestSupport.getPngsFromDir(TestSupport.getPngTestSuiteDir())) {
+      if (f.getName().startsWith("x"))
+        continue;
+      PngReader pngr = new PngReader(f);
+      IImageLineSet<? extends IImageLine> lines = pngr.readRows();
+      pngr.end();
+      for (File dir : new File[] {tmpDir, null}) {
+        PngReader pngr2 = new PngReader(f);
+        pngr2.setLineSetFactory(factory(dir, 100));
+        ImageLineSetMapped mapped = (ImageLineSetMapped) pngr2.readRows();
+        pngr2.end();
+        TestCase.assertTrue(mapped.getSegmentsAllocated() > (pngr.imgInfo.bytesPerRow * pngr.imgInfo.rows > 200 ? 1
+            : 0));
+        for (int r = 0; r < pngr.imgInfo.rows; r++) {
+          ImageLineInt l1 = (ImageLineInt) lines.getImageLine(r);
+          ImageLineMapped l2 = mapped.getImageLine(r);
+          for (int i = 0; i < l1.getSize(); i++)
+            TestCase.assertEquals(f.getName() + " row " + r, l1.getScanline()[i], l2.getElem(i));
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PngWriter pngw = new PngWriter(bos, pngr.imgInfo);
+        pngw.copyChunksFrom(pngr2.getChunksList());
+        pngw.writeRows(mapped);
+        pngw.end();
+        mapped.close();
+        PngReader pngr3 = new PngReader(new ByteArrayInputStream(bos.toByteArray()));
+        for (int r = 0; r < pngr.imgInfo.rows; r++)
+          TestCase.assertTrue(f.getName() + " rewritten row " + r, Arrays.equals(
+              ((ImageLineInt) lines.getImageLine(r)).getScanline(), ((ImageLineInt) pngr3.readRow(r)).getScanline()));
+        pngr3.end();
+      }
+    }
+  }
+}
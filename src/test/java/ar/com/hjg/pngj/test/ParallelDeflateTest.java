@@ -0,0 +1,114 @@
+package ar.com.hjg.pngj.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import ar.com.hjg.pngj.IDatChunkWriter;
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineInt;
+import ar.com.hjg.pngj.PngHelperInternal;
+import ar.com.hjg.pngj.PngReader;
+import ar.com.hjg.pngj.PngWriter;
+import ar.com.hjg.pngj.pixels.CompressorStreamDeflater;
+import ar.com.hjg.pngj.pixels.CompressorStreamParallelDeflater;
+
+public class ParallelDeflateTest extends PngjTest {
+
+  private static byte[] createData(int len) { // something compressible
+    byte[] b = new byte[len];
+    Random r = new Random(len);
+    for (int i = 1; i < len; i++)
+      b[i] = (byte) (i < 1000 || r.nextInt(20) == 0 ? r.nextInt(16) : b[i - 400 + (b[i - 1] & 0xf)]);
+    return b;
+  }
+
+  /** concatenates the data of the chunks written by a IDatChunkWriter */
+  private static byte[] idatData(byte[] chunks) {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    for (int off = 0; off < chunks.length;) {
+      int len = PngHelperInternal.readInt4fromBytes(chunks, off);
+      bos.write(chunks, off + 8, len);
+      off += len + 12;
+    }
+    return bos.toByteArray();
+  }
+
+  private static byte[] inflate(byte[] z, int len) throws Exception {
+    Inflater inf = new Inflater();
+    inf.setInput(z);
+    byte[] res = new byte[len];
+    int n = inf.inflate(res);
+    TestCase.assertTrue(inf.finished()); // this also checks the adler32
+    TestCase.assertEquals(len, n);
+    inf.end();
+    return res;
+  }
+
+  private static byte[] compress(byte[] data, int blockSize, boolean parallel) {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    IDatChunkWriter idatw = new IDatChunkWriter(bos);
+    int rowlen = 1000;
+    if (parallel) {
+      CompressorStreamParallelDeflater cs =
+          new CompressorStreamParallelDeflater(idatw, rowlen, data.length, 6,
+              Deflater.DEFAULT_STRATEGY, null, blockSize);
+      for (int i = 0; i < data.length; i += rowlen)
+        cs.write(data, i, Math.min(rowlen, data.length - i));
+      cs.close();
+    } else {
+      CompressorStreamDeflater cs = new CompressorStreamDeflater(idatw, rowlen, data.length);
+      for (int i = 0; i < data.length; i += rowlen)
+        cs.write(data, i, Math.min(rowlen, data.length - i));
+      cs.close();
+    }
+    return idatData(bos.toByteArray());
+  }
+
+  @Test
+  public void testValidZlib() throws Exception {
+    byte[] data = createData(600000);
+    for (int blockSize : new int[] {1500, 40000, 0}) {
+      byte[] z = compress(data, blockSize, true);
+      TestCase.assertTrue(Arrays.equals(data, inflate(z, data.length)));
+    }
+  }
+
+  @Test
+  public void testCompressionRatio() throws Exception {
+    byte[] data = createData(600000);
+    int zlen1 = compress(data, 0, false).length;
+    int zlen2 = compress(data, 0, true).length;
+    TestCase.assertTrue("sizes: " + zlen1 + " " + zlen2, zlen2 < zlen1 * 1.02);
+  }
+
+  @Test
+  public void testWriteImage() {
+    File f = TestSupport.getTmpFile("parallel");
+    ImageInfo imi = new ImageInfo(400, 300, 8, false);
+    PngWriter pngw = new PngWriter(f, imi, true);
+    pngw.getPixelsWriter().setParallelDeflate(true);
+    ImageLineInt line = new ImageLineInt(imi);
+    for (int r = 0; r < imi.rows; r++) {
+      for (int i = 0; i < imi.samplesPerRow; i++)
+        line.getScanline()[i] = (r * 3 + i * (r % 5)) & 0xff;
+      pngw.writeRow(line);
+    }
+    pngw.end();
+    PngReader pngr = new PngReader(f);
+    for (int r = 0; r < imi.rows; r++) {
+      int[] sl = ((ImageLineInt) pngr.readRow(r)).getScanline();
+      for (int i = 0; i < imi.samplesPerRow; i++)
+        TestCase.assertEquals((r * 3 + i * (r % 5)) & 0xff, sl[i]);
+    }
+    pngr.end();
+  }
+
+}
@@ -0,0 +1,91 @@
+package ar.com.hjg.pngj.test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import ar.com.hjg.pngj.PngReader;
+import ar.com.hjg.pngj.PngjException;
+import ar.com.hjg.pngj.chunks.PngChunkGAMA;
+import ar.com.hjg.pngj.chunks.PngChunkIDAT;
+import ar.com.hjg.pngj.chunks.PngChunkPHYS;
+import ar.com.hjg.pngj.chunks.PngChunkTEXT;
+import ar.com.hjg.pngj.chunks.PngChunkTIME;
+import ar.com.hjg.pngj.nosandbox.PngChunkEditor;
+
+public class PngChunkEditorTest extends PngjTest {
+
+  private static String digest(File f) {
+    PngReader pngr = new PngReader(f);
+    pngr.prepareSimpleDigestComputation();
+    pngr.readRows();
+    pngr.end();
+    return pngr.getSimpleDigestHex();
+  }
+
+  @Test
+  public void testEdit() {
+    File ori = TestSupport.absFile(TestSupport.PNG_TEST_STRIPES2);
+    File dest = TestSupport.getTmpFile("chunkeditor");
+    PngChunkEditor editor = new PngChunkEditor(ori);
+    TestCase.assertEquals(2, editor.remove(PngChunkTEXT.ID));
+    TestCase.assertEquals(1, editor.remove(PngChunkTIME.ID));
+    PngChunkPHYS phys = new PngChunkPHYS(editor.getImageInfo());
+    phys.setAsDpi(300);
+    editor.replace(phys);
+    PngChunkGAMA gama = new PngChunkGAMA(editor.getImageInfo());
+    gama.setGamma(0.45);
+    editor.add(gama);
+    editor.add(new PngChunkTEXT(editor.getImageInfo(), "k", "v"));
+    PngChunkTEXT t2 = new PngChunkTEXT(editor.getImageInfo(), "a", "bc");
+    t2.setPriority(true);
+    editor.add(t2);
+    editor.write(dest);
+    // this checks the CRCs
+    TestCase.assertEquals("IHDR[13] gAMA[4] pHYs[9] tEXt[4] IDAT[2000] IDAT[2000] IDAT[2000] IDAT[610] tEXt[3] IEND[0] ",
+        TestSupport.getChunksSummary(dest.toString(), false));
+    TestCase.assertEquals(digest(ori), digest(dest));
+    PngReader pngr = new PngReader(dest);
+    pngr.readSkippingAllRows();
+    TestCase.assertEquals(300, pngr.getMetadata().getDpi()[0], 0.5);
+    TestCase.assertEquals("v", pngr.getMetadata().getTxtForKey("k"));
+    TestCase.assertEquals("bc", pngr.getMetadata().getTxtForKey("a"));
+    // in place, back to no ancillary chunks
+    editor = new PngChunkEditor(dest);
+    for (String id : new String[] {PngChunkGAMA.ID, PngChunkPHYS.ID, PngChunkTEXT.ID})
+      editor.remove(id);
+    editor.write(dest);
+    TestCase.assertEquals("IHDR[13] IDAT[2000] IDAT[2000] IDAT[2000] IDAT[610] IEND[0] ",
+        TestSupport.getChunksSummary(dest.toString(), false));
+    TestCase.assertEquals(digest(ori), digest(dest));
+  }
+
+  @Test
+  public void testFailedInPlaceKeepsOriginal() throws Exception { // no temporary file left behind
+    File f = TestSupport.getTmpFile("chunkeditorfail");
+    Files.copy(TestSupport.absFile(TestSupport.PNG_TEST_STRIPES2).toPath(), f.toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+    PngChunkEditor editor = new PngChunkEditor(f);
+    editor.remove(PngChunkTEXT.ID);
+    RandomAccessFile raf = new RandomAccessFile(f, "rw");
+    raf.setLength(1000); // truncated after the catalog was read: the write fails
+    raf.close();
+    try {
+      editor.write(f);
+      TestCase.fail("truncated source not detected");
+    } catch (PngjException e) {
+    }
+    TestCase.assertEquals(1000, f.length());
+    TestCase.assertFalse(new File(f.getAbsolutePath() + ".tmp_pngj").exists());
+  }
+
+  @Test(expected = PngjException.class)
+  public void testCriticalNotRemoved() {
+    new PngChunkEditor(TestSupport.absFile(TestSupport.PNG_TEST_STRIPES2)).remove(PngChunkIDAT.ID);
+  }
+}
@@ -0,0 +1,53 @@
+package ar.com.hjg.pngj.test;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import ar.com.hjg.pngj.PngReader;
+import ar.com.hjg.pngj.chunks.ChunksList;
+import ar.com.hjg.pngj.nosandbox.PngReaderMapped;
+
+public class PngReaderMappedTest extends PngjTest {
+
+  private static String digest(PngReader pngr) {
+    pngr.prepareSimpleDigestComputation();
+    pngr.readRows();
+    pngr.end();
+    return pngr.getSimpleDigestHex();
+  }
+
+  @Test
+  public void testReadMapped() {
+    for (File f : TestSupport.getPngsFromDir(TestSupport.getPngTestSuiteDir())) {
+      if (f.getName().startsWith("x"))
+        continue;
+      String d0 = digest(new PngReader(f));
+      TestCase.assertEquals(f.getName(), d0, digest(new PngReaderMapped(f)));
+      // small windows, so that chunks (and the skips) span several of them
+      TestCase.assertEquals(f.getName(), d0, digest(new PngReaderMapped(f, 37)));
+    }
+  }
+
+  @Test
+  public void testMetadataOnly() {
+    for (File f : TestSupport.getPngsFromDir(TestSupport.getPngTestSuiteDir())) {
+      if (f.getName().startsWith("x"))
+        continue;
+      PngReader pngr = new PngReader(f);
+      pngr.readSkippingAllRows();
+      for (int ws : new int[] {50, 1 << 20}) {
+        PngReader pngr2 = new PngReaderMapped(f, ws);
+        pngr2.readSkippingAllRows();
+        TestCase.assertTrue(pngr2.getChunkseq().isDone());
+        TestCase.assertEquals(f.getName(), chunks(pngr.getChunksList()), chunks(pngr2.getChunksList()));
+      }
+    }
+  }
+
+  private static String chunks(ChunksList cl) {
+    return TestSupport.showChunks(cl.getChunks());
+  }
+}
@@ -0,0 +1,131 @@
+package ar.com.hjg.pngj.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import ar.com.hjg.pngj.IImageLine;
+import ar.com.hjg.pngj.IImageLineSet;
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineByte;
+import ar.com.hjg.pngj.ImageLineSetDefault;
+import ar.com.hjg.pngj.PngReader;
+import ar.com.hjg.pngj.PngReaderPipelined;
+
+/**
+ * Same as {@link SuiteCrcsByteTest}, but with the pipelined reader
+ */
+public class PngReaderPipelinedTest extends SuiteCrcsByteTest {
+
+  @Override
+  protected long calcCrc(String file) {
+    File f = new File(TestSupport.getPngTestSuiteDir(), file);
+    PngReaderPipelined png = new PngReaderPipelined(f);
+    png.setLineSetFactory(ImageLineSetDefault.getFactoryByte());
+    png.setPipelineDepth(3);
+    CRC32 crc = new CRC32();
+    for (int i = 0; i < png.imgInfo.rows; i++) {
+      ImageLineByte line = (ImageLineByte) png.readRow(i);
+      for (int j = 0; j < line.getSize(); j++) {
+        int x = line.getScanline()[j];
+        crc.update(x);
+      }
+    }
+    png.end();
+    return crc.getValue();
+  }
+
+  @Test
+  public void testSameAsPngReader() {
+    File f = TestSupport.absFile("test/testg1.png");
+    PngReader png1 = new PngReader(f);
+    IImageLineSet<? extends IImageLine> lines1 = png1.readRows();
+    png1.end();
+    PngReaderPipelined png2 = new PngReaderPipelined(f);
+    IImageLineSet<? extends IImageLine> lines2 = png2.readRows(-1, 1, 3);
+    png2.end();
+    TestCase.assertEquals((png1.imgInfo.rows - 1) / 3, lines2.size());
+    for (int i = 0, r = 1; i < lines2.size(); i++, r += 3)
+      TestCase.assertEquals(TestSupport.showLine(lines1.getImageLine(r)),
+          TestSupport.showLine(lines2.getImageLine(r)));
+  }
+
+  @Test
+  public void testAbort() { // must not hang
+    File f = new File(TestSupport.getPngTestSuiteDir(), "basn6a16.png");
+    PngReaderPipelined png = new PngReaderPipelined(f);
+    png.setPipelineDepth(1);
+    png.readRow(2);
+    png.end();
+    TestCase.assertNotNull(png.getMetadata());
+  }
+
+  @Test(timeout = 10000)
+  public void testAbortBlockedStream() { // the inflater is stuck in read(): end() closes the stream to wake it up
+    byte[] data = TestSupport.createPngWithTextAfterIdat(new ImageInfo(500, 500, 8, false), 8192);
+    StallingInputStream is = new StallingInputStream(data, 4000); // some rows, then silence
+    PngReaderPipelined png = new PngReaderPipelined(is);
+    TestCase.assertEquals(1, png.readRows(1, 0, 1).size());
+    png.end();
+    TestCase.assertTrue(is.closed);
+  }
+
+  @Test(timeout = 10000)
+  public void testAbortBlockedStreamNotClosed() { // not our stream: end() must return anyway, leaving it open
+    byte[] data = TestSupport.createPngWithTextAfterIdat(new ImageInfo(500, 500, 8, false), 8192);
+    StallingInputStream is = new StallingInputStream(data, 4000); // some rows, then silence
+    PngReaderPipelined png = new PngReaderPipelined(is, false);
+    png.readRow(0);
+    png.end();
+    TestCase.assertFalse(is.closed);
+    is.close(); // releases the inflater thread
+  }
+
+  /** serves the first bytes, then blocks till closed (ignoring interrupts), as a socket with a silent peer */
+  static class StallingInputStream extends InputStream {
+    private final byte[] data;
+    private final int stallAt;
+    private int pos = 0;
+    volatile boolean closed = false;
+
+    StallingInputStream(byte[] data, int stallAt) {
+      this.data = data;
+      this.stallAt = stallAt;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len) throws IOException {
+      while (pos >= stallAt && !closed) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          // as a socket read: not interruptible
+        }
+      }
+      if (closed)
+        throw new IOException("closed");
+      int n = Math.min(len, stallAt - pos);
+      System.arraycopy(data, pos, b, off, n);
+      pos += n;
+      return n;
+    }
+
+    @Override
+    public synchronized void close() {
+      closed = true;
+      notifyAll();
+    }
+  }
+
+}
@@ -1,15 +1,40 @@
 package ar.com.hjg.pngj.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
 import junit.framework.TestCase;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import ar.com.hjg.pngj.ChunkSeqReaderPng;
+import ar.com.hjg.pngj.Deinterlacer;
 import ar.com.hjg.pngj.IImageLine;
+import ar.com.hjg.pngj.IImageLineArray;
 import ar.com.hjg.pngj.IImageLineSet;
+import ar.com.hjg.pngj.IImageLineSetFactory;
+import ar.com.hjg.pngj.IInterlacedPassListener;
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineByte;
+import ar.com.hjg.pngj.ImageLineHelper;
 import ar.com.hjg.pngj.ImageLineInt;
+import ar.com.hjg.pngj.ImageLineSetDefault;
+import ar.com.hjg.pngj.PngHelperInternal;
 import ar.com.hjg.pngj.PngReader;
 import ar.com.hjg.pngj.PngReaderByte;
+import ar.com.hjg.pngj.PngWriter;
+import ar.com.hjg.pngj.PngjException;
+import ar.com.hjg.pngj.chunks.ChunkHelper;
+import ar.com.hjg.pngj.chunks.PngChunk;
 
 public class PngReaderTest extends PngjTest {
 
@@ -167,6 +192,363 @@ public class PngReaderTest extends PngjTest {
     }
   }
 
+  @Test
+  public void testBlockInflation() { // same pixels with block mode, even with tiny blocks and tiny idat chunks
+    for (File f : TestSupport.getPngsFromDir(TestSupport.getPngTestSuiteDir())) {
+      if (f.getName().startsWith("x"))
+        continue; // bad images
+      String d0 = readWithBlockLen(f, 0);
+      TestCase.assertEquals(f.getName(), d0, readWithBlockLen(f, 7));
+      TestCase.assertEquals(f.getName(), d0, readWithBlockLen(f, 65536));
+    }
+  }
+
+  @Test
+  public void testReadRowsFused() { // 8 bits ImageLineByte are unfiltered directly into the lines
+    for (File f : TestSupport.getPngsFromDir(TestSupport.getPngTestSuiteDir())) {
+      if (f.getName().startsWith("x"))
+        continue;
+      PngReaderByte pngr = new PngReaderByte(f);
+      pngr.prepareSimpleDigestComputation();
+      IImageLineSet<? extends IImageLine> lines = pngr.readRows();
+      pngr.end();
+      String digest = pngr.getSimpleDigestHex();
+      TestCase.assertEquals(f.getName(), readWithBlockLen(f, 0), digest);
+      PngReaderByte pngr2 = new PngReaderByte(f);
+      IImageLineSet<? extends IImageLine> odd = pngr2.imgInfo.rows > 2 ? pngr2.readRows(-1, 1, 2) : lines;
+      pngr2.end();
+      pngr2 = new PngReaderByte(f);
+      for (int r = 0; r < pngr2.imgInfo.rows; r++) {
+        ImageLineByte line = (ImageLineByte) pngr2.readRow(r);
+        TestCase.assertTrue(f.getName() + " row " + r,
+            Arrays.equals(line.getScanline(), ((ImageLineByte) lines.getImageLine(r)).getScanline()));
+        if (odd.hasImageLine(r))
+          TestCase.assertTrue(f.getName() + " row " + r,
+              Arrays.equals(line.getScanline(), ((ImageLineByte) odd.getImageLine(r)).getScanline()));
+      }
+      pngr2.end();
+    }
+  }
+
+  @Test
+  public void testReadShortAndPacked() { // same samples as ImageLineInt, also for interlaced and packed formats
+    for (File f : TestSupport.getPngsFromDir(TestSupport.getPngTestSuiteDir())) {
+      if (f.getName().startsWith("x"))
+        continue;
+      PngReader pngr = new PngReader(f);
+      IImageLineSet<? extends IImageLine> lines = pngr.readRows();
+      pngr.end();
+      IImageLineSetFactory<?>[] factories =
+          {ImageLineSetDefault.getFactoryShort(), ImageLineSetDefault.getFactoryPacked()};
+      for (IImageLineSetFactory<?> factory : factories) {
+        PngReader pngr2 = new PngReader(f);
+        pngr2.setLineSetFactory(factory);
+        IImageLineSet<? extends IImageLine> lines2 = pngr2.readRows();
+        pngr2.end();
+        for (int r = 0; r < pngr.imgInfo.rows; r++) {
+          ImageLineInt l1 = (ImageLineInt) lines.getImageLine(r);
+          IImageLineArray l2 = (IImageLineArray) lines2.getImageLine(r);
+          TestCase.assertEquals(l1.getSize(), l2.getSize());
+          for (int i = 0; i < l1.getSize(); i++)
+            TestCase.assertEquals(f.getName() + " " + l2.getClass().getSimpleName() + " row " + r,
+                l1.getScanline()[i], l2.getElem(i));
+        }
+        // and back
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        PngWriter pngw = new PngWriter(bos, pngr.imgInfo);
+        pngw.copyChunksFrom(pngr2.getChunksList());
+        pngw.writeRows(lines2);
+        pngw.end();
+        PngReader pngr3 = new PngReader(new ByteArrayInputStream(bos.toByteArray()));
+        for (int r = 0; r < pngr.imgInfo.rows; r++)
+          TestCase.assertTrue(f.getName() + " rewritten row " + r, Arrays.equals(
+              ((ImageLineInt) lines.getImageLine(r)).getScanline(), ((ImageLineInt) pngr3.readRow(r)).getScanline()));
+        pngr3.end();
+      }
+    }
+  }
+
+  @Test
+  public void testPixelRGB8ShortAndPacked() { // 16 bits samples are reduced to 8 bits, as in ImageLineByte
+    for (String name : new String[] {"basn2c16.png", "basn6a16.png"}) {
+      File f = new File(TestSupport.getPngTestSuiteDir(), name);
+      PngReaderByte pngr = new PngReaderByte(f);
+      IImageLineSet<? extends IImageLine> lines = pngr.readRows();
+      pngr.end();
+      boolean alpha = pngr.imgInfo.alpha;
+      IImageLineSetFactory<?>[] factories =
+          {ImageLineSetDefault.getFactoryShort(), ImageLineSetDefault.getFactoryPacked()};
+      for (IImageLineSetFactory<?> factory : factories) {
+        PngReader pngr2 = new PngReader(f);
+        pngr2.setLineSetFactory(factory);
+        IImageLineSet<? extends IImageLine> lines2 = pngr2.readRows();
+        pngr2.end();
+        for (int r = 0; r < pngr.imgInfo.rows; r++) {
+          IImageLine l1 = lines.getImageLine(r), l2 = lines2.getImageLine(r);
+          for (int c = 0; c < pngr.imgInfo.cols; c++)
+            TestCase.assertEquals(name + " " + l2.getClass().getSimpleName() + " row " + r + " col " + c,
+                alpha ? ImageLineHelper.getPixelARGB8(l1, c) : ImageLineHelper.getPixelRGB8(l1, c),
+                alpha ? ImageLineHelper.getPixelARGB8(l2, c) : ImageLineHelper.getPixelRGB8(l2, c));
+        }
+      }
+    }
+  }
+
+  @Test(expected = PngjException.class)
+  public void testScaleUpPackedFails() { // no room to scale up packed samples in place
+    PngReader pngr = new PngReader(new File(TestSupport.getPngTestSuiteDir(), "basn0g01.png"));
+    pngr.setLineSetFactory(ImageLineSetDefault.getFactoryPacked());
+    IImageLineArray line = (IImageLineArray) pngr.readRow();
+    pngr.end();
+    ImageLineHelper.scaleUp(line);
+  }
+
+  @Test
+  public void testReadFromMemory() throws Exception { // byte[], ByteBuffer (heap and direct) and channel sources
+    for (File f : TestSupport.getPngsFromDir(TestSupport.getPngTestSuiteDir())) {
+      if (f.getName().startsWith("x"))
+        continue;
+      String d0 = readWithBlockLen(f, 0);
+      byte[] png = readFile(f);
+      ByteBuffer direct = ByteBuffer.allocateDirect(png.length);
+      direct.put(png).flip();
+      byte[] padded = new byte[png.length + 10];
+      System.arraycopy(png, 0, padded, 5, png.length);
+      PngReader[] readers =
+          {new PngReader(png), new PngReader(padded, 5, png.length), new PngReader(ByteBuffer.wrap(png)),
+              new PngReader(direct), new PngReader(Channels.newChannel(new ByteArrayInputStream(png)), true)};
+      for (PngReader pngr : readers) {
+        pngr.prepareSimpleDigestComputation();
+        pngr.readRows();
+        pngr.end();
+        TestCase.assertEquals(f.getName(), d0, pngr.getSimpleDigestHex());
+      }
+      // end without reading the rows: the IDAT data is skipped
+      PngReader pngr = new PngReader(ByteBuffer.wrap(png));
+      pngr.readSkippingAllRows();
+      TestCase.assertTrue(pngr.getChunkseq().isDone());
+      // callback mode, fed from a direct buffer
+      ChunkSeqReaderPng cs = new ChunkSeqReaderPng(true);
+      direct.rewind();
+      TestCase.assertTrue(cs.feedAll(direct));
+      TestCase.assertTrue(f.getName(), cs.isDone());
+      cs.close();
+    }
+  }
+
+  private static byte[] readFile(File f) throws IOException {
+    InputStream is = new FileInputStream(f);
+    try {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      for (int n; (n = is.read(buf)) > 0;)
+        bos.write(buf, 0, n);
+      return bos.toByteArray();
+    } finally {
+      is.close();
+    }
+  }
+
+  private String readWithBlockLen(File f, int blockLen) {
+    PngReader pngr = new PngReader(f);
+    pngr.setInflateBlockLen(blockLen);
+    pngr.prepareSimpleDigestComputation();
+    pngr.readRows();
+    pngr.end();
+    return pngr.getSimpleDigestHex();
+  }
+
+  @Test
+  public void testReadRegion() { // same pixels as cropping a full read, also for interlaced
+    for (File f : TestSupport.getPngsFromDir(TestSupport.getPngTestSuiteDir())) {
+      if (f.getName().startsWith("x"))
+        continue; // bad images
+      PngReader pngr = new PngReader(f);
+      IImageLineSet<? extends IImageLine> all = pngr.readRows();
+      pngr.end();
+      int cols = pngr.imgInfo.cols, rows = pngr.imgInfo.rows, ch = pngr.imgInfo.channels;
+      int[][] regions = { {0, 0, cols, rows}, {cols / 3, rows / 4, cols / 2 + 1, rows / 3 + 1},
+          {cols - 1, rows - 1, 1, 1}, {1, 0, cols - 1, Math.min(rows, 2)}};
+      for (int[] reg : regions) {
+        if (reg[2] < 1)
+          continue;
+        pngr = new PngReader(f);
+        IImageLineSet<? extends IImageLine> region = pngr.readRegion(reg[0], reg[1], reg[2], reg[3]);
+        pngr.end();
+        for (int r = 0; r < reg[3]; r++) {
+          int[] sl1 = ((ImageLineInt) all.getImageLine(r + reg[1])).getScanline();
+          int[] sl2 = ((ImageLineInt) region.getImageLine(r)).getScanline();
+          TestCase.assertEquals(reg[2] * ch, sl2.length);
+          for (int i = 0; i < sl2.length; i++)
+            TestCase.assertEquals(f.getName() + " row " + r, sl1[i + reg[0] * ch], sl2[i]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testReadRegionSkipsPixelData() {
+    byte[] png = TestSupport.createPngWithTextAfterIdat(new ImageInfo(200, 300, 8, false), 4000);
+    TestSupport.CountingInputStream is = new TestSupport.CountingInputStream(png, false);
+    PngReader pngr = new PngReader(is);
+    IImageLineSet<? extends IImageLine> region = pngr.readRegion(10, 5, 20, 10);
+    TestCase.assertEquals(20 * 3, ((ImageLineInt) region.getImageLine(9)).getScanline().length);
+    pngr.end();
+    TestCase.assertEquals("idat", pngr.getMetadata().getTxtForKey("after"));
+    TestCase.assertTrue("read " + is.bytesRead + " of " + png.length, is.bytesRead < png.length / 5);
+  }
+
+  @Test
+  public void testReadRegionUnseekable() { // a stream that cannot skip (eg, a pipe): the data is read and discarded
+    byte[] png = TestSupport.createPngWithTextAfterIdat(new ImageInfo(200, 300, 8, false), 4000);
+    PngReader pngr = new PngReader(new TestSupport.CountingInputStream(png, true));
+    pngr.readRegion(10, 5, 20, 10);
+    pngr.end();
+    TestCase.assertEquals("idat", pngr.getMetadata().getTxtForKey("after"));
+    TestCase.assertEquals(png.length, pngr.getChunkseq().getBytesCount());
+  }
+
+  @Test
+  public void testReadSkippingAllRowsSeeks() { // the skipped IDAT data is not read, the metadata after it is
+    byte[] png = TestSupport.createPngWithTextAfterIdat(new ImageInfo(300, 300, 8, false), 20000);
+    TestSupport.CountingInputStream is = new TestSupport.CountingInputStream(png, false);
+    PngReader pngr = new PngReader(is);
+    pngr.readSkippingAllRows();
+    TestCase.assertEquals("idat", pngr.getMetadata().getTxtForKey("after"));
+    TestCase.assertEquals(png.length, pngr.getChunkseq().getBytesCount());
+    TestCase.assertTrue("read " + is.bytesRead + " of " + png.length, is.bytesRead < 20000);
+  }
+
+  @Test
+  public void testReadSkippingAllRowsUnseekable() {
+    byte[] png = TestSupport.createPngWithTextAfterIdat(new ImageInfo(300, 300, 8, false), 20000);
+    TestSupport.CountingInputStream is = new TestSupport.CountingInputStream(png, true);
+    PngReader pngr = new PngReader(is);
+    pngr.readSkippingAllRows();
+    TestCase.assertEquals("idat", pngr.getMetadata().getTxtForKey("after"));
+    TestCase.assertEquals(png.length, is.bytesRead);
+  }
+
+  @Test
+  public void testReadSkippingAllRowsFileChannel() throws Exception { // the channel is seeked
+    byte[] png = TestSupport.createPngWithTextAfterIdat(new ImageInfo(300, 300, 8, false), 20000);
+    File f = TestSupport.getTmpFile("skipchannel");
+    FileOutputStream fos = new FileOutputStream(f);
+    fos.write(png);
+    fos.close();
+    FileInputStream fis = new FileInputStream(f);
+    PngReader pngr = new PngReader(fis.getChannel(), true);
+    pngr.readSkippingAllRows();
+    TestCase.assertEquals("idat", pngr.getMetadata().getTxtForKey("after"));
+    TestCase.assertEquals(png.length, pngr.getChunkseq().getBytesCount());
+  }
+
+  @Test
+  public void testReadScaled() { // box average, compared with a naive computation
+    ImageInfo[] imis = {new ImageInfo(50, 37, 8, true), new ImageInfo(31, 20, 16, false, true, false),
+        new ImageInfo(45, 13, 2, false, true, false)};
+    for (ImageInfo imi : imis) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      PngWriter pngw = new PngWriter(bos, imi);
+      for (int r = 0; r < imi.rows; r++)
+        pngw.writeRow(TestSupport.generateNoiseLine(imi));
+      pngw.end();
+      PngReader pngr = new PngReader(new ByteArrayInputStream(bos.toByteArray()));
+      IImageLineSet<? extends IImageLine> all = pngr.readRows();
+      pngr.end();
+      int w = 7, h = 5, ch = imi.channels;
+      pngr = new PngReader(new ByteArrayInputStream(bos.toByteArray()));
+      IImageLineSet<? extends IImageLine> scaled = pngr.readScaled(w, h);
+      pngr.end();
+      for (int r2 = 0; r2 < h; r2++) {
+        int[] sl2 = ((ImageLineInt) scaled.getImageLine(r2)).getScanline();
+        for (int c2 = 0; c2 < w; c2++) {
+          for (int k = 0; k < ch; k++) {
+            long sum = 0, n = 0;
+            for (int r = 0; r < imi.rows; r++) {
+              for (int c = 0; c < imi.cols; c++) {
+                if (r * h / imi.rows == r2 && c * w / imi.cols == c2) {
+                  sum += ((ImageLineInt) all.getImageLine(r)).getScanline()[c * ch + k];
+                  n++;
+                }
+              }
+            }
+            TestCase.assertEquals(imi.toString(), (sum + n / 2) / n, sl2[c2 * ch + k]);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testReadScaledInterlaced() {
+    // boxes of the same size as the grid of the first passes: each one gets only its top left pixel
+    for (String name : new String[] {"basi0g08.png", "basi2c16.png", "basi6a08.png"}) {
+      File fi = new File(TestSupport.getPngTestSuiteDir(), name);
+      File fn = new File(TestSupport.getPngTestSuiteDir(), name.replace("basi", "basn"));
+      PngReader pngr = new PngReader(fn);
+      IImageLineSet<? extends IImageLine> all = pngr.readRows();
+      pngr.end();
+      int ch = pngr.imgInfo.channels;
+      for (int box : new int[] {8, 4, 1}) {
+        pngr = new PngReader(fi);
+        int w = pngr.imgInfo.cols / box, h = pngr.imgInfo.rows / box;
+        IImageLineSet<? extends IImageLine> scaled = pngr.readScaled(w, h);
+        pngr.end();
+        for (int r2 = 0; r2 < h; r2++) {
+          int[] sl1 = ((ImageLineInt) all.getImageLine(r2 * box)).getScanline();
+          int[] sl2 = ((ImageLineInt) scaled.getImageLine(r2)).getScanline();
+          for (int i = 0; i < w * ch; i++)
+            TestCase.assertEquals(name + " box " + box, sl1[(i / ch) * box * ch + i % ch], sl2[i]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testInterlacedPassListener() {
+    for (String name : new String[] {"basi0g04.png", "basi2c16.png", "basi6a08.png"}) {
+      PngReader pngr = new PngReader(new File(TestSupport.getPngTestSuiteDir(), name.replace("basi", "basn")));
+      final IImageLineSet<? extends IImageLine> ref = pngr.readRows();
+      pngr.end();
+      final int ch = pngr.imgInfo.channels;
+      final StringBuilder passes = new StringBuilder();
+      pngr = new PngReader(new File(TestSupport.getPngTestSuiteDir(), name));
+      pngr.setInterlacedPassListener(new IInterlacedPassListener() {
+        public void passDone(int pass, IImageLineSet<? extends IImageLine> lines) {
+          passes.append(pass);
+          int[] grid = Deinterlacer.gridAfterPass(pass);
+          for (int r = 0; r < 32; r++) { // all pixels are either decoded or replicated
+            int[] sl = ((ImageLineInt) lines.getImageLine(r)).getScanline();
+            int[] slref = ((ImageLineInt) ref.getImageLine(r - r % grid[1])).getScanline();
+            for (int i = 0; i < sl.length; i++) {
+              int c = i / ch;
+              TestCase.assertEquals(slref[(c - c % grid[0]) * ch + i % ch], sl[i]);
+            }
+          }
+        }
+      }, true);
+      pngr.readRows();
+      pngr.end();
+      TestCase.assertEquals("1234567", passes.toString());
+    }
+  }
+
+  @Test
+  public void testChunkIdsShared() {
+    PngReader pngr = new PngReader(TestSupport.absFile(TestSupport.PNG_TEST_STRIPES));
+    pngr.readSkippingAllRows();
+    for (PngChunk c : pngr.getChunksList().getChunks()) {
+      TestCase.assertTrue(c.id, c.id == ChunkHelper.idFromBytes(c.getRaw().idbytes, 0)); // same instance
+      TestCase.assertEquals(PngHelperInternal.readInt4fromBytes(c.getRaw().idbytes, 0), ChunkHelper.idToInt(c.id));
+    }
+    TestCase.assertTrue(pngr.getChunksList().getById1(ChunkHelper.IHDR).id == ChunkHelper.IHDR);
+    byte[] b = "xxruSTxx".getBytes();
+    String id = ChunkHelper.idFromBytes(b, 2);
+    TestCase.assertEquals("ruST", id);
+    TestCase.assertTrue(id == ChunkHelper.idFromBytes(b.clone(), 2));
+  }
+
   @Before
   public void setUp() {
     sb.setLength(0);
@@ -0,0 +1,48 @@
+package ar.com.hjg.pngj.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import ar.com.hjg.pngj.FilterType;
+import ar.com.hjg.pngj.PngReader;
+import ar.com.hjg.pngj.PngWriterHc;
+
+public class PngWriterHcTest extends PngjTest {
+
+  private static byte[] recompress(File f, ExecutorService executor, int rowsPerBand) {
+    PngReader pngr = new PngReader(f);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    PngWriterHc pngw = new PngWriterHc(bos, pngr.imgInfo);
+    pngw.setFilterType(FilterType.FILTER_SUPER_ADAPTIVE);
+    pngw.getPixelWriterMultiple().setExecutor(executor);
+    pngw.getPixelWriterMultiple().setHintRowsPerBand(rowsPerBand);
+    pngw.writeRows(pngr.readRows());
+    pngr.end();
+    pngw.end();
+    return bos.toByteArray();
+  }
+
+  @Test
+  public void testConcurrentFiltersSameOutput() {
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      for (String name : new String[] {"test/testg1.png", "test/testrgb3.png", "test/stripes.png"}) {
+        File f = TestSupport.absFile(name);
+        for (int rowsPerBand : new int[] {0, 3, 12}) {
+          byte[] b1 = recompress(f, null, rowsPerBand);
+          byte[] b2 = recompress(f, executor, rowsPerBand);
+          TestCase.assertTrue(name + " differs", Arrays.equals(b1, b2));
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
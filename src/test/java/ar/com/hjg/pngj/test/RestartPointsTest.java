@@ -0,0 +1,140 @@
+package ar.com.hjg.pngj.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Inflater;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineInt;
+import ar.com.hjg.pngj.PngHelperInternal;
+import ar.com.hjg.pngj.PngReader;
+import ar.com.hjg.pngj.PngReaderSeekable;
+import ar.com.hjg.pngj.PngWriter;
+import ar.com.hjg.pngj.PngWriterHc;
+import ar.com.hjg.pngj.chunks.PngChunkRIDX;
+
+public class RestartPointsTest extends PngjTest {
+
+  private static final ImageInfo IMI = new ImageInfo(150, 97, 8, true);
+
+  private static int pixel(int r, int i) {
+    return (r * 3 + i * (r % 7) + (i * r) % 11) & 0xff;
+  }
+
+  /** mode 0: default, 1: async, 2: parallel deflate, 3: PngWriterHc */
+  private static byte[] write(int mode, int interval) {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    PngWriter pngw = mode == 3 ? new PngWriterHc(bos, IMI) : new PngWriter(bos, IMI);
+    pngw.getPixelsWriter().setRestartInterval(interval);
+    pngw.getPixelsWriter().setIdatMaxSize(5000);
+    if (mode == 1)
+      pngw.getPixelsWriter().setAsyncCompression(4);
+    if (mode == 2)
+      pngw.getPixelsWriter().setParallelDeflate(true);
+    ImageLineInt line = new ImageLineInt(IMI);
+    for (int r = 0; r < IMI.rows; r++) {
+      for (int i = 0; i < IMI.samplesPerRow; i++)
+        line.getScanline()[i] = pixel(r, i);
+      pngw.writeRow(line);
+    }
+    pngw.end();
+    return bos.toByteArray();
+  }
+
+  /** IDAT data, from the chunk at offset (relative to the first IDAT) */
+  private static byte[] idatData(byte[] png, long offset) {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    int firstIdat = -1;
+    for (int off = 8; off < png.length;) {
+      int len = PngHelperInternal.readInt4fromBytes(png, off);
+      String id = new String(png, off + 4, 4);
+      if (id.equals("IDAT")) {
+        if (firstIdat < 0)
+          firstIdat = off;
+        if (off - firstIdat >= offset)
+          bos.write(png, off + 8, len);
+      }
+      off += len + 12;
+    }
+    return bos.toByteArray();
+  }
+
+  private static byte[] inflate(byte[] z, boolean raw, int len) throws Exception {
+    Inflater inf = new Inflater(raw);
+    inf.setInput(z);
+    byte[] res = new byte[len];
+    TestCase.assertEquals(len, inf.inflate(res));
+    inf.end();
+    return res;
+  }
+
+  @Test
+  public void testRestartPoints() throws Exception {
+    int rowlen = IMI.bytesPerRow + 1;
+    for (int mode = 0; mode < 4; mode++) {
+      byte[] png = write(mode, 10);
+      PngReader pngr = new PngReader(new ByteArrayInputStream(png));
+      for (int r = 0; r < IMI.rows; r++) {
+        int[] sl = ((ImageLineInt) pngr.readRow(r)).getScanline();
+        for (int i = 0; i < IMI.samplesPerRow; i++)
+          TestCase.assertEquals(pixel(r, i), sl[i]);
+      }
+      pngr.end();
+      PngChunkRIDX ridx = (PngChunkRIDX) pngr.getChunksList().getById1(PngChunkRIDX.ID);
+      TestCase.assertNotNull("mode " + mode, ridx);
+      List<PngChunkRIDX.Entry> entries = ridx.getEntries();
+      TestCase.assertEquals(9, entries.size());
+      byte[] all = inflate(idatData(png, 0), false, rowlen * IMI.rows);
+      for (int k = 0; k < entries.size(); k++) {
+        PngChunkRIDX.Entry e = entries.get(k);
+        TestCase.assertEquals((k + 1) * 10, e.row);
+        TestCase.assertTrue(e.filterReset);
+        // the data from the restart point must inflate by itself, to the same rows
+        int len = rowlen * (IMI.rows - e.row);
+        byte[] part = inflate(idatData(png, e.offset), true, len);
+        TestCase.assertTrue(part[0] == 0 || part[0] == 1);
+        TestCase.assertTrue("mode " + mode + " " + e,
+            Arrays.equals(Arrays.copyOfRange(all, rowlen * e.row, all.length), part));
+      }
+    }
+  }
+
+  @Test
+  public void testNoRestartPoints() {
+    byte[] png = write(0, 0);
+    PngReader pngr = new PngReader(new ByteArrayInputStream(png));
+    pngr.readRows();
+    pngr.end();
+    TestCase.assertNull(pngr.getChunksList().getById1(PngChunkRIDX.ID));
+  }
+
+  private static void checkRandomAccess(byte[] png, int expectedEntries) throws Exception {
+    File f = TestSupport.getTmpFile("seekable");
+    FileOutputStream fos = new FileOutputStream(f);
+    fos.write(png);
+    fos.close();
+    PngReaderSeekable pngr = new PngReaderSeekable(f);
+    TestCase.assertEquals(expectedEntries, pngr.getRestartEntries().size());
+    for (int r : new int[] {55, 56, 58, 3, 96, 0, 10, 9, 9, 40}) {
+      int[] sl = ((ImageLineInt) pngr.readRow(r)).getScanline();
+      for (int i = 0; i < IMI.samplesPerRow; i++)
+        TestCase.assertEquals("row " + r, pixel(r, i), sl[i]);
+    }
+    pngr.end();
+  }
+
+  @Test
+  public void testRandomAccess() throws Exception {
+    checkRandomAccess(write(0, 10), 9);
+    checkRandomAccess(write(3, 7), 13);
+    checkRandomAccess(write(0, 0), 0);
+  }
+}
@@ -1,9 +1,12 @@
 package ar.com.hjg.pngj.test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -455,6 +458,54 @@ public class TestSupport {
 
   }
 
+  /**
+   * Counts the bytes read through it. If skipFails, skip() throws, as for a pipe
+   */
+  public static class CountingInputStream extends FilterInputStream {
+    public int bytesRead = 0;
+    private final boolean skipFails;
+
+    public CountingInputStream(byte[] data, boolean skipFails) {
+      super(new ByteArrayInputStream(data));
+      this.skipFails = skipFails;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      bytesRead += b >= 0 ? 1 : 0;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      bytesRead += n > 0 ? n : 0;
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      if (skipFails)
+        throw new IOException("Illegal seek");
+      return super.skip(n);
+    }
+  }
+
+  /**
+   * A noise image, with IDAT chunks of (at most) idatMaxSize and a text chunk after them (key "after", value "idat")
+   */
+  public static byte[] createPngWithTextAfterIdat(ImageInfo imi, int idatMaxSize) {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    PngWriter pngw = new PngWriter(bos, imi);
+    pngw.getPixelsWriter().setIdatMaxSize(idatMaxSize);
+    pngw.getMetadata().setText("after", "idat", false, false).setPriority(false);
+    for (int r = 0; r < imi.rows; r++)
+      pngw.writeRow(generateNoiseLine(imi));
+    pngw.end();
+    return bos.toByteArray();
+  }
+
   public static NullOutputStream createNullOutputStream() {
     return new NullOutputStream();
   }
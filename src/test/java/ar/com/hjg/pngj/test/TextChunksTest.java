@@ -1,7 +1,9 @@
 package ar.com.hjg.pngj.test;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
@@ -9,9 +11,12 @@ import org.junit.Test;
 
 import ar.com.hjg.pngj.PngReader;
 import ar.com.hjg.pngj.PngWriter;
+import ar.com.hjg.pngj.PngjException;
 import ar.com.hjg.pngj.chunks.ChunkHelper;
+import ar.com.hjg.pngj.chunks.ChunkRaw;
 import ar.com.hjg.pngj.chunks.PngChunk;
 import ar.com.hjg.pngj.chunks.PngChunkTextVar;
+import ar.com.hjg.pngj.chunks.PngChunkUNKNOWN;
 
 public class TextChunksTest {
 
@@ -72,4 +77,64 @@ public class TextChunksTest {
 
   }
 
+  @Test
+  public void testLazyTextValues() {
+    File file1 = TestSupport.getTmpFile("testtextlazy");
+    PngWriter png = TestSupport.prepareFileTmp(file1);
+    png.getMetadata().setText("k", "v1", true, true); // zTXt
+    png.getMetadata().setText("k", "v2", false, false); // iTXt
+    png.getMetadata().setText("k", "v3", true, false); // tEXt
+    png.queueChunk(new PngChunkUNKNOWN(ChunkHelper.zTXt, png.imgInfo) { // zTXt with corrupt data
+          @Override
+          public ChunkRaw createRawChunk() {
+            byte[] b = ChunkHelper.toBytes("bad\0\0garbage");
+            ChunkRaw c = createEmptyChunk(b.length, false);
+            c.data = b;
+            return c;
+          }
+        });
+    TestSupport.endFileTmp(png);
+
+    PngReader pngr = new PngReader(file1);
+    pngr.readSkippingAllRows(); // the corrupt chunk is not inflated
+    TestCase.assertEquals("v3\nv1\nv2", pngr.getMetadata().getTxtForKey("k"));
+    TestCase.assertEquals("", pngr.getMetadata().getTxtForKey("nokey"));
+    PngChunkTextVar bad = pngr.getMetadata().getTxtsForKey("bad").get(0);
+    try {
+      bad.getVal();
+      TestCase.fail("corrupt zTXt not detected");
+    } catch (PngjException e) {
+    }
+  }
+
+  @Test
+  public void testCompressBytesThreads() throws Exception { // inflater/deflater are reused per thread, without lock
+    final String[] failure = new String[1];
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final int seed = t;
+      threads[t] = new Thread() {
+        public void run() {
+          Random rand = new Random(seed);
+          try {
+            for (int i = 0; i < 200; i++) {
+              byte[] b = new byte[rand.nextInt(20000)];
+              for (int j = 0; j < b.length; j++)
+                b[j] = (byte) (j % 50 + rand.nextInt(3));
+              byte[] z = ChunkHelper.compressBytes(b, true);
+              if (!Arrays.equals(b, ChunkHelper.compressBytes(z, false)))
+                failure[0] = "thread " + seed + " round trip " + i;
+            }
+          } catch (RuntimeException e) {
+            failure[0] = "thread " + seed + ": " + e;
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread t : threads)
+      t.join();
+    TestCase.assertNull(failure[0], failure[0]);
+  }
+
 }
@@ -0,0 +1,155 @@
+package ar.com.hjg.pngj.vector;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import ar.com.hjg.pngj.FilterType;
+import ar.com.hjg.pngj.RowFilterEngineScalar;
+
+/**
+ * {@link ar.com.hjg.pngj.RowFilterEngine} with the Vector API (jdk.incubator.vector, Java 17+). Loaded by name, see
+ * {@link ar.com.hjg.pngj.RowFilterEngine#VECTOR_ENGINE_CLASS}.
+ * <p>
+ * Filtering (writing) is data parallel for the four filters, because it only reads unfiltered bytes. Unfiltering is
+ * vectorized only for NONE and UP: SUB, AVERAGE and PAETH depend on the previous pixel of the same row, they use the
+ * scalar kernels.
+ */
+public class RowFilterEngineVector extends RowFilterEngineScalar {
+
+  private static final VectorSpecies<Byte> B = ByteVector.SPECIES_PREFERRED;
+  // Paeth is computed in 16 bits: 8 bytes widened to 8 shorts
+  private static final VectorSpecies<Byte> B8 = ByteVector.SPECIES_64;
+  private static final VectorSpecies<Short> S8 = ShortVector.SPECIES_128;
+
+  private static final ThreadLocal<byte[]> scratch = new ThreadLocal<byte[]>();
+
+  @Override
+  protected boolean isSupported() {
+    return B.length() >= 16;
+  }
+
+  @Override
+  public String getName() {
+    return "RowFilterEngineVector(" + B.vectorBitSize() + " bits)";
+  }
+
+  @Override
+  public void unfilterRow(byte[] row, byte[] rowUnfiltered, byte[] rowUnfilteredPrev, int offset, int nbytes,
+      int bytesPixel) {
+    int ft = row[0];
+    if (ft != FilterType.FILTER_NONE.val && ft != FilterType.FILTER_UP.val) {
+      super.unfilterRow(row, rowUnfiltered, rowUnfilteredPrev, offset, nbytes, bytesPixel);
+      return;
+    }
+    if (offset == 1)
+      rowUnfiltered[0] = row[0];
+    final int o = offset - 1; // rowUnfiltered[i + o] corresponds to row[i]
+    if (ft == FilterType.FILTER_NONE.val) {
+      System.arraycopy(row, 1, rowUnfiltered, offset, nbytes);
+      return;
+    }
+    int i = 1;
+    for (int upper = nbytes + 1 - B.length(); i <= upper; i += B.length()) {
+      ByteVector x = ByteVector.fromArray(B, row, i);
+      ByteVector up = ByteVector.fromArray(B, rowUnfilteredPrev, i + o);
+      x.add(up).intoArray(rowUnfiltered, i + o);
+    }
+    for (; i <= nbytes; i++)
+      rowUnfiltered[i + o] = (byte) (row[i] + rowUnfilteredPrev[i + o]);
+  }
+
+  @Override
+  public void filterRow(FilterType filterType, byte[] rowb, byte[] rowbprev, byte[] rowf, int nbytes,
+      int bytesPixel) {
+    int i = 1, j;
+    switch (filterType) {
+      case FILTER_SUB:
+        for (; i <= bytesPixel; i++)
+          rowf[i] = rowb[i];
+        for (int upper = nbytes + 1 - B.length(); i <= upper; i += B.length()) {
+          ByteVector x = ByteVector.fromArray(B, rowb, i);
+          ByteVector a = ByteVector.fromArray(B, rowb, i - bytesPixel);
+          x.sub(a).intoArray(rowf, i);
+        }
+        for (; i <= nbytes; i++)
+          rowf[i] = (byte) (rowb[i] - rowb[i - bytesPixel]);
+        break;
+      case FILTER_UP:
+        for (int upper = nbytes + 1 - B.length(); i <= upper; i += B.length()) {
+          ByteVector x = ByteVector.fromArray(B, rowb, i);
+          ByteVector b = ByteVector.fromArray(B, rowbprev, i);
+          x.sub(b).intoArray(rowf, i);
+        }
+        for (; i <= nbytes; i++)
+          rowf[i] = (byte) (rowb[i] - rowbprev[i]);
+        break;
+      case FILTER_AVERAGE:
+        for (; i <= bytesPixel; i++)
+          rowf[i] = (byte) (rowb[i] - ((rowbprev[i] & 0xFF) >> 1));
+        for (int upper = nbytes + 1 - B.length(); i <= upper; i += B.length()) {
+          ByteVector x = ByteVector.fromArray(B, rowb, i);
+          ByteVector a = ByteVector.fromArray(B, rowb, i - bytesPixel);
+          ByteVector b = ByteVector.fromArray(B, rowbprev, i);
+          // (a+b)/2 without overflow, unsigned: (a&b) + ((a^b)>>>1)
+          ByteVector avg = a.and(b).add(a.lanewise(VectorOperators.XOR, b).lanewise(VectorOperators.LSHR, 1));
+          x.sub(avg).intoArray(rowf, i);
+        }
+        for (; i <= nbytes; i++)
+          rowf[i] = (byte) (rowb[i] - (((rowbprev[i] & 0xFF) + (rowb[i - bytesPixel] & 0xFF)) >> 1));
+        break;
+      case FILTER_PAETH:
+        for (; i <= bytesPixel; i++)
+          rowf[i] = (byte) (rowb[i] - rowbprev[i]); // paeth(0,b,0)=b
+        for (int upper = nbytes + 1 - B8.length(); i <= upper; i += B8.length()) {
+          j = i - bytesPixel;
+          ShortVector a = widen(rowb, j);
+          ShortVector b = widen(rowbprev, i);
+          ShortVector c = widen(rowbprev, j);
+          ShortVector pa = b.sub(c).abs();
+          ShortVector pb = a.sub(c).abs();
+          ShortVector pc = a.add(b).sub(c).sub(c).abs();
+          VectorMask<Short> useB = pb.compare(VectorOperators.LE, pc);
+          VectorMask<Short> useA = pa.compare(VectorOperators.LE, pb).and(pa.compare(VectorOperators.LE, pc));
+          ShortVector pred = c.blend(b, useB).blend(a, useA);
+          ByteVector p = (ByteVector) pred.convertShape(VectorOperators.S2B, B8, 0);
+          ByteVector.fromArray(B8, rowb, i).sub(p).intoArray(rowf, i);
+        }
+        for (; i <= nbytes; i++)
+          rowf[i] = (byte) (rowb[i] - paeth(rowb[i - bytesPixel] & 0xFF, rowbprev[i] & 0xFF,
+              rowbprev[i - bytesPixel] & 0xFF));
+        break;
+      default:
+        super.filterRow(filterType, rowb, rowbprev, rowf, nbytes, bytesPixel);
+    }
+  }
+
+  @Override
+  public void histogramForFilter(FilterType filterType, byte[] rowb, byte[] rowbprev, int nbytes, int bytesPixel,
+      int[] histog) {
+    if (filterType == FilterType.FILTER_NONE) {
+      super.histogramForFilter(filterType, rowb, rowbprev, nbytes, bytesPixel, histog);
+      return;
+    }
+    byte[] rowf = scratch.get();
+    if (rowf == null || rowf.length < nbytes + 1) {
+      rowf = new byte[nbytes + 1];
+      scratch.set(rowf);
+    }
+    filterRow(filterType, rowb, rowbprev, rowf, nbytes, bytesPixel);
+    for (int i = 1; i <= nbytes; i++)
+      histog[rowf[i] & 0xFF]++;
+  }
+
+  private static ShortVector widen(byte[] b, int off) {
+    // B2S and mask: ZERO_EXTEND_B2S is broken in some JDK 17 builds
+    return ((ShortVector) ByteVector.fromArray(B8, b, off).convertShape(VectorOperators.B2S, S8, 0)).and((short) 0xFF);
+  }
+
+  private static int paeth(int a, int b, int c) {
+    int pa = Math.abs(b - c), pb = Math.abs(a - c), pc = Math.abs(a + b - c - c);
+    return pa <= pb && pa <= pc ? a : (pb <= pc ? b : c);
+  }
+}